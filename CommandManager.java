@@ -11,24 +11,101 @@ package me.machinemaker.commandmanager;
 import org.apache.commons.lang.IllegalClassException;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
 import org.bukkit.command.*;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.SimplePluginManager;
 import org.bukkit.plugin.java.JavaPlugin;
-import org.spigotmc.SpigotConfig;
+import org.bukkit.scheduler.BukkitTask;
 
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.MirroredTypeException;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
 import java.lang.annotation.*;
+import java.lang.invoke.*;
 import java.lang.reflect.*;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
-public class CommandManager implements CommandExecutor {
+public class CommandManager implements CommandExecutor, TabCompleter {
+
+    private static final Object[] NO_OBJECTS = new Object[0];
+    private static final long[] NO_LONGS = new long[0];
+    private static final double[] NO_DOUBLES = new double[0];
+    private static final int MAX_NUMBER_COMPLETIONS = 20;
 
     private JavaPlugin plugin;
-    private HashMap<String, BaseCommandClass> singleCommands;
-    private HashMap<String, BaseCommandClass> superCommands;
+    private volatile Registry registry = new Registry(new CommandNode(null), Collections.emptySet());
+    private final Object registryLock = new Object(); // Held by writers of the registry, readers don't need it
+    private final PlayerNames playerNames = new PlayerNames();
+    private final PermissionCache permissionCache = new PermissionCache(playerNames);
+    private final Map<String, CommandMetrics> metrics = new ConcurrentHashMap<>(); // Lowercase command path -> metrics
+    private volatile int latencySampleMask = 15; // Time every 16th run, System.nanoTime() isn't free
+    private volatile Watchdog watchdog; // null unless enabled
+    private volatile CommandScheduler scheduler; // null unless enabled
+    private volatile PlanCache planCache; // null unless enabled
+    private volatile Rate globalRate; // null for no limit
+    private volatile Rate senderRate;
+    private volatile Rate commandRate; // For commands without a RateLimit
+    private final AtomicLong globalBucket = Rate.newBucket();
+    private final ConcurrentHashMap<Object, AtomicLong> senderBuckets = new ConcurrentHashMap<>(); // Player UUID -> bucket
+    private final AtomicBoolean rateSweepStarted = new AtomicBoolean();
+    private final Map<Class<?>, ArgumentParser<?>> argumentTypes = new ConcurrentHashMap<>();
+    private volatile MessageTemplate[] messages = MessageTemplate.compileAll(null); // Indexed by Message#ordinal()
+    private final CooldownWheel cooldownWheel = new CooldownWheel(System.nanoTime());
+    private BukkitTask cooldownTask;
+    private BukkitTask permissionTask; // Clears the permission cache every TTL
+    private volatile Executor asyncExecutor;
+    private volatile PlayerMatching playerMatching = PlayerMatching.CLOSEST;
+    private volatile ParserBackend parserBackend = ParserBackend.INTERPRETED;
+    private ExecutorService ownedExecutor; // Only shut down if we created it
 
     private CommandMap commandMap;
+    private Map<String, Command> knownCommands; // Of the CommandMap, null if it couldn't be found
     private Constructor<PluginCommand> pluginCommandConstructor;
 
     /**
@@ -37,8 +114,7 @@ public class CommandManager implements CommandExecutor {
      */
     public CommandManager(JavaPlugin plugin) {
         this.plugin = plugin;
-        this.singleCommands = new HashMap<>();
-        this.superCommands = new HashMap<>();
+        ArgumentParsers.registerDefaults(this.argumentTypes);
 
         try {
             if (Bukkit.getPluginManager() instanceof SimplePluginManager) {
@@ -50,363 +126,4171 @@ public class CommandManager implements CommandExecutor {
                 this.pluginCommandConstructor = PluginCommand.class.getDeclaredConstructor(String.class, Plugin.class);
                 if (this.pluginCommandConstructor == null) throw new IllegalAccessException("pluginCommandConstructor was null!");
                 this.pluginCommandConstructor.setAccessible(true);
+                this.knownCommands = findKnownCommands(this.commandMap);
             }
         } catch (NoSuchMethodException | NoSuchFieldException | IllegalAccessException e) {
             this.plugin.getLogger().severe("Error accessing the CommandMap for dynamic command registration!");
             e.printStackTrace();
         }
+        for (Player p : Bukkit.getOnlinePlayers()) // In case the plugin was (re)loaded while players are online
+            this.playerNames.add(p);
+        Bukkit.getPluginManager().registerEvents(this.playerNames, plugin);
+        Bukkit.getPluginManager().registerEvents(this.permissionCache, plugin); // After playerNames, see PermissionCache#test
     }
 
     @Override
     public boolean onCommand(CommandSender cs, Command cmd, String label, String[] args) {
-        BaseCommandClass bcc = singleCommands.get(cmd.getName().toLowerCase());
-        ClassInfo cmdInfo = null;
-        String subCommand = "this should never be used";
-        if (bcc == null) { //Must be a super command
-            bcc = superCommands.get(cmd.getName()); //bcc should NEVER be none
-            if (args.length > 0 && bcc.commands.get(args[0].toLowerCase()) == null) {
-                cs.sendMessage(underline(args[0]) + " is not a valid sub-command for " + underline("/" + label)); //TODO: Configurable
-                return true;
+        CommandNode node = this.registry.root.child(cmd.getName());
+        if (node == null) return false; // Not one of ours
+        if (cs instanceof Player && (this.senderRate != null || this.globalRate != null) && !withinRateLimits((Player) cs)) {
+            CommandMetrics metrics = node.command != null ? node.command.metrics : ((SuperClassInfo) node.classInfo).metrics;
+            metrics.record(Outcome.RATE_LIMITED);
+            cs.sendMessage(message(Message.RATE_LIMITED));
+            return true;
+        }
+        CommandScheduler scheduler = this.scheduler;
+        if (scheduler != null && Bukkit.isPrimaryThread()) scheduler.submit(cs, cmd, node, label, args);
+        else dispatch(cs, node, label, args);
+        return true;
+    }
+
+    /**
+     * Runs a command of the registry, sending the sender why if it can't be run
+     * @param node top-level node of the command
+     * @return how it ended, SUCCESS for an {@link Async} command that was handed to the executor
+     */
+    private Outcome dispatch(CommandSender cs, CommandNode node, String label, String[] args) {
+        if (node.lazy != null && (node = initialize(node)) == null) {
+            cs.sendMessage(message(Message.ERROR));
+            return Outcome.EXCEPTION;
+        }
+        BaseCommandClass bcc = node.instance;
+        ClassInfo classInfo = node.classInfo; // Class-wide options
+        int offset = 0; // Arguments before this were sub-command names
+        String subCommand = null;
+        while (offset < args.length) {
+            int i = node.indexOf(args[offset]);
+            if (i < 0) break;
+            subCommand = node.keys[i];
+            node = node.children[i];
+            offset++;
+        }
+        ClassInfo cmdInfo = node.command;
+        if (cmdInfo != null && cs instanceof Player) {
+            CommandInfo command = (CommandInfo) cmdInfo;
+            Rate rate = command.rateLimit != null ? command.rateLimit : this.commandRate;
+            if (rate != null && !rate.tryAcquire(command.rateBuckets, ((Player) cs).getUniqueId(), System.nanoTime())) {
+                command.metrics.record(Outcome.RATE_LIMITED);
+                cs.sendMessage(message(Message.RATE_LIMITED));
+                return Outcome.RATE_LIMITED;
             }
-            else if (args.length > 0 && !args[0].equalsIgnoreCase("help"))
-                cmdInfo = bcc.commands.get(args[0].toLowerCase());
-            List<String> newArgs = Arrays.asList(args);
-            subCommand = newArgs.get(0);
-            newArgs = newArgs.subList(1, newArgs.size());
-            args = newArgs.toArray(new String[newArgs.size()]);
         }
-        else cmdInfo = bcc.commands.get(cmd.getName().toLowerCase());
-        ClassInfo classInfo = bcc.info; // Class-wide options
 
-        if (cmdInfo == null) // Must be "help" or NONE
+        if (cmdInfo == null) { // Must be "help" or NONE
+            if (offset < args.length && !args[offset].equalsIgnoreCase("help")) {
+                ((SuperClassInfo) classInfo).metrics.record(Outcome.USAGE_ERROR);
+                cs.sendMessage(message(Message.INVALID_SUB_COMMAND, args[offset], path(label, args, offset)));
+                return Outcome.USAGE_ERROR;
+            }
             cmdInfo = classInfo;
+        }
 
-        if (cmdInfo instanceof CommandInfo && !((CommandInfo) cmdInfo).ignoreCase) {
-            if (!subCommand.equals(((CommandInfo) cmdInfo).name)) {
-                cs.sendMessage(underline(subCommand) + " is not a valid sub-command for " + underline("/" + label)); //TODO: Configurable
-                return true;
+        if (cmdInfo instanceof CommandInfo && !((CommandInfo) cmdInfo).ignoreCase && subCommand != null) {
+            if (!subCommand.equals(args[offset - 1])) {
+                ((SuperClassInfo) classInfo).metrics.record(Outcome.USAGE_ERROR);
+                cs.sendMessage(message(Message.INVALID_SUB_COMMAND, args[offset - 1], path(label, args, offset - 1)));
+                return Outcome.USAGE_ERROR;
             }
         }
 
+        CommandMetrics cmdMetrics = ((SuperClassInfo) cmdInfo).metrics; // Sub-commands and single commands are always SuperClassInfo
         switch (canExecute(cs, classInfo, cmdInfo)) {
             case NO_PERMS:
-                cs.sendMessage("No perms!"); //TODO: Configurable
-                return true;
+                cmdMetrics.record(Outcome.NO_PERMS);
+                cs.sendMessage(message(Message.NO_PERMS));
+                return Outcome.NO_PERMS;
             case NOT_PLAYER:
-                cs.sendMessage("This command must be run by a player!"); //TODO: Configurable
-                return true;
+                cmdMetrics.record(Outcome.NOT_PLAYER);
+                cs.sendMessage(message(Message.NOT_PLAYER));
+                return Outcome.NOT_PLAYER;
             case NOT_CONSOLE:
-                cs.sendMessage("This command must be run by the console!"); //TODO: Configurable
-                return true;
+                cmdMetrics.record(Outcome.NOT_CONSOLE);
+                cs.sendMessage(message(Message.NOT_CONSOLE));
+                return Outcome.NOT_CONSOLE;
             case NONE: break;
         }
 
         if (!(cmdInfo instanceof CommandInfo) && cmdInfo instanceof SuperClassInfo) {
-            cs.sendMessage("super command"); //TODO: implement help
-            return true;
+            SuperClassInfo superInfo = (SuperClassInfo) cmdInfo;
+            if (!superInfo.showHelp) {
+                cmdMetrics.record(Outcome.USAGE_ERROR);
+                cs.sendMessage(message(Message.USAGE, "/" + path(label, args, offset) + " <sub-command>"));
+                return Outcome.USAGE_ERROR;
+            }
+            MessageTemplate[] templates = this.messages;
+            HelpPages help = node.help;
+            if (help == null || help.renderedWith != templates) // Not built yet or the messages were changed since
+                node.help = help = new HelpPages(node, superInfo.filterByPerms, templates);
+            help.send(cs, path(label, args, offset), offset + 1 < args.length ? args[offset + 1] : null);
+            cmdMetrics.record(Outcome.SUCCESS);
+            return Outcome.SUCCESS;
         }
         else if (!(cmdInfo instanceof CommandInfo))
             throw new IllegalStateException("cmdInfo was't an instance of SuperClassInfo or CommandInfo");
 
         CommandInfo commandInfo = (CommandInfo) cmdInfo;
+        Player cooldownPlayer = null; // Only players have cooldowns
+        long now = 0;
+        if (commandInfo.cooldown != null && cs instanceof Player && (commandInfo.cooldown.bypass == null || !this.permissionCache.test(cs, commandInfo.cooldown.bypass))) {
+            cooldownPlayer = (Player) cs;
+            now = System.nanoTime();
+            long remaining = commandInfo.cooldown.remaining(cooldownPlayer.getUniqueId(), now);
+            if (remaining > 0) {
+                cmdMetrics.record(Outcome.ON_COOLDOWN);
+                cs.sendMessage(message(Message.COOLDOWN, formatDuration(remaining)));
+                return Outcome.ON_COOLDOWN;
+            }
+        }
+        PlanCache plans = commandInfo.cacheable && commandInfo.args.length > 0 ? this.planCache : null; // Other lines are never looked up
+        PlanCache.Key key = plans == null ? null : new PlanCache.Key(node, args);
+        PlanCache.Plan plan = key == null ? null : plans.get(key);
         ArgsContainer a;
-        if (commandInfo.args.length > 0) {
+        if (plan != null) a = plan.args;
+        else if (commandInfo.args.length > 0) {
             ArgumentInfo[] cmdArgs = commandInfo.args;
-            if (cmdArgs.length != args.length) { //TODO: Add support for single multi-space argument AND Optional arguments
-                cs.sendMessage("Use format: " + commandInfo.usageString);
-                return true;
+            if (args.length - offset < commandInfo.requiredTokens) {
+                cmdMetrics.record(Outcome.USAGE_ERROR);
+                cs.sendMessage(message(Message.USAGE, commandInfo.usageString));
+                return Outcome.USAGE_ERROR;
             }
-            List<Object> values = new ArrayList<>();
-            for (int i = 0; i < cmdArgs.length; i++) {
+            a = new ArgsContainer(commandInfo);
+            MethodHandle compiled = this.parserBackend == ParserBackend.COMPILED && isPlain(args, offset, cmdArgs.length) ? commandInfo.compiledParser() : null;
+            if (compiled != null) {
+                a.given = Math.min(args.length - offset, cmdArgs.length);
+                String error;
                 try {
-                    switch (cmdArgs[i].type) {
-                        case STRING:
-                            if (args[i].length() < cmdArgs[i].minStrLen || args[i].length() > cmdArgs[i].maxStrLen)
-                                throw new IllegalArgumentException("Bad string length");
-                            values.add(args[i]);
-                            break;
-                        case INTEGER:
-                            int num = Integer.parseInt(args[i]);
-                            if (num < cmdArgs[i].minInt || num > cmdArgs[i].maxInt)
-                                throw new IllegalArgumentException("Bad int size");
-                            values.add(Integer.parseInt(args[i]));
-                            break;
-                        case DOUBLE:
-                            double d = Double.parseDouble(args[i]);
-                            if (d < cmdArgs[i].minDouble || d > cmdArgs[i].maxDouble)
-                                throw new IllegalArgumentException("Bad double size");
-                            values.add(Double.parseDouble(args[i]));
-                            break;
-                        case PLAYER:
-                            Player p = Bukkit.getPlayer(args[i]);
-                            if (p == null) throw new IllegalArgumentException("Not player name");
-                            values.add(p);
-                            break;
+                    error = (String) compiled.invokeExact(cs, args, offset, a);
+                } catch (RuntimeException | Error e) {
+                    throw e;
+                } catch (Throwable t) { // The steps don't throw checked exceptions
+                    throw new IllegalStateException(t);
+                }
+                if (error != null) {
+                    cmdMetrics.record(Outcome.INVALID_ARGUMENT);
+                    cs.sendMessage(error);
+                    return Outcome.INVALID_ARGUMENT;
+                }
+            }
+            else {
+                int word = offset; // Next word to read, Bukkit's array is read in place and each word only once
+                for (int i = 0; i < cmdArgs.length; i++) {
+                    ArgumentInfo arg = cmdArgs[i];
+                    String input;
+                    int end = word < args.length ? argumentEnd(arg, args, word) : word;
+                    if (end > word && end <= args.length) {
+                        input = argumentText(arg, args, word, end);
+                        word = end;
+                        a.given++;
+                    }
+                    else if (arg.optional && end == word) { // Left out
+                        if (arg.constantDefault) {
+                            a.objects[i] = commandInfo.defaults.objects[i];
+                            a.longs[i] = commandInfo.defaults.longs[i];
+                            a.doubles[i] = commandInfo.defaults.doubles[i];
+                        }
+                        if (arg.constantDefault || arg.def.isEmpty()) continue;
+                        input = arg.def;
+                    }
+                    else { // Unclosed quote or not enough words
+                        cmdMetrics.record(Outcome.USAGE_ERROR);
+                        cs.sendMessage(message(Message.USAGE, commandInfo.usageString));
+                        return Outcome.USAGE_ERROR;
+                    }
+                    String error = parseInto(cs, arg, input, a);
+                    if (error != null) {
+                        cmdMetrics.record(Outcome.INVALID_ARGUMENT);
+                        cs.sendMessage(error);
+                        return Outcome.INVALID_ARGUMENT;
                     }
-                } catch (IllegalArgumentException e) {
-                    cs.sendMessage(cmdArgs[i].type.getInvalidMsg(i, cmdArgs[i], !(e instanceof NumberFormatException)));
-                    return true;
                 }
+                if (word < args.length) { // Words after the last argument
+                    cmdMetrics.record(Outcome.USAGE_ERROR);
+                    cs.sendMessage(message(Message.USAGE, commandInfo.usageString));
+                    return Outcome.USAGE_ERROR;
+                }
+            }
+        }
+        else a = commandInfo.noArgs;
+        if (plan == null && key != null) plans.put(key, a);
+
+        if (cooldownPlayer != null) {
+            long remaining = commandInfo.cooldown.tryStart(cooldownPlayer.getUniqueId(), now);
+            if (remaining > 0) { // Another thread started it since the check above, while this one parsed
+                cmdMetrics.record(Outcome.ON_COOLDOWN);
+                cs.sendMessage(message(Message.COOLDOWN, formatDuration(remaining)));
+                return Outcome.ON_COOLDOWN;
             }
-            a = new ArgsContainer(Arrays.asList(cmdArgs), values);
         }
-        else a = new ArgsContainer();
+        if (commandInfo.async) {
+            ArgsContainer parsed = a;
+            try {
+                asyncExecutor().execute(() -> {
+                    if (!invoke(cs, bcc, commandInfo, parsed))
+                        runSync(() -> cs.sendMessage(message(Message.ERROR)));
+                });
+            } catch (RejectedExecutionException e) {
+                cmdMetrics.record(Outcome.REJECTED);
+                cs.sendMessage(message(Message.REJECTED));
+                return Outcome.REJECTED;
+            }
+            return Outcome.SUCCESS;
+        }
+        return invoke(cs, bcc, commandInfo, a) ? Outcome.SUCCESS : Outcome.EXCEPTION;
+    }
 
-        Class type = commandInfo.type.c;
-        if (type == CommandSender.class) type = classInfo.type.c;
+    /**
+     * @return false if the handler threw an exception
+     */
+    private boolean invoke(CommandSender cs, BaseCommandClass bcc, CommandInfo commandInfo, ArgsContainer a) {
+        boolean timed = commandInfo.metrics.sample(this.latencySampleMask);
+        long start = timed ? System.nanoTime() : 0;
+        Outcome outcome = Outcome.EXCEPTION;
+        Watchdog watchdog = this.watchdog;
+        Watchdog.Invocation invocation = watchdog == null ? null : watchdog.start(bcc, commandInfo, a);
         try {
-            Method m = bcc.getClass().getMethod(commandInfo.methodName, type, ArgsContainer.class);
-            m.invoke(bcc, commandInfo.type.c.cast(cs), a);
-        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) { // This shouldn't happen b/c of checks in addSingleCommand()
+            commandInfo.handler.handle(cs, a);
+            outcome = Outcome.SUCCESS;
+            return true;
+        } catch (ClassCastException e) { // This shouldn't happen b/c of checks in addMethods()
             plugin.getLogger().severe("Something went wrong with " + commandInfo.name);
             plugin.getLogger().severe("Its probably an inconsistency with the UserType and the arguments in the function " + bcc.getClass().getName() + "::" + commandInfo.methodName);
             e.printStackTrace();
+        } catch (Throwable t) {
+            plugin.getLogger().severe("An error occurred while executing " + bcc.getClass().getName() + "::" + commandInfo.methodName);
+            t.printStackTrace();
+        } finally {
+            if (invocation != null) watchdog.finish(invocation);
+            commandInfo.metrics.record(outcome);
+            if (timed) commandInfo.metrics.recordLatency(System.nanoTime() - start);
+        }
+        return false;
+    }
+
+    /**
+     * Parses what was typed for an argument into its slot
+     * @param cs sender running the command, null when parsing a default value at registration
+     * @return null if it parsed and is within its bounds, otherwise the message to send
+     */
+    private String parseInto(CommandSender cs, ArgumentInfo arg, String input, ArgsContainer a) {
+        int i = arg.position;
+        if (arg.parser != null) {
+            Object value = arg.parser.parse(cs, input, 0, input.length());
+            if (value == null) return arg.invalidMessage(false, input);
+            a.objects[i] = value;
+            return null;
+        }
+        boolean valid; // Parsed and within its bounds
+        switch (arg.type) {
+            case STRING:
+                valid = input.length() >= arg.minStrLen && input.length() <= arg.maxStrLen;
+                a.objects[i] = input;
+                break;
+            case INTEGER:
+                if (!ArgumentParsers.isLong(input, 0, input.length())) return arg.invalidMessage(false, input);
+                long num = ArgumentParsers.parseLong(input, 0, input.length());
+                valid = num >= arg.minInt && num <= arg.maxInt;
+                a.longs[i] = num;
+                break;
+            case DOUBLE:
+                double d;
+                try {
+                    d = Double.parseDouble(input);
+                } catch (NumberFormatException e) {
+                    return arg.invalidMessage(false, input);
+                }
+                valid = d >= arg.minDouble && d <= arg.maxDouble;
+                a.doubles[i] = d;
+                break;
+            case PLAYER:
+                PlayerMatching matching = this.playerMatching;
+                Player p = this.playerNames.resolve(input, 0, input.length(), matching);
+                if (p == null && matching == PlayerMatching.UNIQUE && cs != null) {
+                    List<String> names = this.playerNames.matches(input, 6);
+                    if (names.size() > 1) return message(Message.AMBIGUOUS_PLAYER, input,
+                            names.size() > 5 ? String.join(", ", names.subList(0, 5)) + "..." : String.join(", ", names));
+                }
+                valid = p != null;
+                a.objects[i] = p;
+                break;
+            default: throw new IllegalStateException("Unknown argument type " + arg.type);
         }
+        return valid ? null : arg.invalidMessage(true, input); // Messages are rendered when the command is registered, so bad input is cheap
+    }
+
+    /**
+     * @return true if none of the words from offset are quoted and there are at most max of them, so each is a whole argument
+     */
+    private static boolean isPlain(String[] args, int offset, int max) {
+        if (args.length - offset > max) return false; // Words after the last argument, the loop reports them
+        for (int i = offset; i < args.length; i++)
+            if (!args[i].isEmpty() && args[i].charAt(0) == '"') return false;
         return true;
     }
 
     /**
-     * Initializes a class with commands to be handled by CommandManager
-     * @param instance An instance of the class
-     * @throws IllegalClassException if the class does not contain any methods with CommandManager annotations
+     * Sets the executor that runs {@link Async} commands. The default is a cached pool of daemon threads
+     * @param executor executor for async commands, see {@link #virtualThreadExecutor()}
      */
-    public void addClass(BaseCommandClass instance) throws IllegalClassException {
-        boolean done;
-        if (instance.getClass().getAnnotationsByType(CommandSetup.class).length == 1) { // Super/Sub Commands
-            SuperClassInfo classInfo;
-            classInfo = new SuperClassInfo(instance.getClass());
-            instance.init(classInfo, true);
-            registerCommand(classInfo);
-            this.superCommands.put(classInfo.name.toLowerCase(), instance); // Must be after registerCommand() because that checks for duplicates
-            addMethods(instance, true);
-            done = true;
+    public void setAsyncExecutor(Executor executor) {
+        if (executor == null) throw new IllegalArgumentException("executor cannot be null");
+        synchronized (this) {
+            ExecutorService old = this.ownedExecutor;
+            this.asyncExecutor = executor;
+            this.ownedExecutor = null;
+            if (old != null) old.shutdown();
         }
-        else { // Individual Commands
-            ClassInfo classInfo = new ClassInfo(instance.getClass());
-            instance.init(classInfo, false);
-            done = addMethods(instance, false);
+    }
+
+    /**
+     * Creates an executor that runs every task on a new virtual thread (Java 21+)
+     * @return virtual thread executor
+     * @throws UnsupportedOperationException if the JVM doesn't support virtual threads
+     */
+    public static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or newer");
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new UnsupportedOperationException("Could not create a virtual thread executor", e);
         }
-        if (!done) throw new IllegalClassException("This class doesn't contain any methods that have CommandManager annotations!");
     }
 
-    private boolean addMethods(BaseCommandClass instance, boolean isSubCmd) {
-        boolean done = false;
-        for (Method m : instance.getClass().getMethods()) {
-            if (m.getAnnotationsByType(CommandSetup.class).length == 1) {
-                if (m.getParameters().length != 2)
-                    throw new IllegalStateException(instance.getClass().getName() + "::" + m.getName() + " has more than 2 parameters! It must have exactly 2");
-                else if (m.getParameters()[1].getType() != ArgsContainer.class)
-                    throw new IllegalStateException(instance.getClass().getName() + "::" + m.getName() + " must have a Arguments type as its second parameter!");
+    /**
+     * Stops the default executor of {@link Async} commands, call this in onDisable()
+     */
+    public synchronized void shutdown() {
+        if (this.ownedExecutor != null) this.ownedExecutor.shutdown();
+        disableWatchdog();
+        if (this.scheduler != null) { // Plugin is disabling, its commands shouldn't run anymore
+            this.scheduler.stop(false);
+            this.scheduler = null;
+        }
+    }
 
-                CommandInfo cmdInfo = new CommandInfo(m);
-                Class type = m.getParameters()[0].getType();
-//                if (type != cmdInfo.type.c) {
-//                    if (cmdInfo.type.c == CommandSender.class && type != instance.info.type.c) {
-//
-//                    }
-//                }
-                if (type != cmdInfo.type.c && (cmdInfo.type.c == CommandSender.class && type != instance.info.type.c)) {
-                    System.out.println(m.getParameters()[0].getType() != cmdInfo.type.c);
-                    System.out.println(cmdInfo.type.c == CommandSender.class && m.getParameters()[0].getType() != instance.info.type.c);
-                    throw new IllegalStateException(instance.getClass().getName() + "::" + m.getName() + " has an incorrect first parameter! It does not match the UserType in the annotation!");
+    /**
+     * Registers the parser of an argument type, used by arguments with that {@link Argument#valueType()}.
+     * World, Material, UUID, Duration, Boolean, Long and Location (x y z) are built in, other enums work without one.
+     * Register it before adding the classes that use it
+     * @param type type of the values
+     * @param parser parser of the values, replaces the current one
+     */
+    public <T> void registerArgumentType(Class<T> type, ArgumentParser<T> parser) {
+        if (parser == null) throw new IllegalArgumentException("parser cannot be null");
+        this.argumentTypes.put(type, parser);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private ArgumentParser<?> parserFor(Class<?> type) {
+        ArgumentParser<?> parser = this.argumentTypes.get(type);
+        if (parser == null && type.isEnum())
+            this.argumentTypes.put(type, parser = new ArgumentParsers.EnumParser(type));
+        if (parser == null) throw new IllegalStateException("There is no parser for " + type.getName() + " arguments, register one with registerArgumentType()");
+        return parser;
+    }
+
+    /**
+     * Enables caching permission decisions for each player, for this long. Op changes and quitting always
+     * clear them, other changes (e.g. from a permissions plugin or a {@link org.bukkit.permissions.PermissionAttachment})
+     * show up after at most this long, unless you call {@link #invalidatePermissions(Player)} after making them.
+     * The cache is off until this is called, 0 turns it off again
+     * @param duration how long a decision is cached
+     * @param unit unit of the duration
+     */
+    public synchronized void setPermissionCacheTtl(long duration, TimeUnit unit) {
+        if (duration < 0) throw new IllegalArgumentException("duration cannot be negative");
+        if (this.permissionTask != null) this.permissionTask.cancel();
+        this.permissionTask = null;
+        this.permissionCache.enabled = duration > 0;
+        this.permissionCache.invalidateAll();
+        if (duration > 0) {
+            long ticks = Math.max(1, (unit.toMillis(duration) + 49) / 50);
+            this.permissionTask = Bukkit.getScheduler().runTaskTimer(plugin, this.permissionCache::invalidateAll, ticks, ticks);
+        }
+    }
+
+    /**
+     * Forgets the cached permission decisions of a player, call this after changing their permissions
+     * @param player player whose permissions changed
+     */
+    public void invalidatePermissions(Player player) {
+        this.permissionCache.invalidate(player.getUniqueId());
+    }
+
+    /**
+     * Forgets all cached permission decisions, e.g. after a permissions plugin reloaded its groups
+     */
+    public void invalidatePermissions() {
+        this.permissionCache.invalidateAll();
+    }
+
+    /**
+     * Loads the messages from a config section, e.g. {@code getConfig().getConfigurationSection("messages")}.
+     * Keys are {@link Message#getPath()}, missing ones keep their default. {@code &} is used for colors
+     * @param section section with the messages
+     */
+    public void loadMessages(ConfigurationSection section) {
+        this.messages = MessageTemplate.compileAll(section);
+    }
+
+    /**
+     * Changes a single message
+     * @param message message to change
+     * @param template new text, see {@link Message} for the placeholders
+     */
+    public synchronized void setMessage(Message message, String template) {
+        MessageTemplate[] templates = this.messages.clone();
+        templates[message.ordinal()] = MessageTemplate.compile(message, template);
+        this.messages = templates;
+    }
+
+    private String message(Message message, String... values) {
+        return this.messages[message.ordinal()].render(values);
+    }
+
+    /**
+     * @param command name of the command, sub-commands are written with their super command (e.g. "eco give")
+     * @return stats of the command, or null if there is no such command
+     */
+    public CommandStats getStats(String command) {
+        CommandMetrics m = this.metrics.get(command.trim().replaceAll("\\s+", " ").toLowerCase());
+        return m == null ? null : m.snapshot();
+    }
+
+    /**
+     * @return stats of every command, most used first
+     */
+    public List<CommandStats> getStats() {
+        List<CommandStats> stats = new ArrayList<>();
+        for (CommandMetrics m : this.metrics.values()) stats.add(m.snapshot());
+        stats.sort((a, b) -> Long.compare(b.getInvocations(), a.getInvocations()));
+        return stats;
+    }
+
+    /**
+     * Sets the stats of every command back to zero
+     */
+    public void resetStats() {
+        for (CommandMetrics m : this.metrics.values()) m.reset();
+    }
+
+    /**
+     * Starts timing every command handler. A handler that runs longer than its budget (see {@link Budget})
+     * is logged with its arguments and the stack of the thread running it, at most once every 30 seconds per command
+     * @param budget how long a handler may run, e.g. 10ms to keep it well within a 50ms tick
+     * @param unit unit of the budget
+     */
+    public synchronized void enableWatchdog(long budget, TimeUnit unit) {
+        if (budget <= 0) throw new IllegalArgumentException("budget must be positive");
+        disableWatchdog();
+        this.watchdog = new Watchdog(plugin, unit.toNanos(budget));
+    }
+
+    /**
+     * Stops the watchdog started by {@link #enableWatchdog(long, TimeUnit)}
+     */
+    public synchronized void disableWatchdog() {
+        if (this.watchdog == null) return;
+        this.watchdog.stop();
+        this.watchdog = null;
+    }
+
+    /**
+     * Spreads bursts of commands (command blocks, a pasted list of commands...) over several ticks. Once the commands run
+     * in a tick took the budget, the next ones are queued and run in the following ticks, taking turns between the senders
+     * so one of them can't hold up the others. Senders are told their place in the queue, and commands over the limits are rejected
+     * @param budget how long commands may run per tick, e.g. 5ms
+     * @param unit unit of the budget
+     * @param maxQueued commands that may wait at once, more are rejected with {@link Message#QUEUE_FULL}
+     * @param maxQueuedPerSender commands a single sender may have waiting
+     */
+    public synchronized void enableScheduling(long budget, TimeUnit unit, int maxQueued, int maxQueuedPerSender) {
+        if (budget <= 0) throw new IllegalArgumentException("budget must be positive");
+        if (maxQueued <= 0 || maxQueuedPerSender <= 0) throw new IllegalArgumentException("Queue limits must be positive");
+        disableScheduling();
+        this.scheduler = new CommandScheduler(unit.toNanos(budget), maxQueued, maxQueuedPerSender);
+    }
+
+    /**
+     * Stops the scheduling started by {@link #enableScheduling(long, TimeUnit, int, int)} and runs the queued commands.
+     * Call it on the main thread
+     */
+    public synchronized void disableScheduling() {
+        if (this.scheduler == null) return;
+        this.scheduler.stop(Bukkit.isPrimaryThread());
+        this.scheduler = null;
+    }
+
+    /**
+     * @return the queue of {@link #enableScheduling(long, TimeUnit, int, int)}, null if scheduling isn't enabled
+     */
+    public QueueStats getQueueStats() {
+        CommandScheduler scheduler = this.scheduler;
+        return scheduler == null ? null : new QueueStats(scheduler.queued, scheduler.peak, scheduler.deferred.sum(), scheduler.rejected.sum());
+    }
+
+    /**
+     * Keeps the parsed arguments of the last command lines that were run, for command blocks and macros that run the same
+     * line over and over. When a line is run again, only the rate limits, permissions and cooldown are checked before the
+     * command runs. Commands with PLAYER arguments, or arguments whose {@link ArgumentParser#cacheable()} is false, skip the cache
+     * @param maxLines lines that are kept, a line that wasn't run again recently is dropped for a new one
+     */
+    public synchronized void enablePlanCache(int maxLines) {
+        if (maxLines <= 0) throw new IllegalArgumentException("maxLines must be positive");
+        this.planCache = new PlanCache(maxLines);
+    }
+
+    /**
+     * Stops the cache started by {@link #enablePlanCache(int)} and drops the lines in it
+     */
+    public synchronized void disablePlanCache() {
+        this.planCache = null;
+    }
+
+    /**
+     * @return hits of {@link #enablePlanCache(int)}, null if it isn't enabled
+     */
+    public PlanCacheStats getPlanCacheStats() {
+        PlanCache plans = this.planCache;
+        return plans == null ? null : new PlanCacheStats(plans.hits.sum(), plans.misses.sum(), plans.size(), plans.maxLines);
+    }
+
+    /**
+     * Limits how many commands all players together may run, e.g. against a crowd of bots.
+     * Rate limits are checked before anything else, the console and command blocks are never limited
+     * @param perSecond commands per second, 0 for no limit
+     * @param burst commands that may be run at once before the rate applies
+     */
+    public void setGlobalRateLimit(double perSecond, int burst) {
+        this.globalRate = Rate.of(perSecond, burst);
+        startRateLimitSweep();
+    }
+
+    /**
+     * Limits how many commands each player may run, whatever the commands
+     * @param perSecond commands per second, 0 for no limit
+     * @param burst commands that may be run at once before the rate applies
+     */
+    public void setSenderRateLimit(double perSecond, int burst) {
+        this.senderRate = Rate.of(perSecond, burst);
+        startRateLimitSweep();
+    }
+
+    /**
+     * Limits how often each player may run each command. {@link RateLimit} sets the limit of a single command
+     * @param perSecond uses per second, 0 for no limit
+     * @param burst uses that may be run at once before the rate applies
+     */
+    public void setCommandRateLimit(double perSecond, int burst) {
+        this.commandRate = Rate.of(perSecond, burst);
+        startRateLimitSweep();
+    }
+
+    private boolean withinRateLimits(Player p) {
+        long now = System.nanoTime();
+        Rate sender = this.senderRate;
+        Rate global = this.globalRate;
+        // The player's own bucket first, so a player over their limit doesn't use up the global one
+        return (sender == null || sender.tryAcquire(this.senderBuckets, p.getUniqueId(), now)) && (global == null || global.tryAcquire(this.globalBucket, now));
+    }
+
+    private void startRateLimitSweep() {
+        if (this.rateSweepStarted.compareAndSet(false, true)) // Drop full buckets every 30 seconds
+            Bukkit.getScheduler().runTaskTimer(plugin, this::sweepRateLimits, 600, 600);
+    }
+
+    private void sweepRateLimits() {
+        long now = System.nanoTime();
+        Rate.sweep(this.senderBuckets, now);
+        Deque<CommandNode> nodes = new ArrayDeque<>();
+        nodes.add(this.registry.root);
+        for (CommandNode node; (node = nodes.poll()) != null; ) {
+            if (node.command != null) Rate.sweep(node.command.rateBuckets, now);
+            Collections.addAll(nodes, node.children);
+        }
+    }
+
+    /**
+     * Sets how many runs of a command are timed for its latency histogram. Outcomes are always counted
+     * @param oneIn a power of two, 1 times every run. The default is 16
+     */
+    public void setLatencySampleRate(int oneIn) {
+        if (oneIn <= 0 || Integer.bitCount(oneIn) != 1) throw new IllegalArgumentException("oneIn must be a power of two");
+        this.latencySampleMask = oneIn - 1;
+    }
+
+    /**
+     * Sets how the arguments of a command line are parsed. Both give the same arguments and messages
+     * @param backend how to parse them. The default is {@link ParserBackend#INTERPRETED}
+     */
+    public void setParserBackend(ParserBackend backend) {
+        if (backend == null) throw new IllegalArgumentException("backend cannot be null");
+        this.parserBackend = backend;
+    }
+
+    /**
+     * Sets how PLAYER arguments match online players when the name typed isn't a full name. A full name (ignoring case)
+     * or the UUID of an online player always matches
+     * @param matching how to match the start of a name. The default is {@link PlayerMatching#CLOSEST}, like {@link Bukkit#getPlayer(String)}
+     */
+    public void setPlayerMatching(PlayerMatching matching) {
+        if (matching == null) throw new IllegalArgumentException("matching cannot be null");
+        this.playerMatching = matching;
+    }
+
+    /**
+     * Registers /cmdstats, which lists the most used commands with their failures and latencies
+     * @param permission permission needed to use it
+     */
+    public void enableStatsCommand(String permission) {
+        CommandSpec info = new CommandSpec(null, UserType.ALL, new String[0], PermType.OR, null, new String[0]);
+        CommandSpec stats = new CommandSpec("cmdstats", UserType.ALL, new String[] { permission }, PermType.OR,
+                "Shows how often commands are used and how long they take", new String[0], true, new ArgumentSpec[0], "sendStats",
+                (BaseCommandClass instance, CommandSender cs, ArgsContainer args) -> sendStats(cs));
+        commit(Collections.emptyList(), Collections.singletonList(prepare(new BaseCommandClass(), new CommandRegistry() {
+            @Override
+            public CommandSpec info() {
+                return info;
+            }
+
+            @Override
+            public CommandSpec[] commands() {
+                return new CommandSpec[] { stats };
+            }
+        })));
+    }
+
+    private void sendStats(CommandSender cs) {
+        List<CommandStats> stats = getStats();
+        cs.sendMessage(ChatColor.GOLD + "Command stats (calls, failures, mean, p99):");
+        int shown = 0;
+        for (CommandStats stat : stats) {
+            if (stat.getInvocations() == 0 || shown++ == 10) break;
+            cs.sendMessage(String.format("%s/%s%s: %d, %d, %s, <%s", ChatColor.YELLOW, stat.getCommand(), ChatColor.GRAY, stat.getInvocations(),
+                    stat.getInvocations() - stat.getCount(Outcome.SUCCESS), formatLatency(stat.getMeanLatency()), formatLatency(stat.getLatencyPercentile(0.99))));
+        }
+        if (shown == 0) cs.sendMessage(ChatColor.GRAY + "No commands have been used yet");
+        QueueStats queue = getQueueStats();
+        if (queue != null)
+            cs.sendMessage(String.format("%sQueue%s: %d waiting, %d at most, %d deferred, %d rejected", ChatColor.YELLOW, ChatColor.GRAY,
+                    queue.getQueued(), queue.getPeak(), queue.getDeferred(), queue.getRejected()));
+        PlanCacheStats plans = getPlanCacheStats();
+        if (plans != null)
+            cs.sendMessage(String.format("%sPlan cache%s: %.1f%% hits, %d/%d lines", ChatColor.YELLOW, ChatColor.GRAY,
+                    plans.getHitRate() * 100, plans.getSize(), plans.getMaxSize()));
+    }
+
+    /**
+     * Registers /cmdscript &lt;file&gt;, which runs a script of the plugin folder with {@link #runScript(CommandSender, Path, Consumer)}
+     * and lists the lines that failed. Only the console can use it
+     * @param permission permission needed to use it
+     */
+    public void enableScriptCommand(String permission) {
+        CommandSpec info = new CommandSpec(null, UserType.ALL, new String[0], PermType.OR, null, new String[0]);
+        CommandSpec script = new CommandSpec("cmdscript", UserType.CONSOLE, new String[] { permission }, PermType.OR,
+                "Runs a file of commands, one per line", new String[0], true,
+                new ArgumentSpec[] { new ArgumentSpec("file", ArgType.STRING, Integer.MIN_VALUE, Integer.MAX_VALUE, -Double.MAX_VALUE, Double.MAX_VALUE, 1, Integer.MAX_VALUE).greedy() },
+                "sendScript", (BaseCommandClass instance, CommandSender cs, ArgsContainer args) -> sendScript(cs, args.get("file", String.class)));
+        commit(Collections.emptyList(), Collections.singletonList(prepare(new BaseCommandClass(), new CommandRegistry() {
+            @Override
+            public CommandSpec info() {
+                return info;
+            }
+
+            @Override
+            public CommandSpec[] commands() {
+                return new CommandSpec[] { script };
+            }
+        })));
+    }
+
+    private void sendScript(CommandSender cs, String file) {
+        Path path = plugin.getDataFolder().toPath().resolve(file);
+        if (!Files.isRegularFile(path)) {
+            cs.sendMessage(ChatColor.RED + "No script at " + path);
+            return;
+        }
+        try {
+            ScriptReport report = runScript(cs, path, line -> {
+                if (!line.isSuccess())
+                    cs.sendMessage(String.format("%sLine %d%s (%s): %s", ChatColor.RED, line.getNumber(), ChatColor.GRAY,
+                            line.getOutcome() == null ? "not run" : line.getOutcome().name().toLowerCase().replace('_', ' '), line.getLine()));
+            });
+            cs.sendMessage(String.format("%sRan %d lines of %s, %d failed", ChatColor.GOLD, report.getLines(), file, report.getFailures()));
+        } catch (IOException e) {
+            plugin.getLogger().warning("Could not read the script " + path + ": " + e);
+            cs.sendMessage(ChatColor.RED + "Could not read " + file + ", see the log");
+        }
+    }
+
+    /**
+     * Runs a file of commands as the sender, one command per line. The file is read while it runs, so only the current line
+     * is kept in memory whatever its size. Blank lines and lines starting with # are skipped and the leading / is optional.
+     * Lines of CommandManager commands go straight to their handlers, lines of other commands through {@link Bukkit#dispatchCommand(CommandSender, String)}.
+     * Run it on the main thread like any other command
+     * @param cs sender the lines are run as, they receive the messages of the commands
+     * @param script UTF-8 file to run
+     * @param onLine called with the result of every line that was run, null if only the totals are needed
+     * @return how many lines ended with each outcome
+     * @throws IOException if the file couldn't be read, the lines before the error were run
+     */
+    public ScriptReport runScript(CommandSender cs, Path script, Consumer<ScriptLine> onLine) throws IOException {
+        ScriptReport report = new ScriptReport();
+        Map<String, CommandNode> nodes = new HashMap<>(); // Label -> node, null for other plugins' commands
+        Registry resolvedWith = null;
+        try (BufferedReader reader = Files.newBufferedReader(script, StandardCharsets.UTF_8)) {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                int start = 0;
+                while (start < line.length() && Character.isWhitespace(line.charAt(start))) start++;
+                if (start == line.length() || line.charAt(start) == '#') continue;
+                if (line.charAt(start) == '/') start++;
+                String commandLine = line.substring(start);
+
+                Registry registry = this.registry;
+                if (registry != resolvedWith) { // Commands were added or removed, maybe by the script itself
+                    nodes.clear();
+                    resolvedWith = registry;
+                }
+                int space = commandLine.indexOf(' ');
+                String label = space < 0 ? commandLine : commandLine.substring(0, space);
+                CommandNode node = nodes.get(label);
+                if (node == null && !nodes.containsKey(label)) {
+                    node = scriptNode(registry, label);
+                    nodes.put(label, node);
                 }
 
-                instance.addCommand(cmdInfo);
-                if (!isSubCmd) {
-                    registerCommand(cmdInfo);
-                    this.singleCommands.put(cmdInfo.name.toLowerCase(), instance);
+                ScriptLine result;
+                if (node != null)
+                    result = new ScriptLine(number, commandLine, dispatch(cs, node, label, splitArguments(commandLine, space)), true);
+                else {
+                    boolean ran;
+                    try {
+                        ran = Bukkit.dispatchCommand(cs, commandLine);
+                    } catch (RuntimeException e) { // Bukkit wraps the exceptions of the handlers
+                        plugin.getLogger().warning("Line " + number + " of " + script + " failed: " + e);
+                        ran = false;
+                    }
+                    result = new ScriptLine(number, commandLine, null, ran);
                 }
-                done = true;
+                report.add(result);
+                if (onLine != null) onLine.accept(result);
             }
         }
-        return done;
+        return report;
     }
 
-    private void registerCommand(SuperClassInfo info) {
-        Set<String> cmdNames = singleCommands.keySet();
-        cmdNames.addAll(superCommands.keySet());
-        if (cmdNames.contains(info.name.toLowerCase()))
-            throw new IllegalStateException("Cannot have two commands with the same name (case-insensitive)!");
-        PluginCommand command = null;
-        try {
-            command = this.pluginCommandConstructor.newInstance(info.name, plugin);
-        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) { e.printStackTrace(); }
-        command.setAliases(Arrays.asList(info.aliases));
-        command.setDescription(info.description);
-        this.commandMap.register(plugin.getName(), command);
-        command.setExecutor(this);
+    private static final String[] NO_ARGUMENTS = new String[0];
+
+    /**
+     * Splits the arguments of a command line on spaces like Bukkit's command map does, trailing spaces are dropped
+     * @param space index of the space after the label, -1 if there is none
+     */
+    private static String[] splitArguments(String line, int space) {
+        int end = line.length();
+        while (end > space && line.charAt(end - 1) == ' ') end--;
+        if (space < 0 || end <= space) return NO_ARGUMENTS;
+        int count = 1;
+        for (int i = line.indexOf(' ', space + 1); i >= 0 && i < end; i = line.indexOf(' ', i + 1)) count++;
+        String[] words = new String[count];
+        int start = space + 1;
+        for (int w = 0; w < count - 1; w++) {
+            int next = line.indexOf(' ', start);
+            words[w] = line.substring(start, next);
+            start = next + 1;
+        }
+        words[count - 1] = line.substring(start, end);
+        return words;
     }
 
-    /* CommandInfo -> SuperClassInfo -> ClassInfo */
-    private class ClassInfo {
-        UserType type;
-        String[] permissions;
-        PermType permType;
+    /**
+     * @return top-level node of the command the label runs, null if it isn't one of ours
+     */
+    private CommandNode scriptNode(Registry registry, String label) {
+        if (this.commandMap == null) return registry.root.child(label);
+        Command command = this.commandMap.getCommand(label); // Also knows the aliases and the plugin: prefix
+        if (!(command instanceof PluginCommand) || ((PluginCommand) command).getExecutor() != this) return null;
+        return registry.root.child(command.getName());
+    }
 
-        private ClassInfo(AnnotatedElement t) {
-            this.type = loadAnnotations(t, User.class, "value");
-            this.permissions = loadAnnotations(t, Permissions.class, "value");
-            this.permType = loadAnnotations(t, Permissions.class, "type");
+    private Executor asyncExecutor() {
+        Executor executor = this.asyncExecutor;
+        if (executor != null) return executor;
+        synchronized (this) {
+            if (this.asyncExecutor == null) {
+                AtomicInteger threads = new AtomicInteger();
+                this.ownedExecutor = Executors.newCachedThreadPool(r -> {
+                    Thread t = new Thread(r, plugin.getName() + "-command-" + threads.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+                this.asyncExecutor = this.ownedExecutor;
+            }
+            return this.asyncExecutor;
         }
     }
-    private class SuperClassInfo extends ClassInfo {
-        String name;
-        String description;
-        String[] aliases;
 
-        private SuperClassInfo(AnnotatedElement t) {
-            super(t);
-            CommandSetup cmdInfo = t.getAnnotation(CommandSetup.class);
-            this.name = cmdInfo.name();
-            this.type = cmdInfo.type();
-            this.description = loadAnnotations(t, Description.class, "value");
-            this.aliases = loadAnnotations(t, Aliases.class, "value");
+    /**
+     * Runs a task on the main thread, e.g. to change the world from an {@link Async} command.
+     * Runs it right away if this already is the main thread.
+     * @param task task to run
+     */
+    public void runSync(Runnable task) {
+        if (Bukkit.isPrimaryThread()) task.run();
+        else Bukkit.getScheduler().runTask(plugin, task);
+    }
+
+    /**
+     * Calls a task on the main thread, e.g. to read the world from an {@link Async} command
+     * @param task task to call
+     * @return future completed with the result of the task on the main thread
+     */
+    public <T> CompletableFuture<T> callSync(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        runSync(() -> {
+            try {
+                future.complete(task.call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public List<String> onTabComplete(CommandSender cs, Command cmd, String label, String[] args) {
+        CommandNode node = this.registry.root.child(cmd.getName());
+        if (node == null || args.length == 0 || (node.lazy != null && (node = initialize(node)) == null)) return Collections.emptyList();
+        int last = args.length - 1; // Argument being typed
+        int offset = 0;
+        while (offset < last) {
+            CommandNode next = node.child(args[offset]);
+            if (next == null) break;
+            node = next;
+            offset++;
+        }
+        ClassInfo classInfo = node.classInfo;
+        String typed = args[last];
+        List<String> completions = new ArrayList<>();
+        if (offset == last) { // Could still be typing a sub-command
+            for (int i = node.lowerBound(typed); i < node.keys.length && node.keys[i].regionMatches(true, 0, typed, 0, typed.length()); i++) {
+                CommandNode child = node.children[i];
+                if (canExecute(cs, classInfo, child.command != null ? child.command : classInfo) == CmdIssue.NONE)
+                    completions.add(node.keys[i]);
+            }
+        }
+        CommandInfo commandInfo = node.command;
+        ArgumentInfo arg = commandInfo == null ? null : commandInfo.argumentAt(args, offset, last);
+        if (arg != null && canExecute(cs, classInfo, commandInfo) == CmdIssue.NONE) {
+            if (arg.parser != null) {
+                arg.parser.complete(cs, typed, completions);
+                return completions;
+            }
+            switch (arg.type) {
+                case PLAYER:
+                    this.playerNames.complete(cs, typed, completions);
+                    break;
+                case INTEGER:
+                    if (arg.minInt != Integer.MIN_VALUE || arg.maxInt != Integer.MAX_VALUE)
+                        completeInt(arg.minInt, arg.maxInt, typed, completions);
+                    break;
+            }
+        }
+        return completions;
+    }
+
+    /**
+     * Adds the numbers between min and max that start with what's been typed, without going through the whole range
+     */
+    private void completeInt(long min, long max, String typed, List<String> completions) {
+        if (typed.isEmpty()) {
+            for (long i = min; i <= max && completions.size() < MAX_NUMBER_COMPLETIONS; i++)
+                completions.add(Long.toString(i));
+            return;
+        }
+        boolean negative = typed.charAt(0) == '-';
+        long low, high;
+        if (negative && typed.length() == 1) {
+            low = 1;
+            high = 9;
+        }
+        else {
+            long prefix;
+            try {
+                prefix = Math.abs(Long.parseLong(typed));
+            } catch (NumberFormatException e) { return; }
+            if (prefix == 0) { // "0" can't be the start of another number
+                if (min <= 0 && max >= 0) completions.add(typed);
+                return;
+            }
+            low = high = prefix;
+        }
+        // Numbers that start with the prefix are [prefix, prefix], [prefix*10, prefix*10+9], [prefix*100, prefix*100+99]...
+        for (; low <= Integer.MAX_VALUE + 1L; low *= 10, high = high * 10 + 9) {
+            if (negative ? -low < min : low > max) return;
+            long from = negative ? Math.max(min, -high) : Math.max(min, low);
+            long to = negative ? Math.min(max, -low) : Math.min(max, high);
+            for (long i = from; i <= to; i++) {
+                if (completions.size() >= MAX_NUMBER_COMPLETIONS) return;
+                completions.add(Long.toString(i));
+            }
+        }
+    }
+
+    /**
+     * Initializes a class with commands to be handled by CommandManager
+     * @param instance An instance of the class
+     * @throws IllegalClassException if the class does not contain any methods with CommandManager annotations
+     */
+    public void addClass(BaseCommandClass instance) throws IllegalClassException {
+        commit(Collections.emptyList(), Collections.singletonList(prepare(instance)));
+    }
+
+    /**
+     * Initializes several classes with commands. The classes are read in parallel and their commands are added to the
+     * CommandMap in one batch, none of them are added if one of the classes can't be
+     * @param instances instances of the classes
+     * @throws IllegalClassException if a class does not contain any methods with CommandManager annotations
+     */
+    public void addClasses(Collection<? extends BaseCommandClass> instances) throws IllegalClassException {
+        List<BaseCommandClass> list = new ArrayList<>(instances);
+        Set<BaseCommandClass> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (BaseCommandClass instance : list)
+            if (!distinct.add(instance)) throw new IllegalArgumentException(instance.getClass().getName() + " instance is in the collection twice");
+        PreparedClass[] prepared = new PreparedClass[list.size()];
+        RuntimeException[] errors = new RuntimeException[list.size()];
+        IntStream.range(0, list.size()).parallel().forEach(i -> { // On the common fork-join pool, each task only touches its own instance
+            try {
+                prepared[i] = prepare(list.get(i));
+            } catch (RuntimeException e) {
+                errors[i] = e;
+            }
+        });
+        for (int i = 0; i < errors.length; i++) {
+            if (errors[i] == null) continue;
+            for (PreparedClass p : prepared)
+                if (p != null) p.instance.reset();
+            throw errors[i]; // The first one in the order they were given
+        }
+        commit(Collections.emptyList(), Arrays.asList(prepared));
+    }
+
+    /**
+     * Adds a class without creating it. Only the names, aliases and descriptions of its commands are read now, from its
+     * generated registry or its annotations, so they can be put in the CommandMap. The supplier is called and the class is
+     * read like {@link #addClass(BaseCommandClass)} does the first time one of its commands is run or tab completed, on the
+     * thread that does it. If that fails the error is logged once, and the commands answer with {@link Message#ERROR}.
+     * Remove or reload it by its type, with {@link #removeClass(Class)} and {@link #reloadClass(Class, BaseCommandClass)}
+     * @param type class of the commands
+     * @param supplier creates the instance, e.g. MyCommands::new
+     * @throws IllegalClassException if the class does not contain any methods with CommandManager annotations
+     */
+    public <T extends BaseCommandClass> void addLazyClass(Class<T> type, Supplier<? extends T> supplier) throws IllegalClassException {
+        if (type == null || supplier == null) throw new IllegalArgumentException("type and supplier cannot be null");
+        PreparedClass placeholder = placeholder(type);
+        placeholder.lazy = new LazyClass(type, supplier, placeholder.instance);
+        commit(Collections.emptyList(), Collections.singletonList(placeholder));
+    }
+
+    /**
+     * Reads only the labels of a class, see {@link #addLazyClass(Class, Supplier)}. The placeholder has no sub-commands, and
+     * its commands have no arguments or handler as they are never run
+     */
+    private PreparedClass placeholder(Class<?> type) {
+        String name, description;
+        String[] aliases;
+        List<CommandSpec> commands = new ArrayList<>();
+        CommandRegistry registry = findRegistry(type);
+        if (registry != null) {
+            CommandSpec info = registry.info();
+            name = info.name;
+            description = info.description;
+            aliases = info.aliases;
+            if (name == null) Collections.addAll(commands, registry.commands());
+        }
+        else {
+            CommandSetup setup = type.getAnnotation(CommandSetup.class);
+            name = setup == null ? null : setup.name();
+            description = loadAnnotations(type, Description.class, "value");
+            aliases = loadAnnotations(type, Aliases.class, "value");
+            if (name == null) {
+                for (Method m : type.getMethods()) {
+                    CommandSetup cmd = m.getAnnotation(CommandSetup.class);
+                    if (cmd != null) commands.add(new CommandSpec(cmd.name(), UserType.ALL, new String[0], PermType.OR,
+                            loadAnnotations(m, Description.class, "value"), loadAnnotations(m, Aliases.class, "value")));
+                }
+            }
+        }
+        if (name != null)
+            return new PreparedClass(new BaseCommandClass(), new SuperClassInfo(new CommandSpec(name, UserType.ALL, new String[0], PermType.OR, description, aliases)), true);
+        if (commands.isEmpty()) throw new IllegalClassException("This class doesn't contain any methods that have CommandManager annotations!");
+        PreparedClass prepared = new PreparedClass(new BaseCommandClass(), new ClassInfo(new CommandSpec(null, UserType.ALL, new String[0], PermType.OR, null, new String[0])), false);
+        for (CommandSpec spec : commands)
+            prepared.add(new CommandInfo(new CommandSpec(spec.name, UserType.ALL, new String[0], PermType.OR, spec.description, spec.aliases)));
+        return prepared;
+    }
+
+    /**
+     * Reads the class of a placeholder node the first time one of its commands is used, see {@link #addLazyClass(Class, Supplier)}
+     * @return the node that replaced it, null if the class couldn't be read or doesn't have the command anymore
+     */
+    private CommandNode initialize(CommandNode node) {
+        if (!node.lazy.initialize()) return null;
+        SuperClassInfo info = node.command != null ? node.command : (SuperClassInfo) node.classInfo;
+        CommandNode current = this.registry.root.child(info.name);
+        return current == null || current.lazy != null ? null : current;
+    }
+
+    /**
+     * Class added with {@link CommandManager#addLazyClass(Class, Supplier)}, its placeholder is registered until it is read.
+     * Threads that use it at the same time wait for the first one to read it
+     */
+    private final class LazyClass {
+        final Class<? extends BaseCommandClass> type;
+        final Supplier<? extends BaseCommandClass> supplier;
+        final BaseCommandClass placeholder;
+        private boolean initialized;
+        private boolean failed;
+
+        private LazyClass(Class<? extends BaseCommandClass> type, Supplier<? extends BaseCommandClass> supplier, BaseCommandClass placeholder) {
+            this.type = type;
+            this.supplier = supplier;
+            this.placeholder = placeholder;
+        }
+
+        /**
+         * @return true if the class was read and replaced the placeholder
+         */
+        synchronized boolean initialize() {
+            if (this.initialized || this.failed || !isRegistered(registry, this.placeholder)) return this.initialized;
+            try {
+                BaseCommandClass instance = this.supplier.get();
+                if (!this.type.isInstance(instance))
+                    throw new IllegalStateException("The supplier of " + this.type.getName() + " returned " + (instance == null ? "null" : "a " + instance.getClass().getName()));
+                PreparedClass prepared = prepare(instance);
+                synchronized (registryLock) {
+                    if (!isRegistered(registry, this.placeholder)) { // Removed or reloaded while it was created
+                        prepared.instance.reset();
+                        return false;
+                    }
+                    commit(Collections.singletonList(this.placeholder), Collections.singletonList(prepared));
+                }
+                this.initialized = true;
+            } catch (RuntimeException e) {
+                this.failed = true; // It would fail the same way every time
+                plugin.getLogger().severe("Could not create the commands of " + this.type.getName());
+                e.printStackTrace();
+            }
+            return this.initialized;
+        }
+    }
+
+    /**
+     * Adds every class of a package of the plugin, and of its sub-packages, that extends BaseCommandClass
+     * (see {@link #addClasses(Collection)}). Abstract classes are skipped, the others need a constructor without parameters
+     * @param packageName name of the package, e.g. "me.example.myplugin.commands"
+     * @return the instances that were created and added
+     * @throws IllegalClassException if a class does not contain any methods with CommandManager annotations
+     */
+    public List<BaseCommandClass> addPackage(String packageName) throws IllegalClassException {
+        String path = packageName.replace('.', '/') + '/';
+        List<String> classNames = new ArrayList<>();
+        try {
+            Path source = Paths.get(plugin.getClass().getProtectionDomain().getCodeSource().getLocation().toURI());
+            if (Files.isDirectory(source)) { // Not packaged, e.g. when running from an IDE
+                Path dir = source.resolve(path);
+                if (Files.isDirectory(dir)) {
+                    try (Stream<Path> files = Files.walk(dir)) {
+                        files.map(f -> source.relativize(f).toString().replace(File.separatorChar, '/')).forEach(classNames::add);
+                    }
+                }
+            }
+            else {
+                try (JarFile jar = new JarFile(source.toFile())) {
+                    for (Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements(); ) {
+                        String name = entries.nextElement().getName();
+                        if (name.startsWith(path)) classNames.add(name);
+                    }
+                }
+            }
+        } catch (IOException | URISyntaxException | SecurityException e) {
+            throw new IllegalStateException("Could not list the classes of package " + packageName, e);
+        }
+        classNames.removeIf(name -> !name.endsWith(".class") || name.contains("$$")); // $$ are generated registries
+        ClassLoader loader = plugin.getClass().getClassLoader();
+        List<Class<?>> classes = classNames.parallelStream()
+                .map(name -> commandClass(loader, name.substring(0, name.length() - ".class".length()).replace('/', '.')))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        List<BaseCommandClass> instances = new ArrayList<>();
+        for (Class<?> c : classes) { // Constructors run on this thread, they might use the Bukkit API
+            try {
+                Constructor<?> constructor = c.getDeclaredConstructor();
+                constructor.setAccessible(true);
+                instances.add((BaseCommandClass) constructor.newInstance());
+            } catch (NoSuchMethodException e) {
+                this.plugin.getLogger().warning(c.getName() + " doesn't have a constructor without parameters, add it with addClass() instead");
+            } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+                throw new IllegalStateException("Could not create an instance of " + c.getName(), e);
+            }
+        }
+        addClasses(instances);
+        return instances;
+    }
+
+    /**
+     * @return the class if it is a BaseCommandClass that can be instantiated, otherwise null
+     */
+    private static Class<?> commandClass(ClassLoader loader, String className) {
+        Class<?> c;
+        try {
+            c = Class.forName(className, false, loader);
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null; // e.g. it uses another plugin that isn't installed, so it can't be a command class we can load
+        }
+        if (!BaseCommandClass.class.isAssignableFrom(c) || Modifier.isAbstract(c.getModifiers()) || c.isAnonymousClass() || c.isLocalClass()
+                || (c.isMemberClass() && !Modifier.isStatic(c.getModifiers())))
+            return null;
+        return c;
+    }
+
+    /**
+     * Class that was read by {@link #prepare}, but isn't registered yet
+     */
+    private class PreparedClass {
+        final BaseCommandClass instance;
+        final boolean isSuper;
+        final CommandNode root; // Node of the super command, its sub-commands are already in it
+        final List<CommandInfo> commands = new ArrayList<>();
+        LazyClass lazy; // Set if this is the placeholder of a class added with addLazyClass
+
+        private PreparedClass(BaseCommandClass instance, ClassInfo info, boolean isSuper) {
+            instance.init(info, isSuper);
+            this.instance = instance;
+            this.isSuper = isSuper;
+            this.root = isSuper ? new CommandNode(instance) : null;
+        }
+
+        private void add(CommandInfo cmdInfo) {
+            if (!this.isSuper && cmdInfo.name.indexOf(' ') >= 0)
+                throw new IllegalStateException(cmdInfo.name + " has spaces in its name! Only sub-commands can be nested");
+            this.instance.addCommand(cmdInfo);
+            cmdInfo.permCheck = PermissionCheck.of(this.instance.info, cmdInfo);
+            this.commands.add(cmdInfo);
+            if (!this.isSuper) return;
+            // "admin give" is the give node under the admin node of the super command
+            CommandNode node = this.root;
+            String[] path = cmdInfo.name.trim().split("\\s+");
+            for (int i = 0; i < path.length - 1; i++) {
+                CommandNode next = node.child(path[i]);
+                if (next == null) node.addChild(path[i], next = new CommandNode(this.instance));
+                node = next;
+            }
+            CommandNode leaf = node.child(path[path.length - 1]);
+            if (leaf == null) {
+                leaf = new CommandNode(this.instance);
+                node.addChild(path[path.length - 1], leaf);
+            }
+            else if (leaf.command != null) throw new IllegalStateException("Cannot have two sub-commands with the same name!");
+            leaf.command = cmdInfo;
+            for (String alias : cmdInfo.aliases)
+                node.addChild(alias, leaf);
+        }
+    }
+
+    private PreparedClass prepare(BaseCommandClass instance) {
+        return prepare(instance, findRegistry(instance.getClass()));
+    }
+
+    /**
+     * Reads a class without registering anything, so different instances can be prepared on different threads
+     * @param registry generated registry of the class, null to read its annotations
+     */
+    private PreparedClass prepare(BaseCommandClass instance, CommandRegistry registry) {
+        if (instance.info != null) throw new IllegalStateException(instance.getClass().getName() + " instance was already added");
+        try {
+            return registry != null ? prepareRegistry(instance, registry) : prepareAnnotations(instance);
+        } catch (RuntimeException e) {
+            instance.reset();
+            throw e;
+        }
+    }
+
+    private PreparedClass prepareAnnotations(BaseCommandClass instance) {
+        PreparedClass prepared;
+        if (instance.getClass().getAnnotationsByType(CommandSetup.class).length == 1) { // Super/Sub Commands
+            prepared = new PreparedClass(instance, new SuperClassInfo(instance.getClass()), true);
+            addMethods(prepared);
+        }
+        else { // Individual Commands
+            prepared = new PreparedClass(instance, new ClassInfo(instance.getClass()), false);
+            if (!addMethods(prepared)) throw new IllegalClassException("This class doesn't contain any methods that have CommandManager annotations!");
+        }
+        return prepared;
+    }
+
+    private boolean addMethods(PreparedClass prepared) {
+        BaseCommandClass instance = prepared.instance;
+        boolean done = false;
+        for (Method m : instance.getClass().getMethods()) {
+            if (m.getAnnotationsByType(CommandSetup.class).length == 1) {
+                if (m.getParameters().length != 2)
+                    throw new IllegalStateException(instance.getClass().getName() + "::" + m.getName() + " has more than 2 parameters! It must have exactly 2");
+                else if (m.getParameters()[1].getType() != ArgsContainer.class)
+                    throw new IllegalStateException(instance.getClass().getName() + "::" + m.getName() + " must have a Arguments type as its second parameter!");
+
+                CommandInfo cmdInfo = new CommandInfo(m, instance.getClass());
+                Class type = m.getParameters()[0].getType();
+                if (type != cmdInfo.type.c && (cmdInfo.type.c == CommandSender.class && type != instance.info.type.c)) {
+                    throw new IllegalStateException(instance.getClass().getName() + "::" + m.getName() + " has an incorrect first parameter! It does not match the UserType in the annotation!");
+                }
+
+                cmdInfo.handler = createHandler(instance, m);
+                prepared.add(cmdInfo);
+                done = true;
+            }
+        }
+        return done;
+    }
+
+    /**
+     * Reads a class from the {@link CommandRegistry} generated for it by {@link CommandProcessor}
+     * @param instance An instance of the class
+     * @param registry generated registry of the class
+     */
+    private PreparedClass prepareRegistry(BaseCommandClass instance, CommandRegistry registry) {
+        CommandSpec info = registry.info();
+        CommandSpec[] commands = registry.commands();
+        boolean isSuper = info.name != null;
+        if (!isSuper && commands.length == 0) throw new IllegalClassException("This class doesn't contain any methods that have CommandManager annotations!");
+        PreparedClass prepared = new PreparedClass(instance, isSuper ? new SuperClassInfo(info) : new ClassInfo(info), isSuper);
+        for (CommandSpec spec : commands) {
+            CommandInfo cmdInfo = new CommandInfo(spec);
+            @SuppressWarnings("unchecked")
+            Invoker<BaseCommandClass> invoker = (Invoker<BaseCommandClass>) spec.invoker;
+            cmdInfo.handler = (cs, args) -> invoker.invoke(instance, cs, args);
+            prepared.add(cmdInfo);
+        }
+        return prepared;
+    }
+
+    /**
+     * Removes a class that was added, its commands and aliases are removed from the CommandMap and it can be added again
+     * @param instance the instance that was added
+     * @throws IllegalArgumentException if the instance isn't registered
+     */
+    public void removeClass(BaseCommandClass instance) {
+        commit(Collections.singletonList(instance), Collections.emptyList());
+    }
+
+    /**
+     * Replaces a class with a new definition of it, e.g. after reloading a module. The new class is read first and both
+     * are swapped in one step, so the old commands keep working if it can't be added and nobody sees a half-registered command
+     * @param old the instance that was added
+     * @param replacement instance of the new definition, its names and aliases can differ from the old one
+     * @throws IllegalArgumentException if the old instance isn't registered
+     * @throws IllegalClassException if the new class does not contain any methods with CommandManager annotations
+     */
+    public void reloadClass(BaseCommandClass old, BaseCommandClass replacement) throws IllegalClassException {
+        if (old == replacement) throw new IllegalArgumentException("The replacement must be a new instance");
+        commit(Collections.singletonList(old), Collections.singletonList(prepare(replacement)));
+    }
+
+    /**
+     * Removes the class that was added with this type, see {@link #removeClass(BaseCommandClass)}. Classes added with
+     * {@link #addLazyClass(Class, Supplier)} are removed with this, whether they were created yet or not
+     * @param type class of the commands
+     * @throws IllegalArgumentException if no class of this type is registered
+     */
+    public void removeClass(Class<? extends BaseCommandClass> type) {
+        synchronized (this.registryLock) { // So a lazy class can't replace its placeholder in between
+            removeClass(registered(type));
+        }
+    }
+
+    /**
+     * Replaces the class that was added with this type, see {@link #reloadClass(BaseCommandClass, BaseCommandClass)}. A class
+     * added with {@link #addLazyClass(Class, Supplier)} is replaced whether it was created yet or not, the replacement is read right away
+     * @param type class of the commands
+     * @param replacement instance of the new definition, its names and aliases can differ from the old one
+     * @throws IllegalArgumentException if no class of this type is registered
+     * @throws IllegalClassException if the new class does not contain any methods with CommandManager annotations
+     */
+    public void reloadClass(Class<? extends BaseCommandClass> type, BaseCommandClass replacement) throws IllegalClassException {
+        synchronized (this.registryLock) {
+            reloadClass(registered(type), replacement);
+        }
+    }
+
+    /**
+     * @return the registered instance of the class, the placeholder of a lazy class that wasn't created yet
+     */
+    private BaseCommandClass registered(Class<? extends BaseCommandClass> type) {
+        if (type == null) throw new IllegalArgumentException("type cannot be null");
+        for (CommandNode node : this.registry.root.children) {
+            if (node.lazy != null ? node.lazy.type == type : node.instance.getClass() == type)
+                return node.instance;
+        }
+        throw new IllegalArgumentException(type.getName() + " isn't registered");
+    }
+
+    private static boolean isRegistered(Registry registry, BaseCommandClass instance) {
+        if (instance.info == null) return false;
+        for (SuperClassInfo info : topLevel(instance)) {
+            CommandNode node = registry.root.child(info.name);
+            if (node != null && node.instance == instance) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the commands that get a PluginCommand, the super command or every single command
+     */
+    private static Collection<SuperClassInfo> topLevel(BaseCommandClass instance) {
+        if (instance.isSuper) return Collections.singletonList((SuperClassInfo) instance.info);
+        return new LinkedHashSet<>(instance.commands.values()); // Aliases map to the same command
+    }
+
+    /**
+     * Unregisters classes and registers prepared ones by publishing a new {@link Registry}. Names and aliases are checked
+     * against each other and the commands that stay registered with one set first, so nothing changes if one of them is taken
+     */
+    private void commit(List<BaseCommandClass> removed, List<PreparedClass> prepared) {
+        synchronized (this.registryLock) {
+            Registry current = this.registry;
+            for (BaseCommandClass instance : removed) {
+                if (!isRegistered(current, instance)) {
+                    for (PreparedClass q : prepared) q.instance.reset();
+                    throw new IllegalArgumentException(instance.getClass().getName() + " instance isn't registered");
+                }
+            }
+            Set<String> freed = new HashSet<>();
+            for (BaseCommandClass instance : removed)
+                for (SuperClassInfo info : topLevel(instance))
+                    for (String name : labels(info)) freed.add(name.toLowerCase());
+            Set<String> labels = new HashSet<>();
+            for (PreparedClass p : prepared) {
+                for (SuperClassInfo info : topLevel(p.instance)) {
+                    for (String name : labels(info)) {
+                        String label = name.toLowerCase();
+                        if ((current.labels.contains(label) && !freed.contains(label)) || !labels.add(label)) {
+                            for (PreparedClass q : prepared) q.instance.reset();
+                            throw new IllegalStateException("Cannot have two commands with the same name or alias (case-insensitive)! " + name + " is used twice");
+                        }
+                    }
+                }
+            }
+
+            Map<String, PluginCommand> unregistered = new HashMap<>(); // By name, until a new command with the same labels takes it over
+            List<String> removedNames = new ArrayList<>();
+            for (BaseCommandClass instance : removed) {
+                for (SuperClassInfo info : topLevel(instance)) {
+                    removedNames.add(info.name);
+                    if (info.pluginCommand != null) unregistered.put(info.name, info.pluginCommand);
+                }
+                if (instance.isSuper) this.metrics.remove(((SuperClassInfo) instance.info).metrics.command.toLowerCase());
+                for (CommandInfo cmdInfo : new HashSet<>(instance.commands.values()))
+                    this.metrics.remove(cmdInfo.metrics.command.toLowerCase());
+            }
+
+            List<Command> commands = new ArrayList<>();
+            List<String> names = new ArrayList<>();
+            List<CommandNode> nodes = new ArrayList<>();
+            for (PreparedClass p : prepared) {
+                p.instance.commands = Collections.unmodifiableMap(p.instance.commands); // Complete, it is only read from here on
+                if (p.isSuper) {
+                    SuperClassInfo classInfo = (SuperClassInfo) p.instance.info;
+                    classInfo.metrics = newMetrics(classInfo.name);
+                    names.add(classInfo.name);
+                    p.root.lazy = p.lazy;
+                    nodes.add(p.root);
+                    if (!reuse(unregistered, classInfo)) commands.add(pluginCommand(classInfo));
+                }
+                for (CommandInfo cmdInfo : p.commands) {
+                    cmdInfo.metrics = newMetrics(p.isSuper ? ((SuperClassInfo) p.instance.info).name + " " + cmdInfo.name : cmdInfo.name);
+                    startCooldown(cmdInfo);
+                    if (cmdInfo.rateLimit != null && cmdInfo.rateLimit.interval > 0) startRateLimitSweep();
+                    if (p.isSuper) continue;
+                    CommandNode node = new CommandNode(p.instance);
+                    node.command = cmdInfo;
+                    node.lazy = p.lazy;
+                    names.add(cmdInfo.name);
+                    nodes.add(node);
+                    if (!reuse(unregistered, cmdInfo)) commands.add(pluginCommand(cmdInfo));
+                }
+            }
+            Set<String> allLabels = new HashSet<>(current.labels);
+            allLabels.removeAll(freed);
+            allLabels.addAll(labels);
+            // Old and new commands are swapped in one step, threads that already read the old registry finish with it
+            this.registry = new Registry(current.root.withChildren(removedNames, names, nodes), allLabels);
+            PlanCache plans = this.planCache;
+            if (plans != null) plans.clear(); // Their keys can't match anymore, don't keep the old instances alive until they're pushed out
+
+            for (PluginCommand command : unregistered.values()) unregister(command);
+            for (BaseCommandClass instance : removed) instance.reset(); // Nothing of ours keeps it alive after this
+            if (!commands.isEmpty()) this.commandMap.registerAll(plugin.getName(), commands);
+        }
+    }
+
+    /**
+     * Hands the PluginCommand of a removed command to a new command with the same name and aliases, so swapping in a new
+     * definition of a command (or reading a lazy class) doesn't touch the CommandMap
+     * @param unregistered PluginCommands of the removed commands by name
+     * @return true if the command took over one of them
+     */
+    private static boolean reuse(Map<String, PluginCommand> unregistered, SuperClassInfo info) {
+        PluginCommand command = unregistered.get(info.name);
+        if (command == null || !command.getAliases().equals(Arrays.asList(info.aliases))) return false;
+        unregistered.remove(info.name);
+        command.setDescription(info.description);
+        info.pluginCommand = command;
+        return true;
+    }
+
+    private static String[] labels(SuperClassInfo info) {
+        String[] names = new String[info.aliases.length + 1];
+        names[0] = info.name;
+        System.arraycopy(info.aliases, 0, names, 1, info.aliases.length);
+        return names;
+    }
+
+    /**
+     * Removes a command from the CommandMap, including its aliases and its plugin:name label
+     */
+    private void unregister(PluginCommand command) {
+        if (command == null) return;
+        if (this.knownCommands != null)
+            this.knownCommands.values().removeIf(c -> c == command);
+        command.unregister(this.commandMap);
+        command.setExecutor(null);
+        command.setTabCompleter(null);
+    }
+
+    private CommandMetrics newMetrics(String path) {
+        CommandMetrics m = new CommandMetrics(path.trim().replaceAll("\\s+", " "));
+        this.metrics.put(m.command.toLowerCase(), m);
+        return m;
+    }
+
+    private void startCooldown(CommandInfo cmdInfo) {
+        if (cmdInfo.cooldownNanos <= 0) return;
+        cmdInfo.cooldown = new Cooldowns(this.cooldownWheel, cmdInfo.cooldownNanos, PermissionCheck.of(cmdInfo.cooldownBypass));
+        if (this.cooldownTask == null) // Evict expired cooldowns every tick
+            this.cooldownTask = Bukkit.getScheduler().runTaskTimer(plugin, () -> this.cooldownWheel.advance(System.nanoTime()), 1, 1);
+    }
+
+    private CommandRegistry findRegistry(Class<?> c) {
+        try {
+            Class<?> registry = Class.forName(c.getName() + CommandProcessor.REGISTRY_SUFFIX, true, c.getClassLoader());
+            return (CommandRegistry) registry.getConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            return null; // Not processed at compile time, fall back to reading the annotations
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            this.plugin.getLogger().warning("Could not load the generated command registry for " + c.getName() + ", reading its annotations instead");
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Command> findKnownCommands(CommandMap map) {
+        for (Class<?> c = map.getClass(); c != null; c = c.getSuperclass()) {
+            try {
+                Field f = c.getDeclaredField("knownCommands"); // SimpleCommandMap's, there is no API to remove a command
+                f.setAccessible(true);
+                return (Map<String, Command>) f.get(map);
+            } catch (NoSuchFieldException e) {
+                // Declared by a superclass
+            } catch (IllegalAccessException | RuntimeException e) {
+                break;
+            }
+        }
+        this.plugin.getLogger().warning("Could not access the known commands of the CommandMap, removed commands will stay in it");
+        return null;
+    }
+
+    /**
+     * Resolves a command method once so dispatching it doesn't need any reflection
+     * @param instance instance the handler is bound to
+     * @param m the annotated method
+     * @return handler that calls the method directly
+     */
+    private Handler createHandler(BaseCommandClass instance, Method m) {
+        Class<?> type = m.getParameterTypes()[0];
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            if (Modifier.isPublic(instance.getClass().getModifiers()) && Modifier.isPublic(m.getDeclaringClass().getModifiers())
+                    && isVisible(instance.getClass()) && isVisible(m.getDeclaringClass())) {
+                // Spins a class that calls the method directly so the JIT can inline through it
+                CallSite site = LambdaMetafactory.metafactory(lookup, "handle",
+                        MethodType.methodType(Handler.class, instance.getClass()),
+                        MethodType.methodType(void.class, CommandSender.class, ArgsContainer.class),
+                        lookup.unreflect(m),
+                        MethodType.methodType(void.class, type, ArgsContainer.class));
+                return (Handler) site.getTarget().invoke(instance);
+            }
+            m.setAccessible(true);
+            MethodHandle handle = lookup.unreflect(m).bindTo(instance)
+                    .asType(MethodType.methodType(void.class, CommandSender.class, ArgsContainer.class));
+            return (cs, args) -> { handle.invokeExact(cs, args); };
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not create a handler for " + instance.getClass().getName() + "::" + m.getName(), t);
+        }
+    }
+
+    private PluginCommand pluginCommand(SuperClassInfo info) {
+        PluginCommand command = null;
+        try {
+            command = this.pluginCommandConstructor.newInstance(info.name, plugin);
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) { e.printStackTrace(); }
+        command.setAliases(Arrays.asList(info.aliases));
+        command.setDescription(info.description);
+        command.setExecutor(this);
+        command.setTabCompleter(this);
+        info.pluginCommand = command;
+        return command;
+    }
+
+    /* CommandInfo -> SuperClassInfo -> ClassInfo */
+    private class ClassInfo {
+        UserType type;
+        String[] permissions;
+        PermType permType;
+        PermissionCheck permCheck; // Of this and the class, see PermissionCheck#of(ClassInfo...)
+
+        private ClassInfo(AnnotatedElement t) {
+            this.type = loadAnnotations(t, User.class, "value");
+            this.permissions = loadAnnotations(t, Permissions.class, "value");
+            this.permType = loadAnnotations(t, Permissions.class, "type");
+        }
+
+        private ClassInfo(CommandSpec spec) {
+            this.type = spec.type;
+            this.permissions = spec.permissions;
+            this.permType = spec.permType;
+        }
+    }
+    private class SuperClassInfo extends ClassInfo {
+        String name;
+        String description;
+        String[] aliases;
+        CommandMetrics metrics;
+        PluginCommand pluginCommand; // null until it is registered, only top-level commands have one
+        boolean showHelp = true; // See SuperCmdOptions
+        boolean filterByPerms = true;
+
+        private SuperClassInfo(AnnotatedElement t) {
+            super(t);
+            CommandSetup cmdInfo = t.getAnnotation(CommandSetup.class);
+            this.name = cmdInfo.name();
+            this.type = cmdInfo.type();
+            this.description = loadAnnotations(t, Description.class, "value");
+            this.aliases = loadAnnotations(t, Aliases.class, "value");
+            SuperCmdOptions options = t.getAnnotation(SuperCmdOptions.class);
+            if (options != null) {
+                this.showHelp = options.showHelp();
+                this.filterByPerms = options.filterByPerms();
+            }
+        }
+
+        private SuperClassInfo(CommandSpec spec) {
+            super(spec);
+            this.name = spec.name;
+            this.description = spec.description;
+            this.aliases = spec.aliases;
+            this.showHelp = spec.showHelp;
+            this.filterByPerms = spec.filterByPerms;
+        }
+    }
+    private class CommandInfo extends SuperClassInfo {
+        boolean ignoreCase;
+        ArgumentInfo[] args;
+        String methodName;
+        String usageString; //TODO: Add annotation to customize
+        boolean async;
+        long cooldownNanos;
+        String cooldownBypass;
+        Cooldowns cooldown;
+        long budgetNanos; // 0 to use the one of the watchdog
+        Rate rateLimit; // null to use the one of setCommandRateLimit
+        final ConcurrentHashMap<Object, AtomicLong> rateBuckets = new ConcurrentHashMap<>(); // Player UUID -> bucket
+        int requiredTokens; // Fewest words the arguments can be given with
+        Map<String, Integer> argSlots;
+        ArgsContainer noArgs;
+        ArgsContainer defaults; // Defaults that don't depend on the sender, parsed once
+        boolean cacheable; // Parsed lines can be reused, none of the arguments depend on the sender
+        Handler handler;
+        private MethodHandle compiledParser; // Built on first use, races only build it twice
+
+        /**
+         * @param owner class the command is read from, its annotations are the defaults of the method's even if it inherited the method
+         */
+        private CommandInfo(Method m, Class<?> owner) {
+            super(m);
+            this.ignoreCase = loadAnnotations(m, CommandSetup.class, "ignoreCase");
+            Argument[] a = new Argument[] { };
+            if (m.getAnnotationsByType(Argument.class).length > 0)
+                a = m.getAnnotationsByType(Argument.class);
+            this.usageString = "/" + this.name;
+            List<ArgumentInfo> l = new ArrayList<>();
+            List<String> argNames = new ArrayList<>();
+            for (int i = 0; i < a.length; i++) {
+                if (!argNames.contains(a[i].name())) {
+                    argNames.add(a[i].name());
+                    l.add(new ArgumentInfo(a[i], i));
+                    this.usageString += " " + argUsage(a[i].name(), a[i].optional(), a[i].greedy());
+                }
+                else throw new IllegalStateException("Cannot have two arguments with the same name!");
+            }
+            this.args = l.toArray(new ArgumentInfo[l.size()]);
+            this.methodName = m.getName();
+            this.async = m.isAnnotationPresent(Async.class) || owner.isAnnotationPresent(Async.class);
+            Cooldown cooldown = m.isAnnotationPresent(Cooldown.class) ? m.getAnnotation(Cooldown.class) : owner.getAnnotation(Cooldown.class);
+            if (cooldown != null) {
+                this.cooldownNanos = cooldown.unit().toNanos(cooldown.value());
+                this.cooldownBypass = cooldown.bypassPermission();
+            }
+            Budget budget = m.isAnnotationPresent(Budget.class) ? m.getAnnotation(Budget.class) : owner.getAnnotation(Budget.class);
+            if (budget != null) this.budgetNanos = budget.unit().toNanos(budget.value());
+            RateLimit rateLimit = m.isAnnotationPresent(RateLimit.class) ? m.getAnnotation(RateLimit.class) : owner.getAnnotation(RateLimit.class);
+            if (rateLimit != null) this.rateLimit = Rate.override(rateLimit.value(), rateLimit.burst());
+            indexArgs();
+        }
+
+        private CommandInfo(CommandSpec spec) {
+            super(spec);
+            this.ignoreCase = spec.ignoreCase;
+            this.usageString = "/" + this.name;
+            this.args = new ArgumentInfo[spec.args.length];
+            for (int i = 0; i < spec.args.length; i++) {
+                this.args[i] = new ArgumentInfo(spec.args[i], i);
+                this.usageString += " " + argUsage(spec.args[i].name, spec.args[i].optional, spec.args[i].greedy);
+            }
+            this.methodName = spec.methodName;
+            this.async = spec.async;
+            this.cooldownNanos = spec.cooldownNanos;
+            this.cooldownBypass = spec.cooldownBypass;
+            this.budgetNanos = spec.budgetNanos;
+            if (spec.rateLimited) this.rateLimit = Rate.override(spec.ratePerSecond, spec.rateBurst);
+            indexArgs();
+        }
+
+        private void indexArgs() {
+            this.argSlots = new HashMap<>();
+            this.defaults = new ArgsContainer(this);
+            this.cacheable = true;
+            for (ArgumentInfo arg : this.args) {
+                this.argSlots.put(arg.name, arg.position);
+                if (arg.parser != null ? !arg.parser.cacheable() : arg.type == ArgType.PLAYER) this.cacheable = false;
+                if (arg.position > 0 && this.args[arg.position - 1].optional && !arg.optional)
+                    throw new IllegalStateException("Argument " + arg.name + " of " + this.name + " must be optional, it comes after an optional argument");
+                if (arg.greedy && (arg.position != this.args.length - 1 || arg.type != ArgType.STRING || arg.parser != null))
+                    throw new IllegalStateException("Only the last argument of " + this.name + " can be greedy and it must be a STRING");
+                if (!arg.optional) this.requiredTokens += arg.tokens;
+                else if (!arg.def.isEmpty() && arg.parser == null && arg.type != ArgType.PLAYER) { // Players and parsed types can depend on who runs it
+                    if (parseInto(null, arg, arg.def, this.defaults) != null)
+                        throw new IllegalStateException("The default value \"" + arg.def + "\" of argument " + arg.name + " of " + this.name + " is not valid");
+                    arg.constantDefault = true;
+                }
+            }
+            this.noArgs = new ArgsContainer(this);
+        }
+
+        /**
+         * @return the parser of the {@link ParserBackend#COMPILED} backend, null if an argument takes several words
+         */
+        private MethodHandle compiledParser() {
+            MethodHandle parser = this.compiledParser;
+            if (parser == null) this.compiledParser = parser = CompiledParser.build(CommandManager.this, this);
+            return parser == CompiledParser.UNSUPPORTED ? null : parser;
+        }
+
+        /**
+         * Walks the words before the one being typed the same way {@link #onCommand} reads them
+         * @param last index of the word being typed
+         * @return argument the word belongs to, or null if there isn't one
+         */
+        private ArgumentInfo argumentAt(String[] words, int offset, int last) {
+            int word = offset;
+            for (ArgumentInfo arg : this.args) {
+                if (word == last) return arg;
+                int end = argumentEnd(arg, words, word);
+                if (end < 0) return null; // Inside a quoted string
+                if (end > last) return arg;
+                word = end;
+            }
+            return null;
+        }
+    }
+
+    private class ArgumentInfo {
+        String name;
+        ArgType type;
+        int minInt;
+        int maxInt;
+        double minDouble;
+        double maxDouble;
+        int minStrLen;
+        int maxStrLen;
+        int position;
+        int tokens; // Words it takes, 1 unless its parser reads several
+        boolean optional;
+        String def;
+        boolean greedy;
+        boolean constantDefault; // Parsed into CommandInfo#defaults
+        ArgumentParser<?> parser; // null for the ArgType ones
+        Class<?> valueClass;
+        String desc;
+        MessageTemplate parserError; // Error template published by the parser
+        MessageTemplate[] renderedWith; // Messages the invalid messages below were rendered with
+        MessageTemplate invalidTemplate;
+        MessageTemplate outOfBoundsTemplate;
+        String invalidMsg; // null if the template needs the input
+        String outOfBoundsMsg;
+
+        private ArgumentInfo(Argument a, int position) {
+            this.name = a.name();
+            this.type = a.type();
+            this.minInt = a.minInt();
+            this.maxInt = a.maxInt();
+            this.minDouble = a.minDouble();
+            this.maxDouble = a.maxDouble();
+            this.minStrLen = a.minStrLen();
+            this.maxStrLen = a.maxStrLen();
+            this.position = position;
+            this.optional = a.optional();
+            this.def = a.def();
+            this.greedy = a.greedy();
+            resolve(a.valueType());
+            render(messages);
+        }
+
+        private ArgumentInfo(ArgumentSpec a, int position) {
+            this.name = a.name;
+            this.type = a.type;
+            this.minInt = a.minInt;
+            this.maxInt = a.maxInt;
+            this.minDouble = a.minDouble;
+            this.maxDouble = a.maxDouble;
+            this.minStrLen = a.minStrLen;
+            this.maxStrLen = a.maxStrLen;
+            this.position = position;
+            this.optional = a.optional;
+            this.def = a.def;
+            this.greedy = a.greedy;
+            resolve(a.valueType);
+            render(messages);
+        }
+
+        private void resolve(Class<?> valueType) {
+            this.tokens = 1;
+            if (valueType == Object.class) {
+                this.valueClass = this.type.c;
+                this.desc = this.type.desc;
+                return;
+            }
+            if (valueType == long.class) valueType = Long.class;
+            else if (valueType == boolean.class) valueType = Boolean.class;
+            this.parser = parserFor(valueType);
+            this.valueClass = valueType;
+            this.desc = this.parser.description();
+            this.tokens = this.parser.tokens();
+            if (this.parser.errorTemplate() != null)
+                this.parserError = MessageTemplate.compile(Message.INVALID_ARGUMENT.placeholders, this.parser.errorTemplate());
+        }
+
+        /**
+         * @param outOfBounds if the argument parsed, but isn't within its bounds
+         * @param input what was typed for the argument
+         */
+        private String invalidMessage(boolean outOfBounds, String input) {
+            MessageTemplate[] current = messages;
+            if (current != this.renderedWith) render(current); // Messages were changed since
+            if (outOfBounds && this.parser == null && this.type.v != null)
+                return this.outOfBoundsMsg != null ? this.outOfBoundsMsg : renderOutOfBounds(this.outOfBoundsTemplate, input);
+            return this.invalidMsg != null ? this.invalidMsg : this.invalidTemplate.render(ordinal(this.position + 1), this.name, this.desc, input);
+        }
+
+        private void render(MessageTemplate[] templates) {
+            this.invalidTemplate = this.parserError != null ? this.parserError : templates[Message.INVALID_ARGUMENT.ordinal()];
+            this.invalidMsg = this.invalidTemplate.uses(3) ? null : this.invalidTemplate.render(ordinal(this.position + 1), this.name, this.desc, ""); // 3 is %input%
+            this.outOfBoundsTemplate = templates[Message.ARGUMENT_OUT_OF_BOUNDS.ordinal()];
+            this.outOfBoundsMsg = this.outOfBoundsTemplate.uses(6) ? null : renderOutOfBounds(this.outOfBoundsTemplate, ""); // 6 is %input%
+            this.renderedWith = templates;
+        }
+
+        private String renderOutOfBounds(MessageTemplate template, String input) {
+            String min, max;
+            switch (this.type) {
+                case INTEGER:
+                    min = "" + this.minInt;
+                    max = "" + this.maxInt;
+                    break;
+                case DOUBLE:
+                    min = "" + this.minDouble;
+                    max = "" + this.maxDouble;
+                    break;
+                case STRING:
+                    min = "" + this.minStrLen;
+                    max = "" + this.maxStrLen;
+                    break;
+                default:
+                    min = max = "";
+            }
+            return template.render(ordinal(this.position + 1), this.name, this.desc, this.type.v == null ? "" : this.type.v, min, max, input);
+        }
+    }
+
+    /**
+     * Registered commands. It is never changed once published, writers build a new one under the registry lock and swap it in,
+     * so onCommand and onTabComplete read it with a single volatile read and no locks
+     */
+    private static final class Registry {
+        final CommandNode root; // Top-level commands
+        final Set<String> labels; // Lowercase names and aliases of the commands in the CommandMap
+
+        private Registry(CommandNode root, Set<String> labels) {
+            this.root = root;
+            this.labels = Collections.unmodifiableSet(labels);
+        }
+    }
+
+    /**
+     * Node of the command tree. Children are matched case-insensitively without allocating lowercase copies
+     */
+    private class CommandNode {
+        final BaseCommandClass instance;
+        final ClassInfo classInfo; // Of the instance, so dispatch never reads the instance itself
+        CommandInfo command; // null if this is the super command itself or only has sub-commands
+        String[] keys = new String[0]; // Names and aliases of the children, sorted case-insensitively
+        CommandNode[] children = new CommandNode[0];
+        volatile HelpPages help; // Built the first time someone asks for it
+        LazyClass lazy; // Set on the top-level nodes of a placeholder, see addLazyClass
+
+        private CommandNode(BaseCommandClass instance) {
+            this.instance = instance;
+            this.classInfo = instance == null ? null : instance.info;
+        }
+
+        private int lowerBound(String name) {
+            int i = Arrays.binarySearch(keys, name, String.CASE_INSENSITIVE_ORDER);
+            return i < 0 ? -i - 1 : i;
+        }
+
+        private int indexOf(String name) {
+            int i = Arrays.binarySearch(keys, name, String.CASE_INSENSITIVE_ORDER);
+            return i < 0 ? -1 : i;
+        }
+
+        private CommandNode child(String name) {
+            int i = indexOf(name);
+            return i < 0 ? null : children[i];
+        }
+
+        /**
+         * Only used while a class is prepared, published nodes are never changed
+         */
+        private void addChild(String name, CommandNode node) {
+            int i = Arrays.binarySearch(keys, name, String.CASE_INSENSITIVE_ORDER);
+            if (i >= 0) throw new IllegalStateException("Cannot have two sub-commands with the same alias");
+            i = -i - 1;
+            String[] newKeys = new String[keys.length + 1];
+            CommandNode[] newChildren = new CommandNode[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, i);
+            System.arraycopy(children, 0, newChildren, 0, i);
+            newKeys[i] = name;
+            newChildren[i] = node;
+            System.arraycopy(keys, i, newKeys, i + 1, keys.length - i);
+            System.arraycopy(children, i, newChildren, i + 1, children.length - i);
+            this.keys = newKeys;
+            this.children = newChildren;
+        }
+
+        /**
+         * @return copy of this node with several children removed and added, built with one copy of the arrays
+         */
+        private CommandNode withChildren(Collection<String> removed, List<String> names, List<CommandNode> nodes) {
+            TreeMap<String, CommandNode> merged = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (int i = 0; i < keys.length; i++) merged.put(keys[i], children[i]);
+            for (String name : removed) merged.remove(name);
+            for (int i = 0; i < names.size(); i++)
+                if (merged.put(names.get(i), nodes.get(i)) != null) throw new IllegalStateException("Cannot have two sub-commands with the same alias");
+            CommandNode copy = new CommandNode(this.instance);
+            copy.command = this.command;
+            copy.keys = merged.keySet().toArray(new String[0]);
+            copy.children = merged.values().toArray(new CommandNode[0]);
+            return copy;
+        }
+    }
+
+    /**
+     * Online players for PLAYER arguments and their completions, kept up to date by join and quit events.
+     * Lookups read an immutable {@link Index} that is rebuilt on the first lookup after someone joined or quit,
+     * so they don't lock or allocate and a burst of joins only costs one rebuild
+     */
+    static class PlayerNames implements Listener {
+        private static final ArgumentParsers.UuidParser UUIDS = new ArgumentParsers.UuidParser();
+        private final Map<UUID, Player> online = new HashMap<>(); // Guarded by this
+        private volatile Index index = Index.EMPTY; // null if players joined or quit since it was built
+
+        @EventHandler(priority = EventPriority.LOWEST)
+        public void onJoin(PlayerJoinEvent event) {
+            add(event.getPlayer());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR)
+        public void onQuit(PlayerQuitEvent event) {
+            remove(event.getPlayer());
+        }
+
+        synchronized void add(Player p) {
+            online.put(p.getUniqueId(), p);
+            index = null;
+        }
+
+        synchronized void remove(Player p) {
+            if (online.remove(p.getUniqueId(), p)) index = null;
+        }
+
+        private Index index() {
+            Index current = index;
+            if (current != null) return current;
+            synchronized (this) {
+                if (index == null) index = new Index(online.values());
+                return index;
+            }
+        }
+
+        /**
+         * Finds a player like {@link Bukkit#getPlayer(String)} does: the exact name (ignoring case), then the start of a name
+         * as the matching allows. A UUID finds the player with it
+         * @return the player, or null if nobody matches
+         */
+        Player resolve(CharSequence input, int start, int end, PlayerMatching matching) {
+            Index idx = index();
+            Player p = idx.exact(input, start, end);
+            if (p != null) return p;
+            if (end - start == 32 || end - start == 36) { // Longer than any name
+                UUID uuid = UUIDS.parse(null, input, start, end);
+                if (uuid != null) return idx.byUuid.get(uuid);
+            }
+            if (matching == PlayerMatching.EXACT || start == end) return null;
+            Node node = idx.find(input, start, end);
+            if (node == null || (matching == PlayerMatching.UNIQUE && node.count > 1)) return null;
+            return node.shortest;
+        }
+
+        /**
+         * @return true if the player is online, false if they quit (even if they joined again since)
+         */
+        boolean isOnline(Player p) {
+            return index().byUuid.get(p.getUniqueId()) == p;
+        }
+
+        /**
+         * @return names starting with the prefix, in alphabetical order
+         */
+        List<String> matches(String prefix, int limit) {
+            List<String> names = new ArrayList<>();
+            Node node = index().find(prefix, 0, prefix.length());
+            if (node != null) node.collect(null, names, limit);
+            return names;
+        }
+
+        void complete(CommandSender cs, String prefix, List<String> completions) {
+            Node node = index().find(prefix, 0, prefix.length());
+            if (node != null) node.collect(cs instanceof Player ? (Player) cs : null, completions, Integer.MAX_VALUE);
+        }
+
+        private static char fold(char c) { // What String#regionMatches(true...) compares
+            if (c < 128) return c >= 'A' && c <= 'Z' ? (char) (c + 32) : c;
+            return Character.toLowerCase(Character.toUpperCase(c));
+        }
+
+        private static final class Index {
+            static final Index EMPTY = new Index(Collections.emptyList());
+
+            final String[] names; // Open addressing by the case-insensitive hash of the name
+            final Player[] players;
+            final Map<UUID, Player> byUuid = new HashMap<>();
+            final Node root = new Node();
+
+            private Index(Collection<Player> online) {
+                int size = Integer.highestOneBit(Math.max(4, online.size() * 2 - 1)) << 1;
+                this.names = new String[size];
+                this.players = new Player[size];
+                List<Player> sorted = new ArrayList<>(online);
+                sorted.sort(Comparator.comparing(Player::getName, String.CASE_INSENSITIVE_ORDER));
+                for (Player p : sorted) {
+                    String name = p.getName();
+                    int i = hash(name, 0, name.length()) & (size - 1);
+                    while (names[i] != null) i = (i + 1) & (size - 1);
+                    names[i] = name;
+                    players[i] = p;
+                    byUuid.put(p.getUniqueId(), p);
+                    root.insert(name, p);
+                }
+            }
+
+            private static int hash(CharSequence s, int start, int end) {
+                int h = 0;
+                for (int i = start; i < end; i++) h = 31 * h + fold(s.charAt(i));
+                return h ^ (h >>> 16);
+            }
+
+            private Player exact(CharSequence s, int start, int end) {
+                int len = end - start;
+                for (int i = hash(s, start, end) & (names.length - 1); names[i] != null; i = (i + 1) & (names.length - 1)) {
+                    String name = names[i];
+                    if (name.length() == len && regionMatches(name, s, start)) return players[i];
+                }
+                return null;
+            }
+
+            private static boolean regionMatches(String name, CharSequence s, int start) {
+                for (int i = 0; i < name.length(); i++)
+                    if (fold(name.charAt(i)) != fold(s.charAt(start + i))) return false;
+                return true;
+            }
+
+            /**
+             * @return node of the prefix, or null if no name starts with it
+             */
+            private Node find(CharSequence s, int start, int end) {
+                Node node = root;
+                for (int i = start; i < end && node != null; i++) node = node.child(fold(s.charAt(i)));
+                return node;
+            }
+        }
+
+        /**
+         * Trie node of the folded characters of the names
+         */
+        private static final class Node {
+            char[] chars = new char[0]; // Next characters, sorted
+            Node[] next = new Node[0];
+            Player player; // Whose name ends here
+            Player shortest; // Shortest name under this node, what Bukkit#getPlayer(String) picks for this prefix
+            int count; // Names under this node
+
+            private Node child(char c) {
+                int i = Arrays.binarySearch(chars, c);
+                return i < 0 ? null : next[i];
+            }
+
+            private void insert(String name, Player p) {
+                Node node = this;
+                for (int i = 0; ; i++) {
+                    node.count++;
+                    if (node.shortest == null || name.length() < node.shortest.getName().length()) node.shortest = p;
+                    if (i == name.length()) break;
+                    char c = fold(name.charAt(i));
+                    int j = Arrays.binarySearch(node.chars, c);
+                    if (j < 0) {
+                        j = -j - 1;
+                        char[] chars = new char[node.chars.length + 1];
+                        Node[] next = new Node[chars.length];
+                        System.arraycopy(node.chars, 0, chars, 0, j);
+                        System.arraycopy(node.next, 0, next, 0, j);
+                        chars[j] = c;
+                        next[j] = new Node();
+                        System.arraycopy(node.chars, j, chars, j + 1, node.chars.length - j);
+                        System.arraycopy(node.next, j, next, j + 1, node.next.length - j);
+                        node.chars = chars;
+                        node.next = next;
+                    }
+                    node = node.next[j];
+                }
+                node.player = p;
+            }
+
+            /**
+             * Adds the names under this node in alphabetical order
+             * @param viewer only adds the players they can see, null for everyone
+             */
+            private void collect(Player viewer, List<String> names, int limit) {
+                if (names.size() >= limit) return;
+                if (player != null && (viewer == null || viewer.canSee(player))) names.add(player.getName());
+                for (Node n : next) n.collect(viewer, names, limit);
+            }
+        }
+    }
+
+    /**
+     * Token bucket stored as the time it is full again (the generic cell rate algorithm), so taking a token is a single
+     * compare-and-set and a bucket is just an AtomicLong
+     */
+    static final class Rate {
+        static final Rate UNLIMITED = new Rate(0, 0);
+
+        final long interval; // Nanoseconds to earn a token, 0 for no limit
+        final long tolerance; // How far ahead of now a bucket may be, (burst - 1) intervals
+
+        private Rate(long interval, long tolerance) {
+            this.interval = interval;
+            this.tolerance = tolerance;
+        }
+
+        /**
+         * @return the rate, null if perSecond isn't positive
+         */
+        static Rate of(double perSecond, int burst) {
+            if (perSecond <= 0) return null;
+            if (burst <= 0) throw new IllegalArgumentException("burst must be positive");
+            long interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / perSecond));
+            return new Rate(interval, interval * (burst - 1));
+        }
+
+        /**
+         * @return the rate of a {@link RateLimit}, where 0 means no limit instead of the default one
+         */
+        static Rate override(double perSecond, int burst) {
+            Rate rate = of(perSecond, burst);
+            return rate != null ? rate : UNLIMITED;
+        }
+
+        static AtomicLong newBucket() {
+            return new AtomicLong(Long.MIN_VALUE); // Full
+        }
+
+        boolean tryAcquire(AtomicLong bucket, long now) {
+            if (this.interval == 0) return true;
+            while (true) {
+                long full = bucket.get();
+                long from = isFull(full, now) ? now : full;
+                if (from - now > this.tolerance) return false;
+                if (bucket.compareAndSet(full, from + this.interval)) return true;
+            }
+        }
+
+        boolean tryAcquire(ConcurrentHashMap<Object, AtomicLong> buckets, Object key, long now) {
+            if (this.interval == 0) return true;
+            AtomicLong bucket = buckets.get(key);
+            if (bucket == null) bucket = buckets.computeIfAbsent(key, k -> newBucket());
+            return tryAcquire(bucket, now);
+        }
+
+        /**
+         * Drops the buckets that are full, they behave like new ones. A token taken while its bucket is dropped is forgotten
+         */
+        static void sweep(ConcurrentHashMap<Object, AtomicLong> buckets, long now) {
+            buckets.values().removeIf(bucket -> isFull(bucket.get(), now));
+        }
+
+        private static boolean isFull(long full, long now) {
+            return full == Long.MIN_VALUE || full - now <= 0; // Compared as a difference, nanoTime can overflow
+        }
+    }
+
+    /**
+     * Spreads bursts of commands over ticks, see {@link CommandManager#enableScheduling(long, TimeUnit, int, int)}.
+     * Queues are only touched on the main thread, the counters can be read from anywhere
+     */
+    private final class CommandScheduler {
+        final long budget; // Nanoseconds of commands per tick
+        final int maxQueued;
+        final int maxPerSender;
+        final BukkitTask task;
+        final Map<Object, SenderQueue> queues = new HashMap<>(); // UUID of players, the sender itself otherwise
+        final ArrayDeque<SenderQueue> turns = new ArrayDeque<>(); // Senders with queued commands, in the order they run their next one
+        long used; // Nanoseconds of commands run this tick
+        volatile int queued;
+        volatile int peak;
+        final LongAdder deferred = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+
+        private CommandScheduler(long budget, int maxQueued, int maxPerSender) {
+            this.budget = budget;
+            this.maxQueued = maxQueued;
+            this.maxPerSender = maxPerSender;
+            this.task = Bukkit.getScheduler().runTaskTimer(plugin, this::tick, 1, 1);
+        }
+
+        private void submit(CommandSender cs, Command cmd, CommandNode node, String label, String[] args) {
+            Object key = cs instanceof Player ? ((Player) cs).getUniqueId() : cs;
+            SenderQueue queue = this.queues.get(key);
+            if (queue == null && this.used < this.budget) { // Nothing of theirs is waiting, so it can't overtake anything
+                run(cs, node, label, args);
+                return;
+            }
+            if (this.queued >= this.maxQueued || (queue != null && queue.commands.size() >= this.maxPerSender)) {
+                this.rejected.increment();
+                cs.sendMessage(message(Message.QUEUE_FULL));
+                return;
+            }
+            if (queue == null) {
+                this.queues.put(key, queue = new SenderQueue(key));
+                this.turns.add(queue);
+            }
+            queue.commands.add(new Pending(cs, cmd, label, args));
+            this.queued++;
+            if (this.queued > this.peak) this.peak = this.queued;
+            this.deferred.increment();
+            cs.sendMessage(message(Message.QUEUED, Integer.toString(position(queue))));
+        }
+
+        /**
+         * @return place of the last command of the queue in the order the commands will run, starting at 1
+         */
+        private int position(SenderQueue queue) {
+            int ahead = queue.commands.size() - 1; // Of their own
+            int position = ahead + 1;
+            boolean after = false; // Senders after this one in the turns run one less command before it
+            for (SenderQueue other : this.turns) {
+                if (other == queue) after = true;
+                else position += Math.min(other.commands.size(), after ? ahead : ahead + 1);
+            }
+            return position;
+        }
+
+        private void tick() {
+            this.used = 0;
+            drain();
+        }
+
+        private void drain() {
+            while (this.used < this.budget && !this.turns.isEmpty()) {
+                SenderQueue queue = this.turns.poll();
+                Pending pending = queue.commands.poll();
+                if (queue.commands.isEmpty()) this.queues.remove(queue.key);
+                else this.turns.add(queue); // Back of the line until the others had their turn
+                this.queued--;
+                CommandNode node = registry.root.child(pending.cmd.getName());
+                if (node == null) continue; // Removed since
+                if (pending.cs instanceof Player && !playerNames.isOnline((Player) pending.cs)) continue;
+                run(pending.cs, node, pending.label, pending.args);
+            }
+        }
+
+        private void run(CommandSender cs, CommandNode node, String label, String[] args) {
+            long start = System.nanoTime();
+            try {
+                dispatch(cs, node, label, args);
+            } finally {
+                this.used += System.nanoTime() - start;
+            }
+        }
+
+        /**
+         * @param runQueued run the queued commands right away instead of dropping them
+         */
+        private void stop(boolean runQueued) {
+            this.task.cancel();
+            if (runQueued) {
+                this.used = Long.MIN_VALUE; // Budget that can't run out
+                drain();
+            }
+            this.turns.clear();
+            this.queues.clear();
+            this.queued = 0;
+        }
+
+        private final class SenderQueue {
+            final Object key;
+            final ArrayDeque<Pending> commands = new ArrayDeque<>();
+
+            private SenderQueue(Object key) {
+                this.key = key;
+            }
+        }
+    }
+
+    /**
+     * Parsed command lines, see {@link CommandManager#enablePlanCache(int)}. Lookups only read a ConcurrentHashMap and set the
+     * referenced flag of the plan, so runs of the same line from several threads don't contend. Inserts take the lock and evict with
+     * the CLOCK algorithm: the hand goes around the ring, clearing the flags, and replaces the first plan that wasn't run since.
+     * Lines are keyed by the node of the command they were run with, a reloaded command has a new node so its old plans never match
+     */
+    static final class PlanCache {
+        final int maxLines;
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        private final ConcurrentHashMap<Key, Plan> plans = new ConcurrentHashMap<>();
+        private Plan[] ring; // Guarded by this, grows up to maxLines
+        private int count; // Guarded by this
+        private int hand; // Guarded by this, next plan that may be evicted
+
+        PlanCache(int maxLines) {
+            this.maxLines = maxLines;
+            this.ring = new Plan[Math.min(16, maxLines)];
+        }
+
+        Plan get(Key key) {
+            Plan plan = this.plans.get(key);
+            if (plan == null) {
+                this.misses.increment();
+                return null;
+            }
+            this.hits.increment();
+            if (!plan.referenced) plan.referenced = true; // Read first, the line is usually run again before the hand comes back
+            return plan;
+        }
+
+        synchronized void put(Key key, ArgsContainer args) {
+            Plan plan = new Plan(key, args);
+            if (this.plans.putIfAbsent(key, plan) != null) return; // Another thread parsed the same line
+            if (this.count < this.maxLines) {
+                if (this.count == this.ring.length) this.ring = Arrays.copyOf(this.ring, Math.min(this.maxLines, this.ring.length * 2));
+                this.ring[this.count++] = plan;
+                return;
+            }
+            Plan[] ring = this.ring;
+            while (ring[this.hand].referenced) {
+                ring[this.hand].referenced = false;
+                this.hand = (this.hand + 1) % ring.length;
+            }
+            this.plans.remove(ring[this.hand].key);
+            ring[this.hand] = plan;
+            this.hand = (this.hand + 1) % ring.length;
+        }
+
+        int size() {
+            return this.plans.size();
+        }
+
+        synchronized void clear() {
+            this.plans.clear();
+            this.ring = new Plan[Math.min(16, this.maxLines)];
+            this.count = 0;
+            this.hand = 0;
+        }
+
+        /**
+         * Words of a line. The array is kept without a copy, it isn't changed once it was dispatched
+         */
+        static final class Key {
+            final CommandNode node;
+            final String[] args;
+            final int hash;
+
+            Key(CommandNode node, String[] args) {
+                this.node = node;
+                this.args = args;
+                this.hash = 31 * System.identityHashCode(node) + Arrays.hashCode(args);
+            }
+
+            @Override
+            public int hashCode() {
+                return hash;
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (!(o instanceof Key)) return false;
+                Key other = (Key) o;
+                return this.node == other.node && this.hash == other.hash && Arrays.equals(this.args, other.args);
+            }
+        }
+
+        /**
+         * Parsed arguments of a line. They are only read, so every run of the line shares them
+         */
+        static final class Plan {
+            final Key key;
+            final ArgsContainer args;
+            volatile boolean referenced; // Run since the hand last passed it
+
+            Plan(Key key, ArgsContainer args) {
+                this.key = key;
+                this.args = args;
+            }
+        }
+    }
+
+    /**
+     * Command waiting in the {@link CommandScheduler}. The command is looked up again when it runs, in case it was reloaded
+     */
+    private static final class Pending {
+        final CommandSender cs;
+        final Command cmd;
+        final String label;
+        final String[] args;
+
+        private Pending(CommandSender cs, Command cmd, String label, String[] args) {
+            this.cs = cs;
+            this.cmd = cmd;
+            this.label = label;
+            this.args = args;
+        }
+    }
+
+    /**
+     * Help of a super command, or of a sub-command path that only has sub-commands. The entries are rendered once and the
+     * entries a viewer may see are cached by which permission checks they pass, so viewers with the same permissions share them
+     */
+    private final class HelpPages {
+        static final int PAGE_SIZE = 8;
+
+        final MessageTemplate[] renderedWith; // Messages the entries were rendered with
+        final String[] entries;
+        final int[] checkOf; // Index into checks of each entry, -1 if everyone may see it
+        final PermissionCheck[] checks; // Distinct checks of the entries, compared by their permissions
+        final ConcurrentHashMap<BitSet, String[]> visible = new ConcurrentHashMap<>(); // Checks passed -> entries
+
+        private HelpPages(CommandNode node, boolean filterByPerms, MessageTemplate[] templates) {
+            this.renderedWith = templates;
+            List<CommandInfo> commands = new ArrayList<>();
+            collect(node, Collections.newSetFromMap(new IdentityHashMap<>()), commands);
+            this.entries = new String[commands.size()];
+            this.checkOf = new int[commands.size()];
+            Map<String, Integer> indexes = new HashMap<>(); // Permissions of a check -> index
+            List<PermissionCheck> checks = new ArrayList<>();
+            for (int i = 0; i < entries.length; i++) {
+                CommandInfo command = commands.get(i);
+                this.entries[i] = templates[Message.HELP_ENTRY.ordinal()].render(command.usageString, command.description, String.join(", ", command.aliases));
+                PermissionCheck check = command.permCheck;
+                if (!filterByPerms || check.isEmpty()) {
+                    this.checkOf[i] = -1;
+                    continue;
+                }
+                String key = Arrays.deepToString(check.groups) + Arrays.toString(check.requireAll);
+                Integer index = indexes.get(key);
+                if (index == null) {
+                    indexes.put(key, index = checks.size());
+                    checks.add(check);
+                }
+                this.checkOf[i] = index;
+            }
+            this.checks = checks.toArray(new PermissionCheck[0]);
+        }
+
+        /**
+         * Adds the commands under the node in the order of their names, once even if they have aliases
+         */
+        private void collect(CommandNode node, Set<CommandInfo> seen, List<CommandInfo> commands) {
+            for (CommandNode child : node.children) {
+                if (child.command != null && seen.add(child.command)) commands.add(child.command);
+                collect(child, seen, commands);
+            }
+        }
+
+        private String[] visibleTo(CommandSender cs) {
+            if (this.checks.length == 0 || cs instanceof ConsoleCommandSender) return this.entries;
+            BitSet passed = new BitSet(this.checks.length);
+            for (int i = 0; i < this.checks.length; i++)
+                if (permissionCache.test(cs, this.checks[i])) passed.set(i);
+            String[] entries = this.visible.get(passed);
+            if (entries != null) return entries;
+            List<String> list = new ArrayList<>();
+            for (int i = 0; i < this.entries.length; i++)
+                if (this.checkOf[i] < 0 || passed.get(this.checkOf[i])) list.add(this.entries[i]);
+            entries = list.toArray(new String[0]);
+            String[] raced = this.visible.putIfAbsent(passed, entries);
+            return raced != null ? raced : entries;
+        }
+
+        private void send(CommandSender cs, String command, String pageArg) {
+            String[] entries = visibleTo(cs);
+            int pages = Math.max(1, (entries.length + PAGE_SIZE - 1) / PAGE_SIZE);
+            int page = 1;
+            if (pageArg != null && ArgumentParsers.isLong(pageArg, 0, pageArg.length()))
+                page = (int) Math.max(1, Math.min(pages, ArgumentParsers.parseLong(pageArg, 0, pageArg.length())));
+            cs.sendMessage(message(Message.HELP_HEADER, command, Integer.toString(page), Integer.toString(pages)));
+            for (int i = (page - 1) * PAGE_SIZE; i < Math.min(entries.length, page * PAGE_SIZE); i++)
+                cs.sendMessage(entries[i]);
+        }
+    }
+
+    /**
+     * Reports handlers that run over their budget. The thread running a handler only registers it,
+     * a daemon thread polls the running handlers and samples the stack of the ones that are over budget
+     */
+    private static final class Watchdog implements Runnable {
+        static final long REPORT_INTERVAL = TimeUnit.SECONDS.toNanos(30); // Per command
+
+        final JavaPlugin plugin;
+        final long budgetNanos;
+        final long pollNanos;
+        final ConcurrentHashMap<Thread, Invocation> running = new ConcurrentHashMap<>();
+        final Map<String, long[]> reports = new HashMap<>(); // Command path -> { last report, suppressed reports }, guarded by itself. Keyed by path so removed classes aren't kept alive
+        final Thread thread;
+        volatile boolean stopped;
+
+        private static final class Invocation {
+            final Thread thread = Thread.currentThread();
+            final BaseCommandClass instance;
+            final CommandInfo command;
+            final ArgsContainer args;
+            final long budgetNanos;
+            final long start = System.nanoTime();
+            final AtomicBoolean reported = new AtomicBoolean(); // Either by the watchdog thread or when it finishes
+            Invocation previous; // Command that dispatched this one on the same thread
+
+            private Invocation(BaseCommandClass instance, CommandInfo command, ArgsContainer args, long budgetNanos) {
+                this.instance = instance;
+                this.command = command;
+                this.args = args;
+                this.budgetNanos = budgetNanos;
+            }
+        }
+
+        private Watchdog(JavaPlugin plugin, long budgetNanos) {
+            this.plugin = plugin;
+            this.budgetNanos = budgetNanos;
+            this.pollNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(1), budgetNanos / 4);
+            this.thread = new Thread(this, plugin.getName() + "-command-watchdog");
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        private Invocation start(BaseCommandClass instance, CommandInfo command, ArgsContainer args) {
+            Invocation invocation = new Invocation(instance, command, args, command.budgetNanos > 0 ? command.budgetNanos : this.budgetNanos);
+            invocation.previous = running.put(invocation.thread, invocation);
+            return invocation;
+        }
+
+        private void finish(Invocation invocation) {
+            if (invocation.previous != null) running.put(invocation.thread, invocation.previous);
+            else running.remove(invocation.thread);
+            long elapsed = System.nanoTime() - invocation.start;
+            if (elapsed > invocation.budgetNanos && invocation.reported.compareAndSet(false, true)) // Finished before it was sampled
+                report(invocation, elapsed, null);
+        }
+
+        private void stop() {
+            this.stopped = true;
+            LockSupport.unpark(this.thread);
+        }
+
+        @Override
+        public void run() {
+            while (!stopped) {
+                LockSupport.parkNanos(this, pollNanos);
+                try {
+                    for (Invocation invocation : running.values()) {
+                        for (Invocation i = invocation; i != null; i = i.previous) {
+                            long elapsed = System.nanoTime() - i.start;
+                            if (elapsed <= i.budgetNanos || i.reported.get()) continue;
+                            StackTraceElement[] stack = i.thread.getStackTrace();
+                            if (running.get(i.thread) == invocation && i.reported.compareAndSet(false, true)) // Stack is from while it was still running
+                                report(i, elapsed, stack);
+                        }
+                    }
+                } catch (RuntimeException e) { // Keep watching the other commands
+                    plugin.getLogger().severe("The command watchdog failed to check the running commands");
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        private void report(Invocation invocation, long elapsed, StackTraceElement[] stack) {
+            long suppressed;
+            synchronized (reports) {
+                long[] last = reports.computeIfAbsent(invocation.command.metrics.command, c -> new long[] { invocation.start - REPORT_INTERVAL, 0 });
+                if (invocation.start - last[0] < REPORT_INTERVAL) {
+                    last[1]++;
+                    return;
+                }
+                suppressed = last[1];
+                last[0] = invocation.start;
+                last[1] = 0;
+            }
+            CommandInfo command = invocation.command;
+            StringBuilder sb = new StringBuilder("/").append(command.metrics.command)
+                    .append(stack != null ? " is still running after " : " took ").append(TimeUnit.NANOSECONDS.toMillis(elapsed))
+                    .append("ms, its budget is ").append(TimeUnit.NANOSECONDS.toMillis(invocation.budgetNanos)).append("ms (")
+                    .append(invocation.instance.getClass().getName()).append("::").append(command.methodName).append(" on ").append(invocation.thread.getName()).append(")");
+            if (command.args.length > 0) {
+                sb.append(" with");
+                for (ArgumentInfo arg : command.args) {
+                    sb.append(' ').append(arg.name).append('=');
+                    Object value = invocation.args.objects[arg.position];
+                    if (arg.position >= invocation.args.given && !arg.constantDefault && arg.def.isEmpty()) { // Left out without a default
+                        sb.append('-');
+                        continue;
+                    }
+                    switch (arg.parser != null ? ArgType.STRING : arg.type) { // Parsed values are objects
+                        case INTEGER: sb.append(invocation.args.longs[arg.position]); break;
+                        case DOUBLE: sb.append(invocation.args.doubles[arg.position]); break;
+                        case PLAYER: sb.append(value != null ? ((Player) value).getName() : "-"); break;
+                        default: sb.append(value != null ? value : "-");
+                    }
+                }
+            }
+            if (suppressed > 0) sb.append(" (").append(suppressed).append(" similar reports were suppressed)");
+            if (stack != null)
+                for (StackTraceElement element : stack) sb.append("\n\tat ").append(element);
+            plugin.getLogger().warning(sb.toString());
+        }
+    }
+
+    /**
+     * Outcome counters and a latency histogram of one command. LongAdders are striped, so async
+     * commands recording at the same time as the main thread don't contend on a lock or a single CAS
+     */
+    private static final class CommandMetrics {
+        static final int BUCKETS = 40; // Bucket i counts latencies below 2^i ns, the last one everything from ~9 minutes up
+
+        final String command;
+        final LongAdder[] outcomes = new LongAdder[Outcome.values().length];
+        final LongAdder[] latencies = new LongAdder[BUCKETS];
+        final LongAdder totalNanos = new LongAdder();
+        int runs; // Only decides which runs are timed, lost updates from async commands don't matter
+
+        private CommandMetrics(String command) {
+            this.command = command;
+            for (int i = 0; i < outcomes.length; i++) outcomes[i] = new LongAdder();
+            for (int i = 0; i < latencies.length; i++) latencies[i] = new LongAdder();
+        }
+
+        private void record(Outcome outcome) {
+            outcomes[outcome.ordinal()].increment();
+        }
+
+        private boolean sample(int mask) {
+            return (runs++ & mask) == 0;
+        }
+
+        private void recordLatency(long nanos) {
+            latencies[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, nanos)))].increment();
+            totalNanos.add(nanos);
+        }
+
+        private void reset() {
+            for (LongAdder adder : outcomes) adder.reset();
+            for (LongAdder adder : latencies) adder.reset();
+            totalNanos.reset();
+        }
+
+        private CommandStats snapshot() {
+            long[] counts = new long[outcomes.length];
+            for (int i = 0; i < counts.length; i++) counts[i] = outcomes[i].sum();
+            long[] histogram = new long[latencies.length];
+            for (int i = 0; i < histogram.length; i++) histogram[i] = latencies[i].sum();
+            return new CommandStats(command, counts, histogram, totalNanos.sum());
+        }
+    }
+
+    /**
+     * A {@link Message} split into literal text and placeholders once, so sending it is a single StringBuilder pass
+     */
+    private static final class MessageTemplate {
+        final String[] literals; // One more than placeholders, literals[i] comes before placeholders[i]
+        final int[] placeholders; // Indexes into Message#placeholders
+
+        private MessageTemplate(String[] literals, int[] placeholders) {
+            this.literals = literals;
+            this.placeholders = placeholders;
+        }
+
+        private static MessageTemplate[] compileAll(ConfigurationSection section) {
+            Message[] values = Message.values();
+            MessageTemplate[] templates = new MessageTemplate[values.length];
+            for (Message message : values)
+                templates[message.ordinal()] = compile(message, section == null ? message.def : section.getString(message.getPath(), message.def));
+            return templates;
+        }
+
+        private static MessageTemplate compile(Message message, String template) {
+            return compile(message.placeholders, template);
+        }
+
+        /**
+         * @param names placeholder names, in the order their values are passed to {@link #render(String...)}
+         */
+        private static MessageTemplate compile(String[] names, String template) {
+            if (template == null) throw new IllegalArgumentException("template cannot be null");
+            List<String> literals = new ArrayList<>();
+            List<Integer> placeholders = new ArrayList<>();
+            StringBuilder literal = new StringBuilder();
+            int i = 0;
+            while (i < template.length()) {
+                int start = template.indexOf('%', i);
+                int end = start < 0 ? -1 : template.indexOf('%', start + 1);
+                if (end < 0) {
+                    literal.append(template, i, template.length());
+                    break;
+                }
+                int index = Arrays.asList(names).indexOf(template.substring(start + 1, end));
+                if (index < 0) { // Not a placeholder, the closing % could start the next one
+                    literal.append(template, i, end);
+                    i = end;
+                    continue;
+                }
+                literal.append(template, i, start);
+                literals.add(ChatColor.translateAlternateColorCodes('&', literal.toString()));
+                placeholders.add(index);
+                literal.setLength(0);
+                i = end + 1;
+            }
+            literals.add(ChatColor.translateAlternateColorCodes('&', literal.toString()));
+            int[] indexes = new int[placeholders.size()];
+            for (int j = 0; j < indexes.length; j++) indexes[j] = placeholders.get(j);
+            return new MessageTemplate(literals.toArray(new String[0]), indexes);
+        }
+
+        private boolean uses(int placeholder) {
+            for (int p : placeholders) if (p == placeholder) return true;
+            return false;
+        }
+
+        private String render(String... values) {
+            if (placeholders.length == 0) return literals[0];
+            int length = literals[0].length();
+            for (int i = 0; i < placeholders.length; i++)
+                length += values[placeholders[i]].length() + literals[i + 1].length();
+            StringBuilder sb = new StringBuilder(length).append(literals[0]);
+            for (int i = 0; i < placeholders.length; i++)
+                sb.append(values[placeholders[i]]).append(literals[i + 1]);
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Permission requirements of a command compiled at registration. Every group must pass, a group passes
+     * if the sender has any (OR) or all (AND) of its permissions. Groups that always pass are left out
+     */
+    private static final class PermissionCheck {
+        private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+        final int id; // Index of the decision in PermissionCache.Decisions
+        final String[][] groups;
+        final boolean[] requireAll;
+
+        private PermissionCheck(String[][] groups, boolean[] requireAll) {
+            this.id = NEXT_ID.getAndIncrement();
+            this.groups = groups;
+            this.requireAll = requireAll;
+        }
+
+        /**
+         * @param infos the class and the command, or only the class
+         */
+        private static PermissionCheck of(ClassInfo... infos) {
+            List<String[]> groups = new ArrayList<>();
+            List<Boolean> requireAll = new ArrayList<>();
+            for (ClassInfo info : infos) {
+                if (info.permissions.length == 0) continue;
+                groups.add(info.permissions.clone());
+                requireAll.add(info.permType == PermType.AND);
+            }
+            boolean[] all = new boolean[requireAll.size()];
+            for (int i = 0; i < all.length; i++) all[i] = requireAll.get(i);
+            return new PermissionCheck(groups.toArray(new String[0][]), all);
+        }
+
+        /**
+         * @return check for a single permission, or null if there is none
+         */
+        private static PermissionCheck of(String permission) {
+            if (permission == null || permission.isEmpty()) return null;
+            return new PermissionCheck(new String[][] { { permission } }, new boolean[] { true });
+        }
+
+        private boolean isEmpty() {
+            return groups.length == 0;
+        }
+
+        private boolean test(CommandSender cs) {
+            for (int i = 0; i < groups.length; i++) {
+                boolean passed = requireAll[i];
+                for (String perm : groups[i]) {
+                    if (cs.hasPermission(perm) != requireAll[i]) {
+                        passed = !passed;
+                        break;
+                    }
+                }
+                if (!passed) return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Cached {@link PermissionCheck} results of each online player, so repeating a command doesn't go
+     * through the permissible again. Cleared when the player quits or is (de)opped, and every TTL
+     */
+    private static class PermissionCache implements Listener {
+        private static final byte UNKNOWN = 0, ALLOWED = 1, DENIED = 2;
+
+        private final ConcurrentHashMap<UUID, Decisions> players = new ConcurrentHashMap<>();
+        private final PlayerNames names;
+        volatile boolean enabled;
+
+        private PermissionCache(PlayerNames names) {
+            this.names = names;
+        }
+
+        private static final class Decisions {
+            final boolean op;
+            byte[] results; // Indexed by PermissionCheck#id. Races only lose a decision, it is recomputed
+
+            private Decisions(boolean op) {
+                this.op = op;
+                this.results = new byte[Math.max(16, PermissionCheck.NEXT_ID.get())];
+            }
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR)
+        public void onQuit(PlayerQuitEvent event) {
+            invalidate(event.getPlayer().getUniqueId());
+        }
+
+        private void invalidate(UUID uuid) {
+            players.remove(uuid);
+        }
+
+        private void invalidateAll() {
+            players.clear();
+        }
+
+        private boolean test(CommandSender cs, PermissionCheck check) {
+            if (check.isEmpty()) return true;
+            if (!(cs instanceof Player) || !enabled) return check.test(cs); // Only players have invalidation events
+            Player player = (Player) cs;
+            boolean op = player.isOp();
+            Decisions decisions = players.get(player.getUniqueId());
+            if (decisions == null || decisions.op != op) {
+                decisions = new Decisions(op);
+                players.put(player.getUniqueId(), decisions);
+                // A late async dispatch could cache a player after onQuit cleared them. names drops them before
+                // onQuit runs, so either this sees them gone or onQuit removes what was just put
+                if (!names.isOnline(player)) players.remove(player.getUniqueId(), decisions);
+            }
+            byte[] results = decisions.results;
+            byte result = check.id < results.length ? results[check.id] : UNKNOWN;
+            if (result != UNKNOWN) return result == ALLOWED;
+
+            boolean allowed = check.test(cs);
+            if (check.id >= results.length)
+                decisions.results = results = Arrays.copyOf(results, Math.max(check.id + 1, results.length * 2));
+            results[check.id] = allowed ? ALLOWED : DENIED;
+            return allowed;
+        }
+    }
+
+    /**
+     * Cooldown expiry times of one command, keyed by player UUID. Open addressing over primitive
+     * arrays so there is no boxed Long or entry object per player. Commands can be dispatched from
+     * any thread, so the arrays are guarded by the instance. It is never held while taking the lock
+     * of the wheel, the wheel takes it while evicting
+     */
+    static class Cooldowns {
+        final CooldownWheel wheel;
+        final long durationNanos;
+        final PermissionCheck bypass; // null if nobody can bypass it
+        long[] msbs = new long[16];
+        long[] lsbs = new long[16];
+        long[] expiries = new long[16];
+        boolean[] used = new boolean[16];
+        int size;
+
+        Cooldowns(CooldownWheel wheel, long durationNanos, PermissionCheck bypass) {
+            this.wheel = wheel;
+            this.durationNanos = durationNanos;
+            this.bypass = bypass;
+        }
+
+        /**
+         * @return nanoseconds until the cooldown is over, 0 or less if it already is
+         */
+        synchronized long remaining(UUID uuid, long now) {
+            int i = indexOf(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+            return i < 0 ? 0 : expiries[i] - now;
+        }
+
+        /**
+         * Starts the cooldown unless it is still running. Checking and starting are one step, so two dispatches on
+         * different threads can't both pass
+         * @return 0 if it was started, otherwise nanoseconds until the running one is over
+         */
+        long tryStart(UUID uuid, long now) {
+            long msb = uuid.getMostSignificantBits(), lsb = uuid.getLeastSignificantBits();
+            long expiry = now + durationNanos;
+            synchronized (this) {
+                int i = indexOf(msb, lsb);
+                if (i >= 0) {
+                    long remaining = expiries[i] - now;
+                    if (remaining > 0) return remaining;
+                    expiries[i] = expiry; // Expired but not evicted yet, its wheel entry moves itself to the new expiry
+                    return 0;
+                }
+                if ((size + 1) * 2 > used.length) resize(used.length * 2);
+                i = slot(msb, lsb, used.length);
+                while (used[i]) i = (i + 1) & (used.length - 1);
+                used[i] = true;
+                msbs[i] = msb;
+                lsbs[i] = lsb;
+                expiries[i] = expiry;
+                size++;
+            }
+            wheel.schedule(this, msb, lsb, expiry); // Outside our lock, the wheel holds its own while it calls evict
+            return 0;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        /**
+         * Evicts the entry if it expired
+         * @return expiry of the entry if it's still active, {@link Long#MIN_VALUE} if it's gone
+         */
+        synchronized long evict(long msb, long lsb, long now) {
+            int i = indexOf(msb, lsb);
+            if (i < 0) return Long.MIN_VALUE;
+            if (expiries[i] - now > 0) return expiries[i];
+            remove(i);
+            return Long.MIN_VALUE;
+        }
+
+        private int indexOf(long msb, long lsb) {
+            int mask = used.length - 1;
+            for (int i = slot(msb, lsb, used.length); used[i]; i = (i + 1) & mask)
+                if (msbs[i] == msb && lsbs[i] == lsb)
+                    return i;
+            return -1;
+        }
+
+        private void remove(int i) {
+            int mask = used.length - 1;
+            used[i] = false;
+            size--;
+            // Shift back the following entries of the probe sequence so lookups don't stop at the hole
+            for (int j = (i + 1) & mask; used[j]; j = (j + 1) & mask) {
+                int home = slot(msbs[j], lsbs[j], used.length);
+                if (((j - home) & mask) >= ((j - i) & mask)) {
+                    used[i] = true;
+                    msbs[i] = msbs[j];
+                    lsbs[i] = lsbs[j];
+                    expiries[i] = expiries[j];
+                    used[j] = false;
+                    i = j;
+                }
+            }
+        }
+
+        private void resize(int capacity) {
+            long[] oldMsbs = msbs, oldLsbs = lsbs, oldExpiries = expiries;
+            boolean[] oldUsed = used;
+            msbs = new long[capacity];
+            lsbs = new long[capacity];
+            expiries = new long[capacity];
+            used = new boolean[capacity];
+            for (int j = 0; j < oldUsed.length; j++) {
+                if (!oldUsed[j]) continue;
+                int i = slot(oldMsbs[j], oldLsbs[j], capacity);
+                while (used[i]) i = (i + 1) & (capacity - 1);
+                used[i] = true;
+                msbs[i] = oldMsbs[j];
+                lsbs[i] = oldLsbs[j];
+                expiries[i] = oldExpiries[j];
+            }
+        }
+
+        private static int slot(long msb, long lsb, int capacity) {
+            long h = (msb ^ lsb) * 0x9E3779B97F4A7C15L;
+            return (int) (h >>> 32) & (capacity - 1);
+        }
+    }
+
+    /**
+     * Hashed timing wheel that evicts expired cooldowns. Advancing it only looks at the buckets
+     * that came due instead of scanning every cooldown, entries further away than one rotation
+     * are moved along until their round comes. Guarded by the instance, {@link #advance(long)} runs on
+     * the main thread while commands schedule their cooldowns from any thread
+     */
+    static class CooldownWheel {
+        static final int SLOTS = 512; // Must be a power of 2
+        static final long SLOT_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+        private final Cooldowns[][] owners = new Cooldowns[SLOTS][];
+        private final long[][] msbs = new long[SLOTS][];
+        private final long[][] lsbs = new long[SLOTS][];
+        private final int[] sizes = new int[SLOTS];
+        private long processed; // Last slot that was processed
+
+        CooldownWheel(long now) {
+            this.processed = Math.floorDiv(now, SLOT_NANOS);
+        }
+
+        synchronized void schedule(Cooldowns owner, long msb, long lsb, long expiry) {
+            long slot = Math.max(Math.floorDiv(expiry, SLOT_NANOS) + 1, processed + 1); // First slot that starts after the expiry
+            int b = (int) (slot & (SLOTS - 1));
+            int size = sizes[b];
+            if (owners[b] == null) {
+                owners[b] = new Cooldowns[4];
+                msbs[b] = new long[4];
+                lsbs[b] = new long[4];
+            }
+            else if (size == owners[b].length) {
+                owners[b] = Arrays.copyOf(owners[b], size * 2);
+                msbs[b] = Arrays.copyOf(msbs[b], size * 2);
+                lsbs[b] = Arrays.copyOf(lsbs[b], size * 2);
+            }
+            owners[b][size] = owner;
+            msbs[b][size] = msb;
+            lsbs[b][size] = lsb;
+            sizes[b] = size + 1;
+        }
+
+        synchronized void advance(long now) {
+            long target = Math.floorDiv(now, SLOT_NANOS);
+            long from = Math.max(processed + 1, target - SLOTS + 1); // Every bucket is visited at most once
+            processed = target;
+            for (long slot = from; slot <= target; slot++) {
+                int b = (int) (slot & (SLOTS - 1));
+                int size = sizes[b];
+                if (size == 0) continue;
+                Cooldowns[] bucketOwners = owners[b];
+                long[] bucketMsbs = msbs[b], bucketLsbs = lsbs[b];
+                sizes[b] = 0;
+                int kept = 0;
+                for (int i = 0; i < size; i++) {
+                    long expiry = bucketOwners[i].evict(bucketMsbs[i], bucketLsbs[i], now);
+                    if (expiry == Long.MIN_VALUE) continue;
+                    long due = Math.floorDiv(expiry, SLOT_NANOS) + 1;
+                    if ((due & (SLOTS - 1)) == b) { // Due in a later rotation of this bucket
+                        bucketOwners[kept] = bucketOwners[i];
+                        bucketMsbs[kept] = bucketMsbs[i];
+                        bucketLsbs[kept] = bucketLsbs[i];
+                        kept++;
+                    }
+                    else schedule(bucketOwners[i], bucketMsbs[i], bucketLsbs[i], expiry); // Never this bucket, it's due after this slot
+                }
+                Arrays.fill(bucketOwners, kept, size, null);
+                sizes[b] = kept;
+            }
+        }
+    }
+
+    /**
+     * Builds the parsers of {@link ParserBackend#COMPILED}: a method handle chain of one step per argument, with the index of
+     * its word, its bounds and its parser bound in as constants. The JVM spins classes for the chain, so each command gets
+     * parsing code without the type switch, quote handling and default lookups of the loop in {@link #dispatch}. A step
+     * returns the message of an invalid argument, which ends the chain
+     */
+    private static final class CompiledParser {
+        /** (sender, words, index of the first argument word, container) -> error message or null */
+        private static final MethodType STEP = MethodType.methodType(String.class, CommandSender.class, String[].class, int.class, ArgsContainer.class);
+        private static final MethodHandle NONE = MethodHandles.dropArguments(MethodHandles.constant(String.class, null), 0, STEP.parameterList());
+        static final MethodHandle UNSUPPORTED = MethodHandles.dropArguments(NONE, 0, Void.class); // Marks commands it can't parse
+        private static final MethodHandle STRING, INTEGER, DOUBLE, PARSER, PARSE_INTO, COPY_DEFAULT, PARSE_DEFAULT, HAS_WORD, IS_NULL;
+
+        static {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                STRING = lookup.findStatic(CompiledParser.class, "parseString", STEP.insertParameterTypes(0, ArgumentInfo.class, int.class, int.class, int.class));
+                INTEGER = lookup.findStatic(CompiledParser.class, "parseInteger", STEP.insertParameterTypes(0, ArgumentInfo.class, int.class, long.class, long.class));
+                DOUBLE = lookup.findStatic(CompiledParser.class, "parseDouble", STEP.insertParameterTypes(0, ArgumentInfo.class, int.class, double.class, double.class));
+                PARSER = lookup.findStatic(CompiledParser.class, "parseWith", STEP.insertParameterTypes(0, ArgumentInfo.class, int.class, ArgumentParser.class));
+                PARSE_INTO = lookup.findStatic(CompiledParser.class, "parseInto", STEP.insertParameterTypes(0, CommandManager.class, ArgumentInfo.class, int.class));
+                COPY_DEFAULT = lookup.findStatic(CompiledParser.class, "copyDefault", STEP.insertParameterTypes(0, ArgsContainer.class, int.class));
+                PARSE_DEFAULT = lookup.findStatic(CompiledParser.class, "parseDefault", STEP.insertParameterTypes(0, CommandManager.class, ArgumentInfo.class));
+                HAS_WORD = lookup.findStatic(CompiledParser.class, "hasWord", STEP.changeReturnType(boolean.class).insertParameterTypes(0, int.class));
+                IS_NULL = lookup.findStatic(Objects.class, "isNull", MethodType.methodType(boolean.class, Object.class))
+                        .asType(MethodType.methodType(boolean.class, String.class));
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        /**
+         * @return the parser of the command, {@link #UNSUPPORTED} if one of its arguments takes several words
+         */
+        static MethodHandle build(CommandManager manager, CommandInfo info) {
+            ArgumentInfo[] args = info.args;
+            for (ArgumentInfo arg : args)
+                if (arg.tokens != 1) return UNSUPPORTED;
+            MethodHandle parser = NONE;
+            for (int i = args.length - 1; i >= 0; i--) { // Built from the last step, each one runs the rest if it passed
+                MethodHandle step = word(manager, args[i]);
+                if (args[i].optional) // Required arguments always have their word, the dispatch checked the word count
+                    step = MethodHandles.guardWithTest(MethodHandles.insertArguments(HAS_WORD, 0, i), step, leftOut(manager, info, args[i]));
+                parser = i == args.length - 1 ? step : then(step, parser);
+            }
+            return parser;
+        }
+
+        private static MethodHandle word(CommandManager manager, ArgumentInfo arg) {
+            int i = arg.position;
+            if (arg.parser != null) return MethodHandles.insertArguments(PARSER, 0, arg, i, arg.parser);
+            switch (arg.type) {
+                case STRING: return MethodHandles.insertArguments(STRING, 0, arg, i, arg.minStrLen, arg.maxStrLen);
+                case INTEGER: return MethodHandles.insertArguments(INTEGER, 0, arg, i, (long) arg.minInt, (long) arg.maxInt);
+                case DOUBLE: return MethodHandles.insertArguments(DOUBLE, 0, arg, i, arg.minDouble, arg.maxDouble);
+                default: return MethodHandles.insertArguments(PARSE_INTO, 0, manager, arg, i); // Players depend on the matching, which can change
+            }
+        }
+
+        private static MethodHandle leftOut(CommandManager manager, CommandInfo info, ArgumentInfo arg) {
+            if (arg.constantDefault) return MethodHandles.insertArguments(COPY_DEFAULT, 0, info.defaults, arg.position);
+            if (arg.def.isEmpty()) return NONE;
+            return MethodHandles.insertArguments(PARSE_DEFAULT, 0, manager, arg);
+        }
+
+        /**
+         * @return step that runs first, and next if first returned no error
+         */
+        private static MethodHandle then(MethodHandle first, MethodHandle next) {
+            MethodHandle passed = MethodHandles.dropArguments(IS_NULL, 1, STEP.parameterList());
+            MethodHandle error = MethodHandles.dropArguments(MethodHandles.identity(String.class), 1, STEP.parameterList());
+            return MethodHandles.foldArguments(MethodHandles.guardWithTest(passed, MethodHandles.dropArguments(next, 0, String.class), error), first);
+        }
+
+        private static String parseString(ArgumentInfo arg, int i, int minLength, int maxLength, CommandSender cs, String[] words, int offset, ArgsContainer a) {
+            String input = words[offset + i];
+            a.objects[i] = input;
+            return input.length() >= minLength && input.length() <= maxLength ? null : arg.invalidMessage(true, input);
+        }
+
+        private static String parseInteger(ArgumentInfo arg, int i, long min, long max, CommandSender cs, String[] words, int offset, ArgsContainer a) {
+            String input = words[offset + i];
+            if (!ArgumentParsers.isLong(input, 0, input.length())) return arg.invalidMessage(false, input);
+            long num = ArgumentParsers.parseLong(input, 0, input.length());
+            a.longs[i] = num;
+            return num >= min && num <= max ? null : arg.invalidMessage(true, input);
+        }
+
+        private static String parseDouble(ArgumentInfo arg, int i, double min, double max, CommandSender cs, String[] words, int offset, ArgsContainer a) {
+            String input = words[offset + i];
+            double d;
+            try {
+                d = Double.parseDouble(input);
+            } catch (NumberFormatException e) {
+                return arg.invalidMessage(false, input);
+            }
+            a.doubles[i] = d;
+            return d >= min && d <= max ? null : arg.invalidMessage(true, input);
+        }
+
+        private static String parseWith(ArgumentInfo arg, int i, ArgumentParser<?> parser, CommandSender cs, String[] words, int offset, ArgsContainer a) {
+            String input = words[offset + i];
+            Object value = parser.parse(cs, input, 0, input.length());
+            if (value == null) return arg.invalidMessage(false, input);
+            a.objects[i] = value;
+            return null;
+        }
+
+        private static String parseInto(CommandManager manager, ArgumentInfo arg, int i, CommandSender cs, String[] words, int offset, ArgsContainer a) {
+            return manager.parseInto(cs, arg, words[offset + i], a);
+        }
+
+        private static String copyDefault(ArgsContainer defaults, int i, CommandSender cs, String[] words, int offset, ArgsContainer a) {
+            a.objects[i] = defaults.objects[i];
+            a.longs[i] = defaults.longs[i];
+            a.doubles[i] = defaults.doubles[i];
+            return null;
+        }
+
+        private static String parseDefault(CommandManager manager, ArgumentInfo arg, CommandSender cs, String[] words, int offset, ArgsContainer a) {
+            return manager.parseInto(cs, arg, arg.def, a);
+        }
+
+        private static boolean hasWord(int i, CommandSender cs, String[] words, int offset, ArgsContainer a) {
+            return offset + i < words.length;
+        }
+    }
+
+    /**
+     * Built-in {@link ArgumentParser}s and the helpers they share. They read their region of the command line
+     * in place, so a bad argument costs no substring and no exception
+     */
+    private static final class ArgumentParsers {
+        private static void registerDefaults(Map<Class<?>, ArgumentParser<?>> parsers) {
+            parsers.put(Boolean.class, new BooleanParser());
+            parsers.put(Long.class, new LongParser());
+            parsers.put(UUID.class, new UuidParser());
+            parsers.put(java.time.Duration.class, new DurationParser());
+            parsers.put(World.class, new WorldParser());
+            parsers.put(Material.class, new EnumParser<>(Material.class));
+            parsers.put(Location.class, new LocationParser());
+        }
+
+        /**
+         * Same order as {@link String#CASE_INSENSITIVE_ORDER}, without copying the region into a String
+         */
+        private static int compareIgnoreCase(String a, CharSequence b, int start, int end) {
+            int n = Math.min(a.length(), end - start);
+            for (int i = 0; i < n; i++) {
+                char c1 = a.charAt(i);
+                char c2 = b.charAt(start + i);
+                if (c1 == c2) continue;
+                c1 = Character.toUpperCase(c1);
+                c2 = Character.toUpperCase(c2);
+                if (c1 == c2) continue;
+                c1 = Character.toLowerCase(c1);
+                c2 = Character.toLowerCase(c2);
+                if (c1 != c2) return c1 - c2;
+            }
+            return a.length() - (end - start);
+        }
+
+        private static boolean equalsIgnoreCase(String a, CharSequence b, int start, int end) {
+            return a.length() == end - start && compareIgnoreCase(a, b, start, end) == 0;
+        }
+
+        /**
+         * @return true if the region is an optional sign and 1 to 18 digits, which always fits in a long
+         */
+        private static boolean isLong(CharSequence s, int start, int end) {
+            if (start < end && (s.charAt(start) == '-' || s.charAt(start) == '+')) start++;
+            if (start == end || end - start > 18) return false;
+            for (int i = start; i < end; i++)
+                if (s.charAt(i) < '0' || s.charAt(i) > '9') return false;
+            return true;
+        }
+
+        /**
+         * @return value of a region that passed {@link #isLong(CharSequence, int, int)}
+         */
+        private static long parseLong(CharSequence s, int start, int end) {
+            boolean negative = s.charAt(start) == '-';
+            if (negative || s.charAt(start) == '+') start++;
+            long value = 0;
+            for (int i = start; i < end; i++) value = value * 10 + (s.charAt(i) - '0');
+            return negative ? -value : value;
+        }
+
+        private static final long MAX_EXACT = 1L << 53; // Larger longs don't all fit in a double
+        private static final double[] POWERS_OF_TEN = {
+                1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+                1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+        };
+
+        /**
+         * Plain decimals like -12.5, without exponents. The digits are read as a whole number and divided by a power
+         * of ten once, both are exact doubles so the result is the closest double like {@link Double#parseDouble}.
+         * Longer ones go through that instead
+         * @return the value, or NaN if the region isn't one
+         */
+        private static double parseDecimal(CharSequence s, int start, int end) {
+            int from = start;
+            boolean negative = start < end && s.charAt(start) == '-';
+            if (negative || (start < end && s.charAt(start) == '+')) start++;
+            long digits = 0;
+            int fraction = -1; // Digits after the decimal point, -1 until it
+            boolean any = false, exact = true;
+            for (int i = start; i < end; i++) {
+                char c = s.charAt(i);
+                if (c == '.' && fraction < 0) fraction = 0;
+                else if (c >= '0' && c <= '9') {
+                    any = true;
+                    if (!exact) continue;
+                    if (digits > (MAX_EXACT - (c - '0')) / 10) exact = false;
+                    else {
+                        digits = digits * 10 + (c - '0');
+                        if (fraction >= 0) fraction++;
+                    }
+                }
+                else return Double.NaN;
+            }
+            if (!any) return Double.NaN;
+            if (!exact || fraction >= POWERS_OF_TEN.length) return Double.parseDouble(s.subSequence(from, end).toString());
+            double value = fraction > 0 ? digits / POWERS_OF_TEN[fraction] : digits;
+            return negative ? -value : value;
+        }
+
+        private static int hex(char c) {
+            if (c >= '0' && c <= '9') return c - '0';
+            if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+            if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+            return -1;
+        }
+
+        private static void completeFrom(String typed, List<String> completions, String... options) {
+            for (String option : options)
+                if (option.regionMatches(true, 0, typed, 0, typed.length())) completions.add(option);
+        }
+
+        private static final class BooleanParser implements ArgumentParser<Boolean> {
+            private static final String[] TRUE = { "true", "yes", "on" };
+            private static final String[] FALSE = { "false", "no", "off" };
+
+            @Override
+            public Boolean parse(CommandSender cs, CharSequence input, int start, int end) {
+                for (String s : TRUE) if (equalsIgnoreCase(s, input, start, end)) return Boolean.TRUE;
+                for (String s : FALSE) if (equalsIgnoreCase(s, input, start, end)) return Boolean.FALSE;
+                return null;
+            }
+
+            @Override
+            public String description() {
+                return "boolean (true/false)";
+            }
+
+            @Override
+            public boolean cacheable() {
+                return true;
+            }
+
+            @Override
+            public void complete(CommandSender cs, String typed, List<String> completions) {
+                completeFrom(typed, completions, "true", "false");
+            }
+        }
+
+        private static final class LongParser implements ArgumentParser<Long> {
+            @Override
+            public Long parse(CommandSender cs, CharSequence input, int start, int end) {
+                if (isLong(input, start, end)) return parseLong(input, start, end);
+                if (end - start > 20) return null;
+                try { // 19 digits may still fit
+                    return Long.parseLong(input.subSequence(start, end).toString());
+                } catch (NumberFormatException e) { return null; }
+            }
+
+            @Override
+            public String description() {
+                return "whole number";
+            }
+
+            @Override
+            public boolean cacheable() {
+                return true;
+            }
+        }
+
+        private static final class UuidParser implements ArgumentParser<UUID> {
+            @Override
+            public UUID parse(CommandSender cs, CharSequence input, int start, int end) {
+                boolean dashes = end - start == 36;
+                if (!dashes && end - start != 32) return null;
+                long msb = 0, lsb = 0;
+                int digits = 0;
+                for (int i = start; i < end; i++) {
+                    char c = input.charAt(i);
+                    if (dashes && (i - start == 8 || i - start == 13 || i - start == 18 || i - start == 23)) {
+                        if (c != '-') return null;
+                        continue;
+                    }
+                    int h = hex(c);
+                    if (h < 0) return null;
+                    if (digits++ < 16) msb = msb << 4 | h;
+                    else lsb = lsb << 4 | h;
+                }
+                return new UUID(msb, lsb);
+            }
+
+            @Override
+            public String description() {
+                return "UUID";
+            }
+
+            @Override
+            public boolean cacheable() {
+                return true;
+            }
+        }
+
+        /**
+         * Durations like 90s, 5m or 1h30m. A number without a unit is in seconds
+         */
+        private static final class DurationParser implements ArgumentParser<java.time.Duration> {
+            @Override
+            public java.time.Duration parse(CommandSender cs, CharSequence input, int start, int end) {
+                if (start == end) return null;
+                long millis = 0;
+                int i = start;
+                while (i < end) {
+                    int numberStart = i;
+                    while (i < end && input.charAt(i) >= '0' && input.charAt(i) <= '9') i++;
+                    if (i == numberStart || i - numberStart > 9) return null;
+                    long value = parseLong(input, numberStart, i);
+                    int unitStart = i;
+                    while (i < end && Character.isLetter(input.charAt(i))) i++;
+                    long unit;
+                    if (unitStart == i || equalsIgnoreCase("s", input, unitStart, i)) unit = 1000;
+                    else if (equalsIgnoreCase("ms", input, unitStart, i)) unit = 1;
+                    else if (equalsIgnoreCase("m", input, unitStart, i)) unit = 60_000;
+                    else if (equalsIgnoreCase("h", input, unitStart, i)) unit = 3_600_000;
+                    else if (equalsIgnoreCase("d", input, unitStart, i)) unit = 86_400_000;
+                    else if (equalsIgnoreCase("w", input, unitStart, i)) unit = 604_800_000;
+                    else return null;
+                    millis += value * unit;
+                }
+                return java.time.Duration.ofMillis(millis);
+            }
+
+            @Override
+            public String description() {
+                return "duration (e.g. 1h30m)";
+            }
+
+            @Override
+            public boolean cacheable() {
+                return true;
+            }
+
+            @Override
+            public void complete(CommandSender cs, String typed, List<String> completions) {
+                if (typed.isEmpty()) completeFrom(typed, completions, "30s", "5m", "1h", "1d");
+                else if (isLong(typed, 0, typed.length()) && typed.charAt(0) != '-' && typed.charAt(0) != '+')
+                    for (String unit : new String[] { "s", "m", "h", "d" }) completions.add(typed + unit);
+            }
+        }
+
+        private static final class WorldParser implements ArgumentParser<World> {
+            @Override
+            public World parse(CommandSender cs, CharSequence input, int start, int end) {
+                for (World world : Bukkit.getWorlds())
+                    if (equalsIgnoreCase(world.getName(), input, start, end)) return world;
+                return null;
+            }
+
+            @Override
+            public String description() {
+                return "world name";
+            }
+
+            @Override
+            public void complete(CommandSender cs, String typed, List<String> completions) {
+                for (World world : Bukkit.getWorlds())
+                    if (world.getName().regionMatches(true, 0, typed, 0, typed.length())) completions.add(world.getName());
+            }
+        }
+
+        /**
+         * Constant names of an enum, case-insensitive. A namespace like minecraft: is ignored and
+         * deprecated constants (e.g. the legacy materials) are left out
+         */
+        private static final class EnumParser<E extends Enum<E>> implements ArgumentParser<E> {
+            final String[] names; // Sorted case-insensitively
+            final E[] values;
+            final String description;
+
+            private EnumParser(Class<E> type) {
+                List<E> constants = new ArrayList<>();
+                for (E constant : type.getEnumConstants()) {
+                    try {
+                        if (type.getField(constant.name()).isAnnotationPresent(Deprecated.class)) continue;
+                    } catch (NoSuchFieldException ignored) { }
+                    constants.add(constant);
+                }
+                constants.sort((a, b) -> String.CASE_INSENSITIVE_ORDER.compare(a.name(), b.name()));
+                this.values = constants.toArray(Arrays.copyOf(type.getEnumConstants(), 0));
+                this.names = new String[values.length];
+                for (int i = 0; i < values.length; i++) names[i] = values[i].name().toLowerCase();
+                this.description = type.getSimpleName().replaceAll("([a-z])([A-Z])", "$1 $2").toLowerCase();
+            }
+
+            @Override
+            public E parse(CommandSender cs, CharSequence input, int start, int end) {
+                for (int i = start; i < end; i++)
+                    if (input.charAt(i) == ':') start = i + 1; // minecraft:stone
+                int low = 0, high = names.length - 1;
+                while (low <= high) {
+                    int mid = (low + high) >>> 1;
+                    int cmp = compareIgnoreCase(names[mid], input, start, end);
+                    if (cmp < 0) low = mid + 1;
+                    else if (cmp > 0) high = mid - 1;
+                    else return values[mid];
+                }
+                return null;
+            }
+
+            @Override
+            public String description() {
+                return description;
+            }
+
+            @Override
+            public boolean cacheable() {
+                return true;
+            }
+
+            @Override
+            public void complete(CommandSender cs, String typed, List<String> completions) {
+                int i = Arrays.binarySearch(names, typed, String.CASE_INSENSITIVE_ORDER);
+                for (i = i < 0 ? -i - 1 : i; i < names.length && names[i].regionMatches(true, 0, typed, 0, typed.length()); i++)
+                    completions.add(names[i]);
+            }
+        }
+
+        /**
+         * x y z in the world of the sender, ~ is relative to the location of a player
+         */
+        private static final class LocationParser implements ArgumentParser<Location> {
+            @Override
+            public Location parse(CommandSender cs, CharSequence input, int start, int end) {
+                Location origin = cs instanceof Player ? ((Player) cs).getLocation() : null;
+                double[] xyz = new double[3];
+                int axis = 0;
+                for (int i = start; i <= end; i++) {
+                    if (i < end && input.charAt(i) != ' ') continue;
+                    if (axis == 3 || start == i) return null;
+                    boolean relative = input.charAt(start) == '~';
+                    if (relative && origin == null) return null; // Only players have a location
+                    double value = relative && start + 1 == i ? 0 : parseDecimal(input, relative ? start + 1 : start, i);
+                    if (Double.isNaN(value)) return null;
+                    xyz[axis] = relative ? value + (axis == 0 ? origin.getX() : axis == 1 ? origin.getY() : origin.getZ()) : value;
+                    axis++;
+                    start = i + 1;
+                }
+                if (axis != 3) return null;
+                World world = origin != null ? origin.getWorld() : Bukkit.getWorlds().isEmpty() ? null : Bukkit.getWorlds().get(0);
+                return new Location(world, xyz[0], xyz[1], xyz[2]);
+            }
+
+            @Override
+            public int tokens() {
+                return 3;
+            }
+
+            @Override
+            public String description() {
+                return "location (x y z)";
+            }
+
+            @Override
+            public void complete(CommandSender cs, String typed, List<String> completions) {
+                if (cs instanceof Player) completeFrom(typed, completions, "~");
+            }
+        }
+    }
+
+    public class ArgsContainer {
+        private final CommandInfo command;
+        private final Object[] objects;
+        private final long[] longs;
+        private final double[] doubles;
+        private int given; // Arguments that were typed, the others are optional ones that were left out
+
+        private ArgsContainer(CommandInfo command) {
+            this.command = command;
+            int size = command.args.length;
+            this.objects = size == 0 ? NO_OBJECTS : new Object[size];
+            this.longs = size == 0 ? NO_LONGS : new long[size];
+            this.doubles = size == 0 ? NO_DOUBLES : new double[size];
+        }
+
+        /**
+         * Gets the slot of an argument, it is the same for every call of the command so it can be cached
+         * @param name name of the argument
+         * @return slot of the argument (same as its position)
+         */
+        public int slot(String name) {
+            Integer slot = command.argSlots.get(name);
+            if (slot == null) throw new IllegalStateException(name + " is not a valid argument name!");
+            return slot;
+        }
+
+        /**
+         * Checks if an {@link Argument#optional()} argument was typed, its default value is used if it wasn't
+         * @param name name of the argument
+         * @return true if it was typed
+         */
+        public boolean has(String name) {
+            return slot(name) < given;
+        }
+
+        private ArgumentInfo getArg(int slot, Class<?> c) {
+            if (slot < 0 || slot >= command.args.length) throw new IllegalStateException(slot + " is not a valid position value!");
+            ArgumentInfo argumentInfo = command.args[slot];
+            if (c != argumentInfo.valueClass) throw new IllegalStateException("get type does not match argument type!");
+            return argumentInfo;
+        }
+
+        private Object value(int slot) {
+            switch (command.args[slot].type) {
+                case INTEGER: return (int) longs[slot];
+                case DOUBLE: return doubles[slot];
+                default: return objects[slot];
+            }
+        }
+
+        /**
+         * Returns the value with the argument name in Object form
+         * @param name name of the argument
+         * @return value of the argument without a type
+         */
+        public Object getObj(String name) {
+            Integer slot = command.argSlots.get(name);
+            return slot == null ? null : value(slot);
+        }
+
+        /**
+         * Gets the argument with a specified name and casts it to a specified type
+         * @param name name of the argument (from the @Arg annotation)
+         * @param c type of the argument
+         * @return value cast to the specified type
+         */
+        public <T> T get(String name, Class<T> c) {
+            return get(slot(name), c);
+        }
+
+        /**
+         * Gets the argument at an index and casts it to a specified type
+         * @param position index of the argument (starts at 0)
+         * @param c type of the argument (e.g. Integer.class, Player.class)
+         * @return value cast to the specified type
+         */
+        public <T> T get(int position, Class<T> c) {
+            getArg(position, c);
+            return c.cast(value(position));
+        }
+
+        /**
+         * Gets a {@link ArgType#INTEGER} argument without boxing it
+         * @param name name of the argument
+         * @return value of the argument
+         */
+        public int getInt(String name) {
+            return getInt(slot(name));
+        }
+
+        /**
+         * Gets a {@link ArgType#INTEGER} argument without boxing it
+         * @param slot slot of the argument (see {@link #slot(String)})
+         * @return value of the argument
+         */
+        public int getInt(int slot) {
+            getArg(slot, Integer.class);
+            return (int) longs[slot];
+        }
+
+        /**
+         * Gets a {@link ArgType#DOUBLE} argument without boxing it
+         * @param name name of the argument
+         * @return value of the argument
+         */
+        public double getDouble(String name) {
+            return getDouble(slot(name));
+        }
+
+        /**
+         * Gets a {@link ArgType#DOUBLE} argument without boxing it
+         * @param slot slot of the argument (see {@link #slot(String)})
+         * @return value of the argument
+         */
+        public double getDouble(int slot) {
+            getArg(slot, Double.class);
+            return doubles[slot];
+        }
+    }
+
+    public static class BaseCommandClass {
+        Map<String, CommandInfo> commands;
+        boolean isSuper = false;
+        ClassInfo info;
+
+        public BaseCommandClass() {
+            commands = new HashMap<>();
+        }
+
+        private void addCommand(CommandInfo command) {
+            if (isSuper) {
+                command.usageString = "/" + ((SuperClassInfo) this.info).name + " " + command.usageString.substring(1);
+                if (this.commands.containsKey(command.name.toLowerCase())) throw new IllegalStateException("Cannot have two super-commands with the same alias");
+                for (String s : command.aliases)
+                    if (this.commands.containsKey(aliasPath(command, s)))
+                        throw new IllegalStateException("Cannot have two sub-commands with the same alias");
+            }
+            commands.put(command.name.toLowerCase(), command);
+            for (String a : command.aliases)
+                commands.put(aliasPath(command, a), command);
+        }
+
+        private String aliasPath(CommandInfo command, String alias) {
+            int parent = command.name.lastIndexOf(' '); // Aliases replace the last name of a nested sub-command
+            return (parent < 0 ? alias : command.name.substring(0, parent + 1) + alias).toLowerCase();
+        }
+
+        private void init(ClassInfo info, boolean isSuper) {
+            info.permCheck = PermissionCheck.of(info);
+            this.info = info;
+            this.isSuper = isSuper;
+        }
+
+        private void reset() { // Not registered, so it can be added again
+            this.commands = new HashMap<>();
+            this.info = null;
+            this.isSuper = false;
+        }
+    }
+
+    /** Generated registries (see {@link CommandProcessor}) */
+    /**
+     * Command metadata of a {@link BaseCommandClass}, generated at compile time by {@link CommandProcessor}
+     */
+    public interface CommandRegistry {
+        /**
+         * @return class-wide options (name is null unless it is a super command)
+         */
+        CommandSpec info();
+
+        /**
+         * @return every command method of the class
+         */
+        CommandSpec[] commands();
+    }
+
+    /**
+     * Calls a command method without reflection
+     * @param <T> class that declares the command method
+     */
+    @FunctionalInterface
+    public interface Invoker<T extends BaseCommandClass> {
+        void invoke(T instance, CommandSender cs, ArgsContainer args) throws Throwable;
+    }
+
+    /**
+     * Reads an argument of a type, see {@link CommandManager#registerArgumentType(Class, ArgumentParser)}
+     * @param <T> type of the value
+     */
+    @FunctionalInterface
+    public interface ArgumentParser<T> {
+        /**
+         * Parses a region of the command line. Read it in place, e.g. with charAt, instead of copying it
+         * @param cs sender of the command
+         * @param input command line
+         * @param start index of the first character of the argument
+         * @param end index after the last character of the argument
+         * @return the value, or null if the input isn't valid
+         */
+        T parse(CommandSender cs, CharSequence input, int start, int end);
+
+        /**
+         * @return words the argument takes up, e.g. 3 for x y z
+         */
+        default int tokens() {
+            return 1;
+        }
+
+        /**
+         * @return what the argument should be, e.g. world name. It is the %type% of {@link Message#INVALID_ARGUMENT}
+         */
+        default String description() {
+            return "valid value";
+        }
+
+        /**
+         * @return message sent instead of {@link Message#INVALID_ARGUMENT}, with the same placeholders. null to use that one
+         */
+        default String errorTemplate() {
+            return null;
+        }
+
+        /**
+         * @return true if the value only depends on the words typed (not on the sender or the state of the server) and
+         * is immutable, so it can be reused when the same line is run again, see {@link CommandManager#enablePlanCache(int)}
+         */
+        default boolean cacheable() {
+            return false;
+        }
+
+        /**
+         * Adds the completions of the word being typed
+         * @param cs sender that is typing
+         * @param typed what has been typed of the word so far
+         * @param completions list to add them to
+         */
+        default void complete(CommandSender cs, String typed, List<String> completions) { }
+    }
+
+    /**
+     * Resolved values of the annotations on a class or command method
+     */
+    public static final class CommandSpec {
+        final String name;
+        final UserType type;
+        final String[] permissions;
+        final PermType permType;
+        final String description;
+        final String[] aliases;
+        final boolean ignoreCase;
+        final ArgumentSpec[] args;
+        final String methodName;
+        final Invoker<?> invoker;
+        boolean async;
+        long cooldownNanos;
+        String cooldownBypass;
+        long budgetNanos;
+        boolean rateLimited;
+        double ratePerSecond;
+        int rateBurst;
+        boolean showHelp = true;
+        boolean filterByPerms = true;
+
+        public CommandSpec(String name, UserType type, String[] permissions, PermType permType, String description, String[] aliases) {
+            this(name, type, permissions, permType, description, aliases, true, new ArgumentSpec[0], null, null);
+        }
+
+        public CommandSpec(String name, UserType type, String[] permissions, PermType permType, String description, String[] aliases,
+                           boolean ignoreCase, ArgumentSpec[] args, String methodName, Invoker<?> invoker) {
+            this.name = name;
+            this.type = type;
+            this.permissions = permissions;
+            this.permType = permType;
+            this.description = description;
+            this.aliases = aliases;
+            this.ignoreCase = ignoreCase;
+            this.args = args;
+            this.methodName = methodName;
+            this.invoker = invoker;
+        }
+
+        /**
+         * Marks the command as {@link Async}
+         * @return this spec
+         */
+        public CommandSpec async() {
+            this.async = true;
+            return this;
+        }
+
+        /**
+         * Gives the command a {@link Cooldown}
+         * @return this spec
+         */
+        public CommandSpec cooldown(long value, TimeUnit unit, String bypassPermission) {
+            this.cooldownNanos = unit.toNanos(value);
+            this.cooldownBypass = bypassPermission;
+            return this;
+        }
+
+        /**
+         * Gives the command its own watchdog {@link Budget}
+         * @return this spec
+         */
+        public CommandSpec budget(long value, TimeUnit unit) {
+            this.budgetNanos = unit.toNanos(value);
+            return this;
+        }
+
+        /**
+         * Gives the command its own {@link RateLimit}
+         * @return this spec
+         */
+        public CommandSpec rateLimit(double perSecond, int burst) {
+            this.rateLimited = true;
+            this.ratePerSecond = perSecond;
+            this.rateBurst = burst;
+            return this;
+        }
+
+        /**
+         * Sets the {@link SuperCmdOptions} of a super command
+         * @return this spec
+         */
+        public CommandSpec helpOptions(boolean showHelp, boolean filterByPerms) {
+            this.showHelp = showHelp;
+            this.filterByPerms = filterByPerms;
+            return this;
+        }
+    }
+
+    /**
+     * Resolved values of an {@link Argument} annotation
+     */
+    public static final class ArgumentSpec {
+        final String name;
+        final ArgType type;
+        final int minInt;
+        final int maxInt;
+        final double minDouble;
+        final double maxDouble;
+        final int minStrLen;
+        final int maxStrLen;
+        final Class<?> valueType;
+        boolean optional;
+        String def = "";
+        boolean greedy;
+
+        public ArgumentSpec(String name, ArgType type, int minInt, int maxInt, double minDouble, double maxDouble, int minStrLen, int maxStrLen) {
+            this(name, type, minInt, maxInt, minDouble, maxDouble, minStrLen, maxStrLen, Object.class);
+        }
+
+        public ArgumentSpec(String name, ArgType type, int minInt, int maxInt, double minDouble, double maxDouble, int minStrLen, int maxStrLen, Class<?> valueType) {
+            this.name = name;
+            this.type = type;
+            this.minInt = minInt;
+            this.maxInt = maxInt;
+            this.minDouble = minDouble;
+            this.maxDouble = maxDouble;
+            this.minStrLen = minStrLen;
+            this.maxStrLen = maxStrLen;
+            this.valueType = valueType;
+        }
+
+        /**
+         * Makes the argument {@link Argument#optional()}
+         * @param def value when it is left out, empty for none
+         * @return this spec
+         */
+        public ArgumentSpec optional(String def) {
+            this.optional = true;
+            this.def = def;
+            return this;
+        }
+
+        /**
+         * Makes the argument {@link Argument#greedy()}
+         * @return this spec
+         */
+        public ArgumentSpec greedy() {
+            this.greedy = true;
+            return this;
+        }
+    }
+
+    /**
+     * Snapshot of the metrics of a command, see {@link CommandManager#getStats(String)}
+     */
+    public static final class CommandStats {
+        private final String command;
+        private final long[] counts; // Indexed by Outcome#ordinal()
+        private final long[] histogram;
+        private final long totalNanos;
+
+        private CommandStats(String command, long[] counts, long[] histogram, long totalNanos) {
+            this.command = command;
+            this.counts = counts;
+            this.histogram = histogram;
+            this.totalNanos = totalNanos;
+        }
+
+        /**
+         * @return name of the command, with the super command for sub-commands
+         */
+        public String getCommand() {
+            return command;
+        }
+
+        /**
+         * @param outcome outcome to count
+         * @return how often the command ended with the outcome
+         */
+        public long getCount(Outcome outcome) {
+            return counts[outcome.ordinal()];
+        }
+
+        /**
+         * @return how often the command was used, whatever the outcome
+         */
+        public long getInvocations() {
+            long sum = 0;
+            for (long count : counts) sum += count;
+            return sum;
+        }
+
+        /**
+         * @return mean time the handler ran for in nanoseconds, 0 if it never ran
+         */
+        public double getMeanLatency() {
+            long runs = 0;
+            for (long count : histogram) runs += count;
+            return runs == 0 ? 0 : (double) totalNanos / runs;
+        }
+
+        /**
+         * Latencies are bucketed by powers of two, so this is an upper bound that is at most twice the real value.
+         * Only sampled runs are timed, see {@link CommandManager#setLatencySampleRate(int)}
+         * @param percentile between 0 and 1, e.g. 0.99
+         * @return nanoseconds the handler took at most for that share of its runs, 0 if it never ran
+         */
+        public long getLatencyPercentile(double percentile) {
+            long runs = 0;
+            for (long count : histogram) runs += count;
+            if (runs == 0) return 0;
+            long rank = (long) Math.ceil(percentile * runs);
+            long seen = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                seen += histogram[i];
+                if (seen >= rank) return 1L << i;
+            }
+            return 1L << (histogram.length - 1);
+        }
+
+        /**
+         * @return timed handler runs per latency bucket, bucket i counts the runs that took less than 2^i nanoseconds
+         */
+        public long[] getLatencyHistogram() {
+            return histogram.clone();
+        }
+    }
+
+    /**
+     * Snapshot of the command queue, see {@link CommandManager#getQueueStats()}
+     */
+    public static final class QueueStats {
+        private final int queued;
+        private final int peak;
+        private final long deferred;
+        private final long rejected;
+
+        private QueueStats(int queued, int peak, long deferred, long rejected) {
+            this.queued = queued;
+            this.peak = peak;
+            this.deferred = deferred;
+            this.rejected = rejected;
+        }
+
+        /**
+         * @return commands waiting right now
+         */
+        public int getQueued() {
+            return queued;
+        }
+
+        /**
+         * @return most commands that were waiting at once
+         */
+        public int getPeak() {
+            return peak;
+        }
+
+        /**
+         * @return commands that were queued instead of run right away
+         */
+        public long getDeferred() {
+            return deferred;
+        }
+
+        /**
+         * @return commands that were rejected because the queue was full
+         */
+        public long getRejected() {
+            return rejected;
         }
     }
-    private class CommandInfo extends SuperClassInfo {
-        boolean ignoreCase;
-        ArgumentInfo[] args;
-        String methodName;
-        String usageString; //TODO: Add annotation to customize
 
-        private CommandInfo(Method m) {
-            super(m);
-            this.ignoreCase = loadAnnotations(m, CommandSetup.class, "ignoreCase");
-            Argument[] a = new Argument[] { };
-            if (m.getAnnotationsByType(Argument.class).length > 0)
-                a = m.getAnnotationsByType(Argument.class);
-            this.usageString = "/" + this.name;
-            List<ArgumentInfo> l = new ArrayList<>();
-            List<String> argNames = new ArrayList<>();
-            for (int i = 0; i < a.length; i++) {
-                if (!argNames.contains(a[i].name())) {
-                    argNames.add(a[i].name());
-                    l.add(new ArgumentInfo(a[i], i));
-                    this.usageString += " <" + a[i].name() + ">";
-                }
-                else throw new IllegalStateException("Cannot have two arguments with the same name!");
-            }
-            this.args = l.toArray(new ArgumentInfo[l.size()]);
-            this.methodName = m.getName();
+    /**
+     * Snapshot of the plan cache, see {@link CommandManager#getPlanCacheStats()}
+     */
+    public static final class PlanCacheStats {
+        private final long hits;
+        private final long misses;
+        private final int size;
+        private final int maxSize;
+
+        private PlanCacheStats(long hits, long misses, int size, int maxSize) {
+            this.hits = hits;
+            this.misses = misses;
+            this.size = size;
+            this.maxSize = maxSize;
         }
-    }
 
-    private class ArgumentInfo {
-        String name;
-        ArgType type;
-        int minInt;
-        int maxInt;
-        double minDouble;
-        double maxDouble;
-        int minStrLen;
-        int maxStrLen;
-        int position;
+        /**
+         * @return lines that were run from the cache
+         */
+        public long getHits() {
+            return hits;
+        }
 
-        private ArgumentInfo(Argument a, int position) {
-            this.name = a.name();
-            this.type = a.type();
-            this.minInt = a.minInt();
-            this.maxInt = a.maxInt();
-            this.minDouble = a.minDouble();
-            this.maxDouble = a.maxDouble();
-            this.minStrLen = a.minStrLen();
-            this.maxStrLen = a.maxStrLen();
-            this.position = position;
+        /**
+         * @return lines that were parsed because they weren't in the cache, commands that can't be cached aren't counted
+         */
+        public long getMisses() {
+            return misses;
         }
-    }
 
-    public class ArgsContainer {
-        private List<ArgumentInfo> args;
-        private List<Object> values;
+        /**
+         * @return share of the lines that were run from the cache, 0 to 1
+         */
+        public double getHitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
 
-        private ArgsContainer(List<ArgumentInfo> args, List<Object> values) {
-            this.args = args;
-            this.values = values;
+        /**
+         * @return lines in the cache right now
+         */
+        public int getSize() {
+            return size;
         }
 
-        private ArgsContainer() {
-            this.args = new ArrayList<>();
-            this.values = new ArrayList<>();
+        /**
+         * @return most lines the cache keeps
+         */
+        public int getMaxSize() {
+            return maxSize;
         }
+    }
 
-        private ArgumentInfo getArg(String name) {
-            for (ArgumentInfo argumentInfo : args)
-                if (argumentInfo.name.equals(name))
-                    return argumentInfo;
-            return null;
+    /**
+     * Result of a line of a script, see {@link CommandManager#runScript(CommandSender, Path, Consumer)}
+     */
+    public static final class ScriptLine {
+        private final int number;
+        private final String line;
+        private final Outcome outcome;
+        private final boolean success;
+
+        private ScriptLine(int number, String line, Outcome outcome, boolean success) {
+            this.number = number;
+            this.line = line;
+            this.outcome = outcome;
+            this.success = success && (outcome == null || outcome == Outcome.SUCCESS);
         }
 
-        private ArgumentInfo getArg(int position) {
-            for (ArgumentInfo argumentInfo : args)
-                if (argumentInfo.position == position)
-                    return argumentInfo;
-            return null;
+        /**
+         * @return line number in the file, starting at 1
+         */
+        public int getNumber() {
+            return number;
         }
 
         /**
-         * Returns the value with the argument name in Object form
-         * @param name name of the argument
-         * @return value of the argument without a type
+         * @return the command that was run, without the leading /
          */
-        public Object getObj(String name) {
-            for (int i = 0; i < args.size(); i++)
-                if (args.get(i).name.equals(name))
-                    return values.get(i);
-            return null;
+        public String getLine() {
+            return line;
         }
 
         /**
-         * Gets the argument with a specified name and casts it to a specified type
-         * @param name name of the argument (from the @Arg annotation)
-         * @param c type of the argument
-         * @return value cast to the specified type
+         * @return how the command ended, null if it isn't a CommandManager command and was passed to Bukkit
          */
-        public <T> T get(String name, Class<T> c) {
-            ArgumentInfo argumentInfo = this.getArg(name);
-            if (argumentInfo == null) throw new IllegalStateException(name + " is not a valid argument name!");
-            if (c != argumentInfo.type.c) throw new IllegalStateException("get type does not match argument type!");
-            return c.cast(this.getObj(name));
+        public Outcome getOutcome() {
+            return outcome;
         }
 
         /**
-         * Gets the argument at an index and casts it to a specified type
-         * @param position index of the argument (starts at 0)
-         * @param c type of the argument (e.g. Integer.class, Player.class)
-         * @return value cast to the specified type
+         * @return true if the command ran, for commands passed to Bukkit this means the command exists and didn't throw
          */
-        public <T> T get(int position, Class<T> c) {
-            ArgumentInfo argumentInfo = this.getArg(position);
-            if (argumentInfo == null) throw new IllegalStateException(position + " is not a valid position value!");
-            if (c != argumentInfo.type.c) throw new IllegalStateException("get type does not match argument type!");
-            return c.cast(this.getObj(argumentInfo.name));
+        public boolean isSuccess() {
+            return success;
         }
     }
 
-    public static class BaseCommandClass {
-        Map<String, CommandInfo> commands;
-        boolean isSuper = false;
-        ClassInfo info;
+    /**
+     * Totals of a script, see {@link CommandManager#runScript(CommandSender, Path, Consumer)}
+     */
+    public static final class ScriptReport {
+        private final int[] counts = new int[Outcome.values().length]; // Indexed by Outcome#ordinal()
+        private int lines;
+        private int failures;
 
-        public BaseCommandClass() {
-            commands = new HashMap<>();
+        private ScriptReport() { }
+
+        private void add(ScriptLine line) {
+            lines++;
+            if (!line.isSuccess()) failures++;
+            if (line.getOutcome() != null) counts[line.getOutcome().ordinal()]++;
         }
 
-        private void addCommand(CommandInfo command) {
-            if (isSuper) {
-                command.usageString = "/" + ((SuperClassInfo) this.info).name + " " + command.usageString.substring(1);
-                if (this.commands.containsKey(command.name)) throw new IllegalStateException("Cannot have two super-commands with the same alias");
-                for (String s : command.aliases)
-                    if (this.commands.containsKey(s))
-                        throw new IllegalStateException("Cannot have two sub-commands with the same alias");
-            }
-            commands.put(command.name.toLowerCase(), command);
-            for (String a : command.aliases)
-                commands.put(a.toLowerCase(), command);
+        /**
+         * @return lines that were run, without the blank lines and comments
+         */
+        public int getLines() {
+            return lines;
         }
 
-        private void init(ClassInfo info, boolean isSuper) {
-            this.info = info;
-            this.isSuper = isSuper;
+        /**
+         * @return lines that didn't succeed, see {@link ScriptLine#isSuccess()}
+         */
+        public int getFailures() {
+            return failures;
+        }
+
+        /**
+         * @param outcome outcome to count
+         * @return how many CommandManager commands of the script ended with the outcome
+         */
+        public int getCount(Outcome outcome) {
+            return counts[outcome.ordinal()];
         }
     }
 
@@ -434,6 +4318,48 @@ public class CommandManager implements CommandExecutor {
         String[] value() default {};
         PermType type() default PermType.OR;
     }
+
+    /**
+     * Runs the command on the async executor (see {@link #setAsyncExecutor(Executor)}) instead of the main thread.
+     * Arguments and permissions are still checked on the main thread. On a class it applies to every command of the class.
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target({ElementType.METHOD, ElementType.TYPE})
+    public @interface Async { }
+
+    /**
+     * Time a player has to wait before using the command again. On a class it applies to every command
+     * of the class that doesn't have its own cooldown, each command is tracked separately.
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target({ElementType.METHOD, ElementType.TYPE})
+    public @interface Cooldown {
+        long value();
+        TimeUnit unit() default TimeUnit.SECONDS;
+        String bypassPermission() default "";
+    }
+
+    /**
+     * How long the command may run before the watchdog reports it, instead of the budget passed to
+     * {@link CommandManager#enableWatchdog(long, TimeUnit)}. On a class it applies to every command of the class.
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target({ElementType.METHOD, ElementType.TYPE})
+    public @interface Budget {
+        long value();
+        TimeUnit unit() default TimeUnit.MILLISECONDS;
+    }
+
+    /**
+     * How often each player may use the command, instead of the limit of {@link CommandManager#setCommandRateLimit(double, int)}.
+     * 0 means no limit. On a class it applies to every command of the class.
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target({ElementType.METHOD, ElementType.TYPE})
+    public @interface RateLimit {
+        double value(); // Uses per second
+        int burst() default 1;
+    }
     /* Method ONLY */
     @Retention(RetentionPolicy.RUNTIME)
     @Target(ElementType.METHOD)
@@ -447,6 +4373,19 @@ public class CommandManager implements CommandExecutor {
         double maxDouble() default Double.MAX_VALUE;
         int minStrLen() default 0;
         int maxStrLen() default Integer.MAX_VALUE;
+        Class<?> valueType() default Object.class; // Parsed by the parser registered for it instead of type(), see registerArgumentType()
+        /**
+         * The argument can be left out, only arguments after the required ones can be optional
+         */
+        boolean optional() default false;
+        /**
+         * Value of an optional argument that was left out, parsed like typed input. Empty leaves it unset
+         */
+        String def() default "";
+        /**
+         * Takes the rest of the line, spaces included. Only the last argument can be greedy and it must be a STRING
+         */
+        boolean greedy() default false;
     }
 
     @Target(ElementType.METHOD)
@@ -459,9 +4398,10 @@ public class CommandManager implements CommandExecutor {
 
     @Retention(RetentionPolicy.RUNTIME)
     @Target(ElementType.TYPE)
-    public @interface SuperCmdOptions{ //TODO: Implement
+    public @interface SuperCmdOptions {
         /**
-         * Shows help when the super command is followed by "help" or nothing
+         * Shows help when the super command is followed by "help" or nothing, "help 2" shows the second page.
+         * Otherwise the usage is sent
          */
         boolean showHelp() default true;
 
@@ -470,7 +4410,6 @@ public class CommandManager implements CommandExecutor {
          */
         boolean filterByPerms() default true;
     }
-    //TODO: Add cooldown annotations
 
     /* Public enums */
     public enum PermType {
@@ -498,41 +4437,120 @@ public class CommandManager implements CommandExecutor {
 
         final String desc;
         final Class c;
-        final String v;
-
-        final String msg = "The %pos% (%name%) argument requires a %type%";
-        final String validator = " %v% %min% and %max%";
+        final String v; // Describes the bounds, null if there are none
 
         ArgType(Class c, String desc, String v) {
             this.c = c;
             this.desc = desc;
             this.v = v;
         }
-        private String getInvalidMsg(int position, ArgumentInfo arg, boolean outOfBounds) {
-            String s = this.msg.replace("%pos%", ordinal(position+1)).replace("%name%", arg.name).replace("%type%", arg.type.desc);
-            if (outOfBounds && this.v != null) {
-                s += this.validator.replace("%v%", this.v);
-                System.out.println(arg.type);
-                if (arg.type == ArgType.INTEGER) s = s.replace("%min%", ""+arg.minInt).replace("%max%", ""+arg.maxInt);
-                else if (arg.type == ArgType.DOUBLE) s = s.replace("%min%", ""+arg.minDouble).replace("%max%", ""+arg.maxDouble);
-                else if (arg.type == ArgType.STRING) s = s.replace("%min%", ""+arg.minStrLen).replace("%max%", ""+arg.maxStrLen);
-            }
+    }
 
-            return s + ".";
+    /**
+     * How a PLAYER argument that isn't a full player name is matched, see {@link #setPlayerMatching(PlayerMatching)}
+     */
+    public enum PlayerMatching {
+        /** Only full names */
+        EXACT,
+        /** The player with the shortest name starting with the input, what {@link Bukkit#getPlayer(String)} does */
+        CLOSEST,
+        /** The player whose name starts with the input if they are the only one, {@link Message#AMBIGUOUS_PLAYER} is sent otherwise */
+        UNIQUE
+    }
+
+    /**
+     * How the arguments of a command line are parsed, see {@link #setParserBackend(ParserBackend)}
+     */
+    public enum ParserBackend {
+        /** One loop for every command, it looks at the type, quotes and default of each argument as it goes */
+        INTERPRETED,
+        /**
+         * A parser built for each command the first time it is used, with the word, bounds and parser of each argument bound
+         * into it. Lines with quoted words and commands with arguments of several words use the loop
+         */
+        COMPILED
+    }
+
+    /**
+     * Messages sent by CommandManager. Placeholders are written as {@code %name%}
+     */
+    public enum Message {
+        /** No placeholders */
+        NO_PERMS("No perms!"),
+        /** No placeholders */
+        NOT_PLAYER("This command must be run by a player!"),
+        /** No placeholders */
+        NOT_CONSOLE("This command must be run by the console!"),
+        /** %arg% is the unknown sub-command, %command% the command before it */
+        INVALID_SUB_COMMAND("&n%arg%&r is not a valid sub-command for &n/%command%&r", "arg", "command"),
+        /** %usage% is the usage of the command */
+        USAGE("Use format: %usage%", "usage"),
+        /** %pos% is 1st, 2nd..., %name% the argument name, %type% the type (whole number, decimal...) and %input% what was typed */
+        INVALID_ARGUMENT("The %pos% (%name%) argument requires a %type%.", "pos", "name", "type", "input"),
+        /** Same as {@link #INVALID_ARGUMENT} with %bounds% (between, with a length between), %min% and %max% */
+        ARGUMENT_OUT_OF_BOUNDS("The %pos% (%name%) argument requires a %type% %bounds% %min% and %max%.", "pos", "name", "type", "bounds", "min", "max", "input"),
+        /** %time% is the time left, e.g. 1m 30s */
+        COOLDOWN("You must wait %time% before using this command again!", "time"),
+        /** No placeholders, sent when an {@link Async} command threw an exception */
+        ERROR("An error occurred while running this command!"),
+        /** No placeholders, sent when the {@link Async} executor rejected the command */
+        REJECTED("This command can't be run right now!"),
+        /** %input% is what was typed and %players% the names it could be, sent for PLAYER arguments with {@link PlayerMatching#UNIQUE} */
+        AMBIGUOUS_PLAYER("&n%input%&r matches several players: %players%", "input", "players"),
+        /** %position% is the place of the command in the queue, see {@link CommandManager#enableScheduling(long, TimeUnit, int, int)} */
+        QUEUED("The server is busy, your command will run soon (position %position%)", "position"),
+        /** No placeholders, sent when the command queue is full */
+        QUEUE_FULL("The server is busy, try again later!"),
+        /** No placeholders, sent when a player went over a rate limit */
+        RATE_LIMITED("You are using commands too fast!"),
+        /** %command% is the command the help is for, %page% the page shown and %pages% how many there are */
+        HELP_HEADER("&6Help for /%command% &7(page %page% of %pages%)", "command", "page", "pages"),
+        /** %usage% is the usage of a sub-command, %description% its description and %aliases% its aliases separated by commas */
+        HELP_ENTRY("&e%usage%&7: %description%", "usage", "description", "aliases");
+
+        final String def;
+        final String[] placeholders;
+
+        Message(String def, String... placeholders) {
+            this.def = def;
+            this.placeholders = placeholders;
         }
 
-        private static String ordinal(int i) {
-            String[] sufixes = new String[] { "th", "st", "nd", "rd", "th", "th", "th", "th", "th", "th" };
-            switch (i % 100) {
-                case 11:
-                case 12:
-                case 13:
-                    return i + "th";
-                default:
-                    return i + sufixes[i % 10];
-            }
+        /**
+         * @return config key of this message, e.g. no-perms
+         */
+        public String getPath() {
+            return name().toLowerCase().replace('_', '-');
         }
     }
+
+    /**
+     * How a command invocation ended, see {@link CommandStats#getCount(Outcome)}
+     */
+    public enum Outcome {
+        /** The handler ran without throwing (for super commands: the help was shown) */
+        SUCCESS,
+        NO_PERMS,
+        NOT_PLAYER,
+        NOT_CONSOLE,
+        ON_COOLDOWN,
+        /** Wrong number of arguments or an unknown sub-command */
+        USAGE_ERROR,
+        /** An argument couldn't be parsed or wasn't within its bounds */
+        INVALID_ARGUMENT,
+        /** The handler threw an exception */
+        EXCEPTION,
+        /** The {@link Async} executor rejected the command */
+        REJECTED,
+        /** The player went over a rate limit, see {@link CommandManager#setSenderRateLimit(double, int)} */
+        RATE_LIMITED
+    }
+    /* Private interfaces */
+    @FunctionalInterface
+    private interface Handler {
+        void handle(CommandSender cs, ArgsContainer args) throws Throwable;
+    }
+
     /* Private enums */
     private enum CmdIssue {
         NO_PERMS,
@@ -542,35 +4560,80 @@ public class CommandManager implements CommandExecutor {
     }
 
     /* Helper functions */
-    private CmdIssue canExecute(CommandSender cs, ClassInfo...infos) {
-        if (!(cs instanceof ConsoleCommandSender)) {
-            boolean[] passedPerm = new boolean[infos.length];
-            Arrays.fill(passedPerm, false);
-            for (int i = 0; i < infos.length; i++) {
-                boolean hasPerm = infos[i].permissions.length == 0; // for PermType.OR
-                boolean hasAllPerms = true; // for PermType.AND
-                for (String perm : infos[i].permissions) {
-                    if (cs.hasPermission(perm)) hasPerm = true;
-                    else hasAllPerms = false;
-                }
-                switch (infos[i].permType) {
-                    case OR:
-                        passedPerm[i] = hasPerm;
-                        break;
-                    case AND:
-                        passedPerm[i] = hasAllPerms;
-                        break;
-                }
-            }
-            for (boolean b : passedPerm) if (!b) return CmdIssue.NO_PERMS;
-        }
-        for (ClassInfo info : infos)
-            if (!info.type.c.isInstance(cs))
-                return info.type.issue;
+    /**
+     * @param classInfo class-wide options
+     * @param info the command, or classInfo itself. Its {@link PermissionCheck} already includes the class permissions
+     */
+    private CmdIssue canExecute(CommandSender cs, ClassInfo classInfo, ClassInfo info) {
+        if (!(cs instanceof ConsoleCommandSender) && !this.permissionCache.test(cs, info.permCheck))
+            return CmdIssue.NO_PERMS;
+        if (!classInfo.type.c.isInstance(cs))
+            return classInfo.type.issue;
+        if (!info.type.c.isInstance(cs))
+            return info.type.issue;
         return CmdIssue.NONE;
     }
-    private String underline(String s) {
-        return ChatColor.UNDERLINE + s + ChatColor.RESET;
+    private String formatDuration(long nanos) {
+        long seconds = Math.max(1, (nanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1)); // Round up
+        StringBuilder sb = new StringBuilder();
+        if (seconds >= 86400) sb.append(seconds / 86400).append("d ");
+        if (seconds >= 3600) sb.append(seconds / 3600 % 24).append("h ");
+        if (seconds >= 60) sb.append(seconds / 60 % 60).append("m ");
+        return sb.append(seconds % 60).append('s').toString();
+    }
+    private String formatLatency(double nanos) {
+        return nanos < 1e6 ? String.format("%.1fus", nanos / 1e3) : String.format("%.2fms", nanos / 1e6);
+    }
+    private String path(String label, String[] args, int length) {
+        StringBuilder sb = new StringBuilder(label);
+        for (int i = 0; i < length; i++) sb.append(' ').append(args[i]);
+        return sb.toString();
+    }
+    private static String ordinal(int i) {
+        String[] sufixes = new String[] { "th", "st", "nd", "rd", "th", "th", "th", "th", "th", "th" };
+        switch (i % 100) {
+            case 11:
+            case 12:
+            case 13:
+                return i + "th";
+            default:
+                return i + sufixes[i % 10];
+        }
+    }
+    private static String argUsage(String name, boolean optional, boolean greedy) {
+        if (greedy) name += "...";
+        return optional ? "[" + name + "]" : "<" + name + ">";
+    }
+    /**
+     * Finds the words of the argument that starts at words[start]. A word starting with " is read up to the word ending with "
+     * @return index after its last word (can be past the end if words are missing), or -1 if a quote isn't closed
+     */
+    private static int argumentEnd(ArgumentInfo arg, String[] words, int start) {
+        if (arg.greedy) return words.length;
+        if (arg.tokens > 1) return start + arg.tokens;
+        String first = words[start];
+        if (first.isEmpty() || first.charAt(0) != '"' || (first.length() > 1 && first.charAt(first.length() - 1) == '"'))
+            return start + 1;
+        for (int i = start + 1; i < words.length; i++)
+            if (words[i].endsWith("\"")) return i + 1;
+        return -1;
+    }
+    /**
+     * @return text of the words [start, end) of an argument without its quotes, only copies it if it spans several words or is quoted
+     */
+    private static String argumentText(ArgumentInfo arg, String[] words, int start, int end) {
+        String first = words[start];
+        boolean quoted = !arg.greedy && arg.tokens == 1 && !first.isEmpty() && first.charAt(0) == '"';
+        if (end - start == 1) return quoted ? first.substring(1, first.length() - 1) : first;
+        StringBuilder sb = new StringBuilder(quoted ? first.substring(1) : first);
+        for (int i = start + 1; i < end; i++) sb.append(' ').append(words[i]); // Bukkit splits on single spaces, this puts them back as typed
+        if (quoted) sb.setLength(sb.length() - 1);
+        return sb.toString();
+    }
+    private boolean isVisible(Class<?> c) {
+        try {
+            return Class.forName(c.getName(), false, CommandManager.class.getClassLoader()) == c;
+        } catch (ClassNotFoundException e) { return false; }
     }
     private <T> T loadAnnotations(AnnotatedElement t, Class<? extends Annotation> c, String value) {
         try {
@@ -581,550 +4644,276 @@ public class CommandManager implements CommandExecutor {
         } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) { e.printStackTrace(); return null; }
     }
 
-//    /**
-//     * Copyright (c) 2015, SpigotMC Pty. Ltd. All rights reserved.
-//     *
-//     * Redistribution and use in source and binary forms, with or without
-//     * modification, are permitted provided that the following conditions are met:
-//     *
-//     * Redistributions of source code must retain the above copyright notice, this
-//     * list of conditions and the following disclaimer.
-//     *
-//     * Redistributions in binary form must reproduce the above copyright notice,
-//     * this list of conditions and the following disclaimer in the documentation
-//     * and/or other materials provided with the distribution.
-//     *
-//     * The name of the author may not be used to endorse or promote products derived
-//     * from this software without specific prior written permission.
-//     *
-//     * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
-//     * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
-//     * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
-//     * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
-//     * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
-//     * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
-//     * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
-//     * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
-//     * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
-//     * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
-//     * POSSIBILITY OF SUCH DAMAGE.
-//     */
-//
-//    /** =============== Command =============== **/
-//    /**
-//     * Defines a plugin command
-//     */
-//    @Documented
-//    @Retention(RetentionPolicy.RUNTIME)
-//    @Target(ElementType.TYPE)
-//    @Repeatable(Commands.class)
-//    public @interface Command {
-//        String name();
-//        String desc() default "";
-//        String[] aliases() default {};
-//        String permission() default "";
-//        String permissionMessage() default "";
-//        String usage() default "";
-//    }
-//    /**
-//     * Use multiple {@link Command} annotations instead
-//     */
-//    @Documented
-//    @Target(ElementType.TYPE)
-//    @Retention(RetentionPolicy.RUNTIME)
-//    public @interface Commands { Command[] value() default {}; }
-//    /** ============= End Command ============= **/
-//    /** =============== Dependency =============== **/
-//    /** ============= End Dependency ============= **/
-//    /** =============== Permission =============== **/
-//    /** ============= End Permission ============= **/
-//
-//    /** =============== Plugin =============== **/
-//    /* =============== Author =============== */
-//    /**
-//     * Use multiple Author annotations instead!
-//     */
-//    @Documented
-//    @Retention(RetentionPolicy.RUNTIME)
-//    @Target(ElementType.TYPE)
-//    public @interface Authors { Author[] value(); }
-//    /**
-//     *  Plugin author/authors
-//     *  Use multiple annotations for multiple authors
-//     */
-//    @Documented
-//    @Retention(RetentionPolicy.RUNTIME)
-//    @Target(ElementType.TYPE)
-//    @Repeatable(Authors.class)
-//    public @interface Author { String value(); }
-//    /* =============== End Author =============== */
-//    /**
-//     * This annotation specifies the api version of the plugin.
-//     * Defaults to {@link ApiVersion.Target#DEFAULT}.
-//     * Pre-1.13 plugins do not need to use this annotation.
-//     */
-//    @Documented
-//    @Retention(RetentionPolicy.RUNTIME)
-//    @Target( ElementType.TYPE )
-//    public @interface ApiVersion {
-//        Target value() default Target.DEFAULT;
-//        enum Target {
-//            DEFAULT( null ),
-//            v1_13( "1.13", DEFAULT );
-//
-//            private final String version;
-//            private final Collection<Target> conflictsWith = Sets.newLinkedHashSet();
-//
-//            Target(String version, Target... conflictsWith) {
-//                this.version = version;
-//                this.conflictsWith.addAll( Lists.newArrayList( conflictsWith ) );
-//            }
-//            public String getVersion() { return version; }
-//
-//            public boolean conflictsWith(Target target) { return this.conflictsWith.contains( target ); }
-//        }
-//    }
-//    /**
-//     *  Short plugin description
-//     */
-//    @Documented
-//    @Retention(RetentionPolicy.RUNTIME)
-//    @Target(ElementType.TYPE)
-//    public @interface Description { String value(); }
-//    /**
-//     * Optimal load position of the plugin {@link PluginLoadOrder}
-//     * Defaults to {@link PluginLoadOrder#POSTWORLD}.
-//     */
-//    @Documented
-//    @Retention(RetentionPolicy.RUNTIME)
-//    @Target(ElementType.TYPE)
-//    public @interface LoadOrder { PluginLoadOrder value() default PluginLoadOrder.POSTWORLD; }
-//    /**
-//     *  Prefix for logging
-//     */
-//    @Documented
-//    @Retention(RetentionPolicy.RUNTIME)
-//    @Target(ElementType.TYPE)
-//    public @interface LogPrefix { String value(); }
-//    /**
-//     *  Must be placed on the class that extends {@link org.bukkit.plugin.java.JavaPlugin}
-//     */
-//    @Documented
-//    @Retention(RetentionPolicy.RUNTIME)
-//    @Target(ElementType.TYPE)
-//    public @interface Plugin {
-//        String name();
-//        String version();
-//        String DEFAULT_VERSION = "v0.0";
-//    }
-//    /**
-//     *  Plugin website url
-//     */
-//    @Documented
-//    @Retention(RetentionPolicy.RUNTIME)
-//    @Target(ElementType.TYPE)
-//    public @interface Website { String value(); }
-//    /** =============== End Plugin =============== **/
-//
-//
-//
-//    @SupportedAnnotationTypes( "org.bukkit.plugin.java.annotation.*" )
-//    @SupportedSourceVersion( SourceVersion.RELEASE_8 )
-//    public class PluginAnnotationProcessor extends AbstractProcessor {
-//
-//        private boolean hasMainBeenFound = false;
-//
-//        private final DateTimeFormatter dFormat = DateTimeFormatter.ofPattern( "yyyy/MM/dd HH:mm:ss", Locale.ENGLISH );
-//
-//        @Override
-//        public boolean process(Set<? extends TypeElement> annots, RoundEnvironment rEnv) {
-//            Element mainPluginElement = null;
-//            hasMainBeenFound = false;
-//
-//            Set<? extends Element> elements = rEnv.getElementsAnnotatedWith( Plugin.class );
-//            if ( elements.size() > 1 ) {
-//                raiseError( "Found more than one plugin main class" );
-//                return false;
-//            }
-//
-//            if ( elements.isEmpty() ) { // don't raise error because we don't know which run this is
-//                return false;
-//            }
-//            if ( hasMainBeenFound ) {
-//                raiseError( "The plugin class has already been located, aborting!" );
-//                return false;
-//            }
-//            mainPluginElement = elements.iterator().next();
-//            hasMainBeenFound = true;
-//
-//            TypeElement mainPluginType;
-//            if ( mainPluginElement instanceof TypeElement ) {
-//                mainPluginType = ( TypeElement ) mainPluginElement;
-//            } else {
-//                raiseError( "Main plugin class is not a class", mainPluginElement );
-//                return false;
-//            }
-//
-//            if ( !( mainPluginType.getEnclosingElement() instanceof PackageElement ) ) {
-//                raiseError( "Main plugin class is not a top-level class", mainPluginType );
-//                return false;
-//            }
-//
-//            if ( mainPluginType.getModifiers().contains( Modifier.STATIC ) ) {
-//                raiseError( "Main plugin class cannot be static nested", mainPluginType );
-//                return false;
-//            }
-//
-//            if ( !processingEnv.getTypeUtils().isSubtype( mainPluginType.asType(), fromClass( JavaPlugin.class ) ) ) {
-//                raiseError( "Main plugin class is not an subclass of JavaPlugin!", mainPluginType );
-//            }
-//
-//            if ( mainPluginType.getModifiers().contains( Modifier.ABSTRACT ) ) {
-//                raiseError( "Main plugin class cannot be abstract", mainPluginType );
-//                return false;
-//            }
-//
-//            // check for no-args constructor
-//            checkForNoArgsConstructor( mainPluginType );
-//
-//            Map<String, Object> yml = Maps.newLinkedHashMap(); // linked so we can maintain the same output into file for sanity
-//
-//            // populate mainName
-//            final String mainName = mainPluginType.getQualifiedName().toString();
-//            yml.put( "main", mainName ); // always override this so we make sure the main class name is correct
-//
-//            // populate plugin name
-//            processAndPut( yml, "name", mainPluginType, mainName.substring( mainName.lastIndexOf( '.' ) + 1 ), Plugin.class, String.class, "name" );
-//
-//            // populate version
-//            processAndPut( yml, "version", mainPluginType, Plugin.DEFAULT_VERSION, Plugin.class, String.class, "version" );
-//
-//            // populate plugin description
-//            processAndPut( yml, "description", mainPluginType, null, Description.class, String.class );
-//
-//            // populate plugin load order
-//            processAndPut( yml, "load", mainPluginType, null, LoadOrder.class, String.class );
-//
-//            // authors
-//            Author[] authors = mainPluginType.getAnnotationsByType( Author.class );
-//            List<String> authorMap = Lists.newArrayList();
-//            for ( Author auth : authors ) {
-//                authorMap.add( auth.value() );
-//            }
-//            if ( authorMap.size() > 1 ) {
-//                yml.put( "authors", authorMap );
-//            } else if ( authorMap.size() == 1 ) {
-//                yml.put( "author", authorMap.iterator().next() );
-//            }
-//
-//            // website
-//            processAndPut( yml, "website", mainPluginType, null, Website.class, String.class );
-//
-//            // prefix
-//            processAndPut( yml, "prefix", mainPluginType, null, LogPrefix.class, String.class );
-//
-//            // dependencies
-//            Dependency[] dependencies = mainPluginType.getAnnotationsByType( Dependency.class );
-//            List<String> hardDependencies = Lists.newArrayList();
-//            for ( Dependency dep : dependencies ) {
-//                hardDependencies.add( dep.value() );
-//            }
-//            if ( !hardDependencies.isEmpty() ) yml.put( "depend", hardDependencies );
-//
-//            // soft-dependencies
-//            SoftDependency[] softDependencies = mainPluginType.getAnnotationsByType( SoftDependency.class );
-//            String[] softDepArr = new String[ softDependencies.length ];
-//            for ( int i = 0; i < softDependencies.length; i++ ) {
-//                softDepArr[ i ] = softDependencies[ i ].value();
-//            }
-//            if ( softDepArr.length > 0 ) yml.put( "softdepend", softDepArr );
-//
-//            // load-before
-//            LoadBefore[] loadBefore = mainPluginType.getAnnotationsByType( LoadBefore.class );
-//            String[] loadBeforeArr = new String[ loadBefore.length ];
-//            for ( int i = 0; i < loadBefore.length; i++ ) {
-//                loadBeforeArr[ i ] = loadBefore[ i ].value();
-//            }
-//            if ( loadBeforeArr.length > 0 ) yml.put( "loadbefore", loadBeforeArr );
-//
-//            // commands
-//            // Begin processing external command annotations
-//            Map<String, Map<String, Object>> commandMap = Maps.newLinkedHashMap();
-//            boolean validCommandExecutors = processExternalCommands( rEnv.getElementsAnnotatedWith( Commands.class ), mainPluginType, commandMap );
-//            if ( !validCommandExecutors ) {
-//                // #processExternalCommand already raised the errors
-//                return false;
-//            }
-//
-//            Commands commands = mainPluginType.getAnnotation( Commands.class );
-//
-//            // Check main class for any command annotations
-//            if ( commands != null ) {
-//                Map<String, Map<String, Object>> merged = Maps.newLinkedHashMap();
-//                merged.putAll( commandMap );
-//                merged.putAll( this.processCommands( commands ) );
-//                commandMap = merged;
-//            }
-//
-//            yml.put( "commands", commandMap );
-//
-//            // Permissions
-//            Map<String, Map<String, Object>> permissionMetadata = Maps.newLinkedHashMap();
-//
-//            Set<? extends Element> permissionAnnotations = rEnv.getElementsAnnotatedWith( Command.class );
-//            if ( permissionAnnotations.size() > 0 ) {
-//                for ( Element element : permissionAnnotations ) {
-//                    if ( element.equals( mainPluginElement ) ) {
-//                        continue;
-//                    }
-//                    if ( element.getAnnotation( Permission.class ) != null ) {
-//                        Permission permissionAnnotation = element.getAnnotation( Permission.class );
-//                        permissionMetadata.put( permissionAnnotation.name(), this.processPermission( permissionAnnotation ) );
-//                    }
-//                }
-//            }
-//
-//            Permissions permissions = mainPluginType.getAnnotation( Permissions.class );
-//            if ( permissions != null ) {
-//                Map<String, Map<String, Object>> joined = Maps.newLinkedHashMap();
-//                joined.putAll( permissionMetadata );
-//                joined.putAll( this.processPermissions( permissions ) );
-//                permissionMetadata = joined;
-//            }
-//
-//            // Process Permissions on command executors
-//            boolean validPermissions = processExternalPermissions( rEnv.getElementsAnnotatedWith( Permissions.class ), mainPluginType, permissionMetadata );
-//            if ( !validPermissions ) {
-//                return false;
-//            }
-//            yml.put( "permissions", permissionMetadata );
-//
-//            // api-version
-//            if ( mainPluginType.getAnnotation( ApiVersion.class ) != null ) {
-//                ApiVersion apiVersion = mainPluginType.getAnnotation( ApiVersion.class );
-//                if ( apiVersion.value() != ApiVersion.Target.DEFAULT ) {
-//                    yml.put( "api-version", apiVersion.value().getVersion() );
-//                }
-//            }
-//
-//            try {
-//                Yaml yaml = new Yaml();
-//                FileObject file = this.processingEnv.getFiler().createResource( StandardLocation.CLASS_OUTPUT, "", "plugin.yml" );
-//                try ( Writer w = file.openWriter() ) {
-//                    w.append( "# Auto-generated plugin.yml, generated at " )
-//                            .append( LocalDateTime.now().format( dFormat ) )
-//                            .append( " by " )
-//                            .append( this.getClass().getName() )
-//                            .append( "\n\n" );
-//                    // have to format the yaml explicitly because otherwise it dumps child nodes as maps within braces.
-//                    String raw = yaml.dumpAs( yml, Tag.MAP, DumperOptions.FlowStyle.BLOCK );
-//                    w.write( raw );
-//                    w.flush();
-//                    w.close();
-//                }
-//                // try with resources will close the Writer since it implements Closeable
-//            } catch ( IOException e ) {
-//                throw new RuntimeException( e );
-//            }
-//            return true;
-//        }
-//
-//        private boolean processExternalPermissions(Set<? extends Element> commandExecutors, TypeElement mainPluginType, Map<String, Map<String, Object>> yml) {
-//            for ( Element element : commandExecutors ) {
-//                // Check to see if someone annotated a non-class with this
-//                if ( !( element instanceof TypeElement ) ) {
-//                    this.raiseError( "Specified Command Executor class is not a class." );
-//                    return false;
-//                }
-//
-//                TypeElement typeElement = ( TypeElement ) element;
-//                if ( typeElement.equals( mainPluginType ) ) {
-//                    continue;
-//                }
-//
-//                // Check to see if annotated class is actuall a command executor
-//                TypeMirror mirror = this.processingEnv.getElementUtils().getTypeElement( CommandExecutor.class.getName() ).asType();
-//                if ( !( this.processingEnv.getTypeUtils().isAssignable( typeElement.asType(), mirror ) ) ) {
-//                    this.raiseError( "Specified Command Executor class is not assignable from CommandExecutor " );
-//                    return false;
-//                }
-//
-//                Map<String, Map<String, Object>> newMap = Maps.newLinkedHashMap();
-//                Permissions annotation = typeElement.getAnnotation( Permissions.class );
-//                if ( annotation != null && annotation.value().length > 0 ) {
-//                    newMap.putAll( processPermissions( annotation ) );
-//                }
-//                yml.putAll( newMap );
-//            }
-//            return true;
-//        }
-//
-//        private void checkForNoArgsConstructor(TypeElement mainPluginType) {
-//            for ( ExecutableElement constructor : ElementFilter.constructorsIn( mainPluginType.getEnclosedElements() ) ) {
-//                if ( constructor.getParameters().isEmpty() ) {
-//                    return;
-//                }
-//            }
-//            raiseError( "Main plugin class must have a no argument constructor.", mainPluginType );
-//        }
-//
-//        private void raiseError(String message) {
-//            this.processingEnv.getMessager().printMessage( Diagnostic.Kind.ERROR, message );
-//        }
-//
-//        private void raiseError(String message, Element element) {
-//            this.processingEnv.getMessager().printMessage( Diagnostic.Kind.ERROR, message, element );
-//        }
-//
-//        private TypeMirror fromClass(Class<?> clazz) {
-//            return processingEnv.getElementUtils().getTypeElement( clazz.getName() ).asType();
-//        }
-//
-//        private <A extends Annotation, R> R processAndPut(
-//                Map<String, Object> map, String name, Element el, R defaultVal, Class<A> annotationType, Class<R> returnType) {
-//            return processAndPut( map, name, el, defaultVal, annotationType, returnType, "value" );
-//        }
-//
-//        private <A extends Annotation, R> R processAndPut(
-//                Map<String, Object> map, String name, Element el, R defaultVal, Class<A> annotationType, Class<R> returnType, String methodName) {
-//            R result = process( el, defaultVal, annotationType, returnType, methodName );
-//            if ( result != null )
-//                map.put( name, result );
-//            return result;
-//        }
-//
-//        private <A extends Annotation, R> R process(Element el, R defaultVal, Class<A> annotationType, Class<R> returnType, String methodName) {
-//            R result;
-//            A ann = el.getAnnotation( annotationType );
-//            if ( ann == null ) result = defaultVal;
-//            else {
-//                try {
-//                    Method value = annotationType.getMethod( methodName );
-//                    Object res = value.invoke( ann );
-//                    result = ( R ) ( returnType == String.class ? res.toString() : returnType.cast( res ) );
-//                } catch ( Exception e ) {
-//                    throw new RuntimeException( e ); // shouldn't happen in theory (blame Choco if it does)
-//                }
-//            }
-//            return result;
-//        }
-//
-//        private boolean processExternalCommands(Set<? extends Element> commandExecutors, TypeElement mainPluginType, Map<String, Map<String, Object>> commandMetadata) {
-//            for ( Element element : commandExecutors ) {
-//                // Check to see if someone annotated a non-class with this
-//                if ( !( element instanceof TypeElement ) ) {
-//                    this.raiseError( "Specified Command Executor class is not a class." );
-//                    return false;
-//                }
-//
-//                TypeElement typeElement = ( TypeElement ) element;
-//                if ( typeElement.equals( mainPluginType ) ) {
-//                    continue;
-//                }
-//
-//                // Check to see if annotated class is actuall a command executor
-//                TypeMirror mirror = this.processingEnv.getElementUtils().getTypeElement( CommandExecutor.class.getName() ).asType();
-//                if ( !( this.processingEnv.getTypeUtils().isAssignable( typeElement.asType(), mirror ) ) ) {
-//                    this.raiseError( "Specified Command Executor class is not assignable from CommandExecutor " );
-//                    return false;
-//                }
-//
-//                Commands annotation = typeElement.getAnnotation( Commands.class );
-//                if ( annotation != null && annotation.value().length > 0 ) {
-//                    commandMetadata.putAll( this.processCommands( annotation ) );
-//                }
-//            }
-//            return true;
-//        }
-//
-//        /**
-//         * Processes a set of commands.
-//         *
-//         * @param commands The annotation.
-//         *
-//         * @return The generated command metadata.
-//         */
-//        protected Map<String, Map<String, Object>> processCommands(Commands commands) {
-//            Map<String, Map<String, Object>> commandList = Maps.newLinkedHashMap();
-//            for ( Command command : commands.value() ) {
-//                commandList.put( command.name(), this.processCommand( command ) );
-//            }
-//            return commandList;
-//        }
-//
-//        /**
-//         * Processes a single command.
-//         *
-//         * @param commandAnnotation The annotation.
-//         *
-//         * @return The generated command metadata.
-//         */
-//        protected Map<String, Object> processCommand(Command commandAnnotation) {
-//            Map<String, Object> command = Maps.newLinkedHashMap();
-//
-//            if ( commandAnnotation.aliases().length == 1 ) {
-//                command.put( "aliases", commandAnnotation.aliases()[ 0 ] );
-//            } else if ( commandAnnotation.aliases().length > 1 ) {
-//                command.put( "aliases", commandAnnotation.aliases() );
-//            }
-//
-//            if ( !commandAnnotation.desc().isEmpty() ) {
-//                command.put( "description", commandAnnotation.desc() );
-//            }
-//            if ( !commandAnnotation.permission().isEmpty() ) {
-//                command.put( "permission", commandAnnotation.permission() );
-//            }
-//            if ( !commandAnnotation.permissionMessage().isEmpty() ) {
-//                command.put( "permission-message", commandAnnotation.permissionMessage() );
-//            }
-//            if ( !commandAnnotation.usage().isEmpty() ) {
-//                command.put( "usage", commandAnnotation.usage() );
-//            }
-//
-//            return command;
-//        }
-//
-//        /**
-//         * Processes a command.
-//         *
-//         * @param permissionAnnotation The annotation.
-//         *
-//         * @return The generated permission metadata.
-//         */
-//        protected Map<String, Object> processPermission(Permission permissionAnnotation) {
-//            Map<String, Object> permission = Maps.newLinkedHashMap();
-//
-//            if ( !"".equals( permissionAnnotation.desc() ) ) {
-//                permission.put( "description", permissionAnnotation.desc() );
-//            }
-//            if ( PermissionDefault.OP != permissionAnnotation.defaultValue() ) {
-//                permission.put( "default", permissionAnnotation.defaultValue().toString().toLowerCase() );
-//            }
-//
-//            if ( permissionAnnotation.children().length > 0 ) {
-//                Map<String, Boolean> childrenList = Maps.newLinkedHashMap(); // maintain order
-//                for ( ChildPermission childPermission : permissionAnnotation.children() ) {
-//                    childrenList.put( childPermission.name(), childPermission.inherit() );
-//                }
-//                permission.put( "children", childrenList );
-//            }
-//
-//            return permission;
-//        }
-//
-//        /**
-//         * Processes a set of permissions.
-//         *
-//         * @param permissions The annotation.
-//         *
-//         * @return The generated permission metadata.
-//         */
-//        protected Map<String, Map<String, Object>> processPermissions(Permissions permissions) {
-//            Map<String, Map<String, Object>> permissionList = Maps.newLinkedHashMap();
-//            for ( Permission permission : permissions.value() ) {
-//                permissionList.put( permission.name(), this.processPermission( permission ) );
-//            }
-//            return permissionList;
-//        }
-//    }
+    /**
+     * Generates a {@link CommandRegistry} for every {@link BaseCommandClass} at compile time so {@link #addClass(BaseCommandClass)}
+     * doesn't have to reflect over the annotations, and a commands.yml with the plugin.yml entries of every command.
+     * Add the compiled CommandManager to the processor path and enable it with
+     * {@code -processor me.machinemaker.commandmanager.CommandManager$CommandProcessor}
+     */
+    public static class CommandProcessor extends AbstractProcessor {
+
+        static final String REGISTRY_SUFFIX = "$$CommandRegistry";
+
+        private final Map<String, Map<String, String>> commandEntries = new LinkedHashMap<>(); // linked so we can maintain the same output into file for sanity
+        private final DateTimeFormatter dFormat = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss", Locale.ENGLISH);
+
+        @Override
+        public Set<String> getSupportedAnnotationTypes() {
+            return Collections.singleton(CommandSetup.class.getCanonicalName());
+        }
+
+        @Override
+        public SourceVersion getSupportedSourceVersion() {
+            return SourceVersion.latestSupported();
+        }
+
+        @Override
+        public boolean process(Set<? extends TypeElement> annots, RoundEnvironment rEnv) {
+            if (rEnv.processingOver()) {
+                if (!commandEntries.isEmpty()) writeCommandEntries();
+                return false;
+            }
+            Set<TypeElement> classes = new LinkedHashSet<>();
+            for (Element element : rEnv.getElementsAnnotatedWith(CommandSetup.class)) {
+                if (element instanceof TypeElement)
+                    classes.add((TypeElement) element);
+                else if (element.getEnclosingElement() instanceof TypeElement)
+                    classes.add((TypeElement) element.getEnclosingElement());
+            }
+            for (TypeElement type : classes)
+                processClass(type);
+            return false;
+        }
+
+        private void processClass(TypeElement type) {
+            TypeMirror base = fromClass(BaseCommandClass.class);
+            if (!processingEnv.getTypeUtils().isSubtype(processingEnv.getTypeUtils().erasure(type.asType()), base)) {
+                raiseError(type.getQualifiedName() + " has CommandManager annotations but doesn't extend BaseCommandClass", type);
+                return;
+            }
+            if (type.getModifiers().contains(javax.lang.model.element.Modifier.ABSTRACT)) return; // Can't be registered, its subclasses get their own registry
+            for (Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+                if (e.getModifiers().contains(javax.lang.model.element.Modifier.PRIVATE)) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, type.getQualifiedName() + " is private, its annotations will be read at runtime", type);
+                    return;
+                }
+            }
+
+            CommandSetup classSetup = type.getAnnotation(CommandSetup.class);
+            boolean isSuper = classSetup != null;
+            Permissions classPerms = type.getAnnotation(Permissions.class);
+            UserType classType = isSuper ? classSetup.type() : type.getAnnotation(User.class) != null ? type.getAnnotation(User.class).value() : UserType.ALL;
+
+            StringBuilder commands = new StringBuilder();
+            boolean found = false;
+            Set<String> seen = new HashSet<>();
+            String cm = CommandManager.class.getCanonicalName();
+            for (TypeElement t = type; t != null && !processingEnv.getTypeUtils().isSameType(t.asType(), base); t = superclass(t)) {
+                for (ExecutableElement m : ElementFilter.methodsIn(t.getEnclosedElements())) {
+                    CommandSetup setup = m.getAnnotation(CommandSetup.class);
+                    if (setup == null || !m.getModifiers().contains(javax.lang.model.element.Modifier.PUBLIC)) continue;
+                    StringBuilder signature = new StringBuilder(m.getSimpleName());
+                    for (VariableElement param : m.getParameters()) signature.append(';').append(processingEnv.getTypeUtils().erasure(param.asType()));
+                    if (!seen.add(signature.toString())) continue; // Overridden in a subclass
+                    found = true;
+                    String methodName = type.getQualifiedName() + "::" + m.getSimpleName();
+                    if (m.getParameters().size() != 2) {
+                        raiseError(methodName + " has more than 2 parameters! It must have exactly 2", m);
+                        continue;
+                    }
+                    else if (!processingEnv.getTypeUtils().isSameType(m.getParameters().get(1).asType(), fromClass(ArgsContainer.class))) {
+                        raiseError(methodName + " must have a Arguments type as its second parameter!", m);
+                        continue;
+                    }
+                    String senderType = processingEnv.getTypeUtils().erasure(m.getParameters().get(0).asType()).toString();
+                    if (!senderType.equals(setup.type().c.getCanonicalName()) && (setup.type() == UserType.ALL && !senderType.equals(classType.c.getCanonicalName()))) {
+                        raiseError(methodName + " has an incorrect first parameter! It does not match the UserType in the annotation!", m);
+                        continue;
+                    }
+
+                    Set<String> argNames = new HashSet<>();
+                    StringBuilder args = new StringBuilder();
+                    StringBuilder usage = new StringBuilder("/").append(isSuper ? classSetup.name() + " " : "").append(setup.name());
+                    Argument[] arguments = m.getAnnotationsByType(Argument.class);
+                    for (int i = 0; i < arguments.length; i++) {
+                        Argument a = arguments[i];
+                        if (!argNames.add(a.name())) raiseError("Cannot have two arguments with the same name!", m);
+                        if (i > 0 && arguments[i - 1].optional() && !a.optional()) raiseError("Argument " + a.name() + " must be optional, it comes after an optional argument", m);
+                        if (a.greedy() && (i != arguments.length - 1 || a.type() != ArgType.STRING)) raiseError("Only the last argument can be greedy and it must be a STRING", m);
+                        args.append("\n                        new ").append(cm).append(".ArgumentSpec(").append(literal(a.name())).append(", ")
+                                .append(cm).append(".ArgType.").append(a.type().name()).append(", ")
+                                .append(a.minInt()).append(", ").append(a.maxInt()).append(", ")
+                                .append(literal(a.minDouble())).append(", ").append(literal(a.maxDouble())).append(", ")
+                                .append(a.minStrLen()).append(", ").append(a.maxStrLen());
+                        TypeMirror valueType = valueType(a);
+                        if (!processingEnv.getTypeUtils().isSameType(valueType, fromClass(Object.class)))
+                            args.append(", ").append(processingEnv.getTypeUtils().erasure(valueType)).append(".class");
+                        args.append(")");
+                        if (a.optional()) args.append(".optional(").append(literal(a.def())).append(")");
+                        if (a.greedy()) args.append(".greedy()");
+                        args.append(",");
+                        usage.append(' ').append(argUsage(a.name(), a.optional(), a.greedy()));
+                    }
+                    Permissions perms = m.getAnnotation(Permissions.class);
+                    commands.append("\n                new ").append(cm).append(".CommandSpec(")
+                            .append(specValues(setup.name(), setup.type(), perms, m.getAnnotation(Description.class), m.getAnnotation(Aliases.class))).append(",\n                    ")
+                            .append(setup.ignoreCase()).append(", new ").append(cm).append(".ArgumentSpec[] {").append(args).append(" }, ")
+                            .append(literal(m.getSimpleName().toString())).append(",\n                    (")
+                            .append(cm).append(".Invoker<").append(type.getQualifiedName()).append(">) (instance, cs, args) -> instance.")
+                            .append(m.getSimpleName()).append("((").append(senderType).append(") cs, args))")
+                            .append(m.getAnnotation(Async.class) != null || type.getAnnotation(Async.class) != null ? ".async()" : "");
+                    Cooldown cooldown = m.getAnnotation(Cooldown.class) != null ? m.getAnnotation(Cooldown.class) : type.getAnnotation(Cooldown.class);
+                    if (cooldown != null)
+                        commands.append(".cooldown(").append(cooldown.value()).append("L, java.util.concurrent.TimeUnit.").append(cooldown.unit().name())
+                                .append(", ").append(literal(cooldown.bypassPermission())).append(")");
+                    Budget budget = m.getAnnotation(Budget.class) != null ? m.getAnnotation(Budget.class) : type.getAnnotation(Budget.class);
+                    if (budget != null)
+                        commands.append(".budget(").append(budget.value()).append("L, java.util.concurrent.TimeUnit.").append(budget.unit().name()).append(")");
+                    RateLimit rateLimit = m.getAnnotation(RateLimit.class) != null ? m.getAnnotation(RateLimit.class) : type.getAnnotation(RateLimit.class);
+                    if (rateLimit != null)
+                        commands.append(".rateLimit(").append(rateLimit.value()).append(", ").append(rateLimit.burst()).append(")");
+                    commands.append(",");
+                    if (!isSuper) addCommandEntry(setup.name(), m.getAnnotation(Description.class), m.getAnnotation(Aliases.class), usage.toString());
+                }
+            }
+            if (!isSuper && !found) {
+                raiseError("This class doesn't contain any methods that have CommandManager annotations!", type);
+                return;
+            }
+            if (isSuper) addCommandEntry(classSetup.name(), type.getAnnotation(Description.class), type.getAnnotation(Aliases.class), "/" + classSetup.name() + " <sub-command>");
+
+            SuperCmdOptions helpOptions = isSuper ? type.getAnnotation(SuperCmdOptions.class) : null;
+            String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+            String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+            String registryName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1)) + REGISTRY_SUFFIX;
+            try {
+                JavaFileObject file = processingEnv.getFiler().createSourceFile(packageName.isEmpty() ? registryName : packageName + "." + registryName, type);
+                try (Writer w = file.openWriter()) {
+                    if (!packageName.isEmpty()) w.append("package ").append(packageName).append(";\n\n");
+                    w.append("/** Generated by ").append(CommandProcessor.class.getCanonicalName()).append(" at ").append(LocalDateTime.now().format(dFormat)).append(" */\n")
+                            .append("public final class ").append(registryName).append(" implements ").append(cm).append(".CommandRegistry {\n\n")
+                            .append("    @Override\n")
+                            .append("    public ").append(cm).append(".CommandSpec info() {\n")
+                            .append("        return new ").append(cm).append(".CommandSpec(")
+                            .append(specValues(isSuper ? classSetup.name() : null, classType, classPerms, type.getAnnotation(Description.class), type.getAnnotation(Aliases.class))).append(")")
+                            .append(helpOptions == null ? "" : ".helpOptions(" + helpOptions.showHelp() + ", " + helpOptions.filterByPerms() + ")").append(";\n")
+                            .append("    }\n\n")
+                            .append("    @Override\n")
+                            .append("    public ").append(cm).append(".CommandSpec[] commands() {\n")
+                            .append("        return new ").append(cm).append(".CommandSpec[] {").append(commands).append("\n        };\n")
+                            .append("    }\n")
+                            .append("}\n");
+                }
+            } catch (IOException e) {
+                raiseError("Could not generate the command registry for " + type.getQualifiedName() + ": " + e.getMessage(), type);
+            }
+        }
+
+        private String specValues(String name, UserType type, Permissions perms, Description desc, Aliases aliases) {
+            String cm = CommandManager.class.getCanonicalName();
+            return (name == null ? "null" : literal(name)) + ", " + cm + ".UserType." + type.name() + ", "
+                    + literal(perms == null ? new String[0] : perms.value()) + ", " + cm + ".PermType." + (perms == null ? PermType.OR : perms.type()).name() + ", "
+                    + literal(desc == null ? loadDefault(Description.class) : desc.value()) + ", "
+                    + literal(aliases == null ? new String[0] : aliases.value());
+        }
+
+        private void addCommandEntry(String name, Description desc, Aliases aliases, String usage) {
+            Map<String, String> entry = new LinkedHashMap<>();
+            entry.put("description", yamlLiteral(desc == null ? loadDefault(Description.class) : desc.value()));
+            if (aliases != null && aliases.value().length > 0) {
+                StringJoiner list = new StringJoiner(", ", "[", "]");
+                for (String alias : aliases.value()) list.add(yamlLiteral(alias));
+                entry.put("aliases", list.toString());
+            }
+            entry.put("usage", yamlLiteral(usage));
+            if (commandEntries.put(name.toLowerCase(), entry) != null)
+                raiseError("Cannot have two commands with the same name (case-insensitive)! (" + name + ")");
+        }
+
+        private void writeCommandEntries() {
+            try {
+                FileObject file = this.processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", "commands.yml");
+                try (Writer w = file.openWriter()) {
+                    w.append("# Auto-generated plugin.yml command entries, generated at ")
+                            .append(LocalDateTime.now().format(dFormat))
+                            .append(" by ")
+                            .append(this.getClass().getName())
+                            .append("\n\ncommands:\n");
+                    for (Map.Entry<String, Map<String, String>> command : commandEntries.entrySet()) {
+                        w.append("  ").append(command.getKey()).append(":\n");
+                        for (Map.Entry<String, String> value : command.getValue().entrySet())
+                            w.append("    ").append(value.getKey()).append(": ").append(value.getValue()).append("\n");
+                    }
+                }
+                // try with resources will close the Writer since it implements Closeable
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private TypeElement superclass(TypeElement t) {
+            TypeMirror s = t.getSuperclass();
+            return s.getKind() == TypeKind.DECLARED ? (TypeElement) processingEnv.getTypeUtils().asElement(s) : null;
+        }
+
+        private TypeMirror valueType(Argument a) {
+            try {
+                return fromClass(a.valueType()); // Only if the class is already compiled
+            } catch (MirroredTypeException e) {
+                return e.getTypeMirror();
+            }
+        }
+
+        private TypeMirror fromClass(Class<?> clazz) {
+            return processingEnv.getTypeUtils().erasure(processingEnv.getElementUtils().getTypeElement(clazz.getCanonicalName()).asType());
+        }
+
+        private void raiseError(String message) {
+            this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message);
+        }
+
+        private void raiseError(String message, Element element) {
+            this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+        }
+
+        private static String loadDefault(Class<? extends Annotation> c) {
+            try {
+                return (String) c.getMethod("value").getDefaultValue();
+            } catch (NoSuchMethodException e) { throw new IllegalStateException(e); }
+        }
+
+        private static String literal(String s) {
+            StringBuilder sb = new StringBuilder("\"");
+            for (char c : s.toCharArray()) {
+                switch (c) {
+                    case '"': sb.append("\\\""); break;
+                    case '\\': sb.append("\\\\"); break;
+                    case '\n': sb.append("\\n"); break;
+                    case '\r': sb.append("\\r"); break;
+                    case '\t': sb.append("\\t"); break;
+                    default:
+                        if (c < ' ' || c > '~') sb.append(String.format("\\u%04x", (int) c));
+                        else sb.append(c);
+                }
+            }
+            return sb.append('"').toString();
+        }
+
+        private static String literal(String[] values) {
+            StringJoiner array = new StringJoiner(", ", "new String[] { ", " }");
+            array.setEmptyValue("new String[0]");
+            for (String value : values) array.add(literal(value));
+            return array.toString();
+        }
+
+        private static String literal(double d) {
+            if (Double.isNaN(d)) return "Double.NaN";
+            if (Double.isInfinite(d)) return d > 0 ? "Double.POSITIVE_INFINITY" : "Double.NEGATIVE_INFINITY";
+            return Double.toString(d);
+        }
+
+        private static String yamlLiteral(String s) {
+            return literal(s); // JSON-style double quoted strings are valid YAML
+        }
+    }
 }
@@ -0,0 +1,68 @@
+package me.machinemaker.commandmanager.benchmark;
+
+import me.machinemaker.commandmanager.CommandManager;
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading parsed arguments inside a handler
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ArgsContainerBenchmark {
+    private CommandManager.ArgsContainer args;
+    private int amountSlot;
+    private int timesSlot;
+
+    @Setup
+    public void setup() {
+        BenchServer server = BenchServer.install();
+        CommandManager manager = server.newManager();
+        manager.addClass(new BenchCommands.Single());
+        manager.onCommand(new BenchSender("Bench"), server.getCommand("pay"), "pay", new String[] { "Notch", "12.5", "3", "thanks" });
+        args = BenchCommands.lastArgs;
+        amountSlot = args.slot("amount");
+        timesSlot = args.slot("times");
+    }
+
+    @Benchmark
+    public Object firstByName() {
+        return args.get("player", Player.class);
+    }
+
+    @Benchmark
+    public Object lastByName() {
+        return args.get("reason", String.class);
+    }
+
+    @Benchmark
+    public Object firstByPosition() {
+        return args.get(0, Player.class);
+    }
+
+    @Benchmark
+    public Object lastByPosition() {
+        return args.get(3, String.class);
+    }
+
+    @Benchmark
+    public double numbersByName() {
+        return args.get("amount", Double.class) * args.get("times", Integer.class);
+    }
+
+    @Benchmark
+    public double primitivesByName() {
+        return args.getDouble("amount") * args.getInt("times");
+    }
+
+    @Benchmark
+    public double primitivesBySlot() {
+        return args.getDouble(amountSlot) * args.getInt(timesSlot);
+    }
+}
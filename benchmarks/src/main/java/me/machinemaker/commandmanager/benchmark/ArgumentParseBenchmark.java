@@ -0,0 +1,68 @@
+package me.machinemaker.commandmanager.benchmark;
+
+import me.machinemaker.commandmanager.CommandManager;
+import org.bukkit.command.Command;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatch of a single argument command for each {@link CommandManager.ArgType}, with valid and invalid input
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ArgumentParseBenchmark {
+    @Param({ "STRING", "INTEGER", "DOUBLE", "PLAYER" })
+    public CommandManager.ArgType type;
+
+    private CommandManager manager;
+    private BenchSender sender;
+    private Command command;
+    private String label;
+    private String[] valid;
+    private String[] invalid;
+
+    @Setup
+    public void setup() {
+        BenchServer server = BenchServer.install();
+        manager = server.newManager();
+        manager.addClass(new BenchCommands.Arguments());
+        sender = new BenchSender("Bench");
+        label = "arg" + type.name().toLowerCase();
+        command = server.getCommand(label);
+        switch (type) {
+            case STRING:
+                valid = new String[] { "diamond_sword" };
+                invalid = new String[] { "this_string_is_way_too_long" };
+                break;
+            case INTEGER:
+                valid = new String[] { "4096" };
+                invalid = new String[] { "4096x" };
+                break;
+            case DOUBLE:
+                valid = new String[] { "1234.5" };
+                invalid = new String[] { "-1" };
+                break;
+            case PLAYER:
+                valid = new String[] { "Dinnerbone" };
+                invalid = new String[] { "Herobrine" };
+                break;
+        }
+    }
+
+    @Benchmark
+    public Object valid() {
+        manager.onCommand(sender, command, label, valid);
+        return BenchCommands.sink;
+    }
+
+    @Benchmark
+    public Object invalid() {
+        manager.onCommand(sender, command, label, invalid);
+        return sender.lastMessage;
+    }
+}
@@ -0,0 +1,173 @@
+package me.machinemaker.commandmanager.benchmark;
+
+import me.machinemaker.commandmanager.CommandManager;
+import me.machinemaker.commandmanager.CommandManager.*;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Commands dispatched by the benchmarks, handlers write to {@link #sink} so the JIT can't drop them
+ */
+public final class BenchCommands {
+    public static Object sink;
+    public static ArgsContainer lastArgs;
+
+    private BenchCommands() { }
+
+    public static class Single extends BaseCommandClass {
+        @CommandSetup(name = "ping")
+        public void ping(CommandSender cs, ArgsContainer args) {
+            sink = cs;
+        }
+
+        @CommandSetup(name = "asyncping")
+        @Async
+        public void asyncPing(CommandSender cs, ArgsContainer args) {
+            sink = cs;
+        }
+
+        @CommandSetup(name = "pay")
+        @Argument(name = "player", type = ArgType.PLAYER)
+        @Argument(name = "amount", type = ArgType.DOUBLE, minDouble = 0)
+        @Argument(name = "times", type = ArgType.INTEGER, minInt = 1, maxInt = 64)
+        @Argument(name = "reason", maxStrLen = 32)
+        public void pay(CommandSender cs, ArgsContainer args) {
+            lastArgs = args;
+            sink = args;
+        }
+    }
+
+    public static class Arguments extends BaseCommandClass {
+        @CommandSetup(name = "argstring")
+        @Argument(name = "value", minStrLen = 1, maxStrLen = 16)
+        public void string(CommandSender cs, ArgsContainer args) {
+            sink = args.get("value", String.class);
+        }
+
+        @CommandSetup(name = "arginteger")
+        @Argument(name = "value", type = ArgType.INTEGER, minInt = 0, maxInt = 100000)
+        public void integer(CommandSender cs, ArgsContainer args) {
+            sink = args.get("value", Integer.class);
+        }
+
+        @CommandSetup(name = "argdouble")
+        @Argument(name = "value", type = ArgType.DOUBLE, minDouble = 0, maxDouble = 100000)
+        public void decimal(CommandSender cs, ArgsContainer args) {
+            sink = args.get("value", Double.class);
+        }
+
+        @CommandSetup(name = "argplayer")
+        @Argument(name = "value", type = ArgType.PLAYER)
+        public void player(CommandSender cs, ArgsContainer args) {
+            sink = args.get("value", Player.class);
+        }
+    }
+
+    public static class ParsedArguments extends BaseCommandClass {
+        @CommandSetup(name = "argmaterial")
+        @Argument(name = "value", valueType = Material.class)
+        public void material(CommandSender cs, ArgsContainer args) {
+            sink = args.get("value", Material.class);
+        }
+
+        @CommandSetup(name = "arguuid")
+        @Argument(name = "value", valueType = UUID.class)
+        public void uuid(CommandSender cs, ArgsContainer args) {
+            sink = args.get("value", UUID.class);
+        }
+
+        @CommandSetup(name = "argduration")
+        @Argument(name = "value", valueType = Duration.class)
+        public void duration(CommandSender cs, ArgsContainer args) {
+            sink = args.get("value", Duration.class);
+        }
+
+        @CommandSetup(name = "arglocation")
+        @Argument(name = "value", valueType = Location.class)
+        public void location(CommandSender cs, ArgsContainer args) {
+            sink = args.get("value", Location.class);
+        }
+    }
+
+    public static class Cooldowns extends BaseCommandClass {
+        @CommandSetup(name = "kit", type = UserType.PLAYER)
+        @Cooldown(value = 1, unit = TimeUnit.HOURS, bypassPermission = "bench.kit.bypass")
+        public void kit(Player p, ArgsContainer args) {
+            sink = p;
+        }
+    }
+
+    public static class Perms extends BaseCommandClass {
+        @CommandSetup(name = "permor")
+        @Permissions(value = { "bench.a", "bench.b", "bench.c" }, type = PermType.OR)
+        public void or(CommandSender cs, ArgsContainer args) {
+            sink = cs;
+        }
+
+        @CommandSetup(name = "permand")
+        @Permissions(value = { "bench.a", "bench.b", "bench.c" }, type = PermType.AND)
+        public void and(CommandSender cs, ArgsContainer args) {
+            sink = cs;
+        }
+    }
+
+    @CommandSetup(name = "eco")
+    @Aliases("economy")
+    @Permissions("bench.eco")
+    public static class Eco extends BaseCommandClass {
+        @CommandSetup(name = "balance", type = UserType.PLAYER)
+        @Aliases("bal")
+        public void balance(Player p, ArgsContainer args) {
+            sink = p;
+        }
+
+        @CommandSetup(name = "give")
+        @Argument(name = "player", type = ArgType.PLAYER)
+        @Argument(name = "amount", type = ArgType.DOUBLE, minDouble = 0)
+        @Permissions("bench.eco.give")
+        public void give(CommandSender cs, ArgsContainer args) {
+            sink = args;
+        }
+
+        @CommandSetup(name = "admin reset")
+        @Argument(name = "player", type = ArgType.PLAYER)
+        public void adminReset(CommandSender cs, ArgsContainer args) {
+            sink = args;
+        }
+    }
+
+    /**
+     * Same commands as {@link Eco}, but private so CommandProcessor skips it and its annotations are read at runtime
+     */
+    @CommandSetup(name = "reflecteco")
+    @Permissions("bench.eco")
+    private static class ReflectedEco extends BaseCommandClass {
+        @CommandSetup(name = "balance", type = UserType.PLAYER)
+        @Aliases("bal")
+        public void balance(Player p, ArgsContainer args) {
+            sink = p;
+        }
+
+        @CommandSetup(name = "give")
+        @Argument(name = "player", type = ArgType.PLAYER)
+        @Argument(name = "amount", type = ArgType.DOUBLE, minDouble = 0)
+        @Permissions("bench.eco.give")
+        public void give(CommandSender cs, ArgsContainer args) {
+            sink = args;
+        }
+    }
+
+    public static BaseCommandClass reflectedEco() {
+        return new ReflectedEco();
+    }
+
+    public static void addLazyReflectedEco(CommandManager manager) {
+        manager.addLazyClass(ReflectedEco.class, ReflectedEco::new);
+    }
+}
@@ -0,0 +1,102 @@
+package me.machinemaker.commandmanager.benchmark;
+
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scheduler whose ticks are driven by the benchmark through {@link #tick()}
+ */
+public class BenchScheduler implements BukkitScheduler {
+    private final AtomicInteger ids = new AtomicInteger();
+    private final ConcurrentLinkedQueue<Task> pending = new ConcurrentLinkedQueue<>();
+    private final List<Task> tasks = new ArrayList<>();
+    private long currentTick;
+
+    /**
+     * Runs every task that is due this tick
+     */
+    public void tick() {
+        currentTick++;
+        for (Task task; (task = pending.poll()) != null; )
+            tasks.add(task);
+        for (Iterator<Task> it = tasks.iterator(); it.hasNext(); ) {
+            Task task = it.next();
+            if (task.cancelled) {
+                it.remove();
+                continue;
+            }
+            if (task.nextRun > currentTick) continue;
+            task.runnable.run();
+            if (task.period <= 0) it.remove();
+            else task.nextRun = currentTick + task.period;
+        }
+    }
+
+    @Override
+    public BukkitTask runTask(Plugin plugin, Runnable task) {
+        return schedule(plugin, task, 0, 0);
+    }
+
+    @Override
+    public BukkitTask runTaskTimer(Plugin plugin, Runnable task, long delay, long period) {
+        return schedule(plugin, task, delay, Math.max(1, period));
+    }
+
+    @Override
+    public void cancelTask(int taskId) {
+        for (Task task : tasks)
+            if (task.id == taskId) task.cancel();
+        for (Task task : pending)
+            if (task.id == taskId) task.cancel();
+    }
+
+    private BukkitTask schedule(Plugin plugin, Runnable runnable, long delay, long period) {
+        Task task = new Task(ids.incrementAndGet(), plugin, runnable, currentTick + Math.max(1, delay), period);
+        pending.add(task);
+        return task;
+    }
+
+    private static class Task implements BukkitTask {
+        private final int id;
+        private final Plugin owner;
+        private final Runnable runnable;
+        private final long period;
+        private long nextRun;
+        private volatile boolean cancelled;
+
+        private Task(int id, Plugin owner, Runnable runnable, long nextRun, long period) {
+            this.id = id;
+            this.owner = owner;
+            this.runnable = runnable;
+            this.nextRun = nextRun;
+            this.period = period;
+        }
+
+        @Override
+        public int getTaskId() {
+            return id;
+        }
+
+        @Override
+        public Plugin getOwner() {
+            return owner;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package me.machinemaker.commandmanager.benchmark;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.command.ConsoleCommandSender;
+import org.bukkit.entity.Player;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Player that only keeps its last message so sending replies costs next to nothing
+ */
+public class BenchSender implements Player {
+    private final String name;
+    private final UUID uuid;
+    private final Map<String, Boolean> permissions = new HashMap<>();
+    private static final Map<String, Boolean> DEFAULTS = new HashMap<>(); // Registered permissions with their defaults
+    public String lastMessage;
+
+    public BenchSender(String name, String... permissions) {
+        this.name = name;
+        this.uuid = UUID.nameUUIDFromBytes(name.getBytes());
+        for (String permission : permissions)
+            this.permissions.put(permission, true);
+    }
+
+    @Override
+    public void sendMessage(String message) {
+        this.lastMessage = message;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Same lookups as Bukkit's PermissibleBase: the attachment values, then the default of the registered permission
+     */
+    @Override
+    public boolean hasPermission(String name) {
+        String key = name.toLowerCase(Locale.ENGLISH).trim();
+        Boolean value = permissions.get(key);
+        if (value != null) return value;
+        value = DEFAULTS.get(name.toLowerCase(Locale.ENGLISH));
+        return value != null && value;
+    }
+
+    @Override
+    public boolean isOp() {
+        return false;
+    }
+
+    @Override
+    public UUID getUniqueId() {
+        return uuid;
+    }
+
+    @Override
+    public boolean canSee(Player player) {
+        return true;
+    }
+
+    @Override
+    public Location getLocation() {
+        return new Location(Bukkit.getWorlds().get(0), 0, 64, 0);
+    }
+
+    /**
+     * Console stand-in, it passes every permission check
+     */
+    public static class Console implements ConsoleCommandSender {
+        public String lastMessage;
+
+        @Override
+        public void sendMessage(String message) {
+            this.lastMessage = message;
+        }
+
+        @Override
+        public String getName() {
+            return "CONSOLE";
+        }
+
+        @Override
+        public boolean hasPermission(String name) {
+            return true;
+        }
+
+        @Override
+        public boolean isOp() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package me.machinemaker.commandmanager.benchmark;
+
+import me.machinemaker.commandmanager.CommandManager;
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandMap;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.plugin.SimplePluginManager;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Headless server with a plain {@link CommandMap} and a fixed set of online players
+ */
+public class BenchServer implements Server {
+    public static final String[] PLAYER_NAMES = { "Notch", "jeb_", "Dinnerbone", "Grumm", "MachineMaker" };
+    public static final int EXTRA_PLAYERS = 500;
+
+    private final BenchCommandMap commandMap = new BenchCommandMap();
+    private final PluginManager pluginManager = new SimplePluginManager(commandMap);
+    private final Map<String, Player> players = new HashMap<>();
+    private final List<World> worlds = Arrays.asList(() -> "world", () -> "world_nether", () -> "world_the_end");
+    private final BenchScheduler scheduler = new BenchScheduler();
+    private final Thread mainThread = Thread.currentThread();
+
+    private BenchServer() {
+        for (String name : PLAYER_NAMES)
+            players.put(name.toLowerCase(Locale.ENGLISH), new BenchSender(name));
+        for (int i = 0; i < EXTRA_PLAYERS; i++)
+            players.put("player" + i, new BenchSender("Player" + i));
+    }
+
+    /**
+     * Installs a fresh server as {@link Bukkit#getServer()}
+     * @return the installed server
+     */
+    public static BenchServer install() {
+        BenchServer server = new BenchServer();
+        Bukkit.setServer(server);
+        return server;
+    }
+
+    /**
+     * @return a manager bound to a new plugin on this server
+     */
+    public CommandManager newManager() {
+        return new CommandManager(new BenchPlugin());
+    }
+
+    /**
+     * Puts a player online, managers created afterwards see them as joined
+     * @param player player to add
+     */
+    public void addPlayer(Player player) {
+        players.put(player.getName().toLowerCase(Locale.ENGLISH), player);
+    }
+
+    public Command getCommand(String name) {
+        return commandMap.getCommand(name);
+    }
+
+    @Override
+    public PluginManager getPluginManager() {
+        return pluginManager;
+    }
+
+    @Override
+    public Player getPlayer(String name) {
+        // Bukkit does an exact lookup first and then a prefix scan over every online player
+        Player exact = players.get(name.toLowerCase(Locale.ENGLISH));
+        if (exact != null) return exact;
+        String lower = name.toLowerCase(Locale.ENGLISH);
+        for (Player p : players.values())
+            if (p.getName().toLowerCase(Locale.ENGLISH).startsWith(lower))
+                return p;
+        return null;
+    }
+
+    @Override
+    public Collection<? extends Player> getOnlinePlayers() {
+        return players.values();
+    }
+
+    @Override
+    public List<World> getWorlds() {
+        return worlds;
+    }
+
+    @Override
+    public BenchScheduler getScheduler() {
+        return scheduler;
+    }
+
+    @Override
+    public boolean isPrimaryThread() {
+        return Thread.currentThread() == mainThread;
+    }
+
+    /**
+     * Same steps as Bukkit's SimpleCommandMap#dispatch: split on spaces, look up the label, copy the arguments
+     */
+    @Override
+    public boolean dispatchCommand(CommandSender sender, String commandLine) {
+        String[] words = commandLine.split(" ");
+        if (words.length == 0) return false;
+        Command command = commandMap.getCommand(words[0]);
+        if (command == null) return false;
+        command.execute(sender, words[0], Arrays.copyOfRange(words, 1, words.length));
+        return true;
+    }
+
+    public static class BenchPlugin extends JavaPlugin { }
+
+    private static class BenchCommandMap implements CommandMap {
+        private final Map<String, Command> knownCommands = new HashMap<>();
+
+        @Override
+        public boolean register(String fallbackPrefix, Command command) {
+            knownCommands.put(command.getName().toLowerCase(Locale.ENGLISH), command);
+            knownCommands.put(fallbackPrefix.toLowerCase(Locale.ENGLISH) + ":" + command.getName().toLowerCase(Locale.ENGLISH), command);
+            for (String alias : command.getAliases())
+                knownCommands.putIfAbsent(alias.toLowerCase(Locale.ENGLISH), command);
+            return true;
+        }
+
+        @Override
+        public void registerAll(String fallbackPrefix, List<Command> commands) {
+            for (Command command : commands)
+                register(fallbackPrefix, command);
+        }
+
+        @Override
+        public Command getCommand(String name) {
+            return knownCommands.get(name.toLowerCase(Locale.ENGLISH));
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package me.machinemaker.commandmanager.benchmark;
+
+import me.machinemaker.commandmanager.CommandManager;
+import org.bukkit.command.Command;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tab completion of sub-commands, online players and bounded numbers with {@link BenchServer#EXTRA_PLAYERS} players online
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompletionBenchmark {
+    private CommandManager manager;
+    private BenchSender sender;
+    private Command eco;
+    private Command pay;
+    private final String[] subCommandPrefix = { "ba" };
+    private final String[] playerPrefix = { "give", "Din" };
+    private final String[] numberPrefix = { "Notch", "1", "1" };
+
+    @Setup
+    public void setup() {
+        BenchServer server = BenchServer.install();
+        manager = server.newManager();
+        manager.addClass(new BenchCommands.Single());
+        manager.addClass(new BenchCommands.Eco());
+        sender = new BenchSender("Bench", "bench.eco", "bench.eco.give");
+        eco = server.getCommand("eco");
+        pay = server.getCommand("pay");
+    }
+
+    @Benchmark
+    public List<String> subCommand() {
+        return manager.onTabComplete(sender, eco, "eco", subCommandPrefix);
+    }
+
+    @Benchmark
+    public List<String> player() {
+        return manager.onTabComplete(sender, eco, "eco", playerPrefix);
+    }
+
+    @Benchmark
+    public List<String> boundedInteger() {
+        return manager.onTabComplete(sender, pay, "pay", numberPrefix);
+    }
+}
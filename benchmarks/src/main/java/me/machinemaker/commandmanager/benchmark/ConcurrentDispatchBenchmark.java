@@ -0,0 +1,66 @@
+package me.machinemaker.commandmanager.benchmark;
+
+import me.machinemaker.commandmanager.CommandManager;
+import org.bukkit.command.Command;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CommandManager#onCommand} from several threads at once, alone and while another thread keeps reloading the
+ * command class that is dispatched
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConcurrentDispatchBenchmark {
+    private CommandManager manager;
+    private Command eco;
+    private CommandManager.BaseCommandClass current; // Only changed by the reloading thread
+    private final String[] balanceArgs = { "balance" };
+
+    @State(Scope.Thread)
+    public static class Sender {
+        final BenchSender sender = new BenchSender("Bench", "bench.eco");
+    }
+
+    @Setup
+    public void setup() {
+        BenchServer server = BenchServer.install();
+        manager = server.newManager();
+        current = new BenchCommands.Eco();
+        manager.addClass(current);
+        eco = server.getCommand("eco");
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Benchmark
+    @Group("dispatch")
+    @GroupThreads(4)
+    public boolean dispatch(Sender s) {
+        return manager.onCommand(s.sender, eco, "eco", balanceArgs);
+    }
+
+    @Benchmark
+    @Group("dispatchWhileReloading")
+    @GroupThreads(3)
+    public boolean dispatchReader(Sender s) {
+        return manager.onCommand(s.sender, eco, "eco", balanceArgs);
+    }
+
+    @Benchmark
+    @Group("dispatchWhileReloading")
+    @GroupThreads(1)
+    public Object reloader() {
+        CommandManager.BaseCommandClass next = new BenchCommands.Eco();
+        manager.reloadClass(current, next);
+        return current = next;
+    }
+}
@@ -0,0 +1,55 @@
+package me.machinemaker.commandmanager.benchmark;
+
+import me.machinemaker.commandmanager.CommandManager;
+import org.bukkit.command.Command;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatch of a command with a {@link CommandManager.Cooldown} while thousands of players are on cooldown
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CooldownBenchmark {
+    @Param({ "5000" })
+    public int players;
+
+    private CommandManager manager;
+    private Command kit;
+    private BenchSender[] senders;
+    private BenchSender bypass;
+    private final String[] noArgs = new String[0];
+    private int next;
+
+    @Setup
+    public void setup() {
+        BenchServer server = BenchServer.install();
+        manager = server.newManager();
+        manager.addClass(new BenchCommands.Cooldowns());
+        kit = server.getCommand("kit");
+        senders = new BenchSender[players];
+        for (int i = 0; i < players; i++) {
+            senders[i] = new BenchSender("Cooling" + i);
+            manager.onCommand(senders[i], kit, "kit", noArgs);
+        }
+        bypass = new BenchSender("Bypass", "bench.kit.bypass");
+    }
+
+    @Benchmark
+    public Object onCooldown() {
+        BenchSender sender = senders[next++ % players];
+        manager.onCommand(sender, kit, "kit", noArgs);
+        return sender.lastMessage;
+    }
+
+    @Benchmark
+    public Object bypassed() {
+        manager.onCommand(bypass, kit, "kit", noArgs);
+        return BenchCommands.sink;
+    }
+}
@@ -0,0 +1,102 @@
+package me.machinemaker.commandmanager.benchmark;
+
+import me.machinemaker.commandmanager.CommandManager;
+import org.bukkit.command.Command;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full {@link CommandManager#onCommand} dispatch of single and super/sub commands
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DispatchBenchmark {
+    private CommandManager manager;
+    private BenchSender sender;
+    private Command ping;
+    private Command asyncPing;
+    private Command pay;
+    private Command eco;
+    private final String[] noArgs = new String[0];
+    private final String[] payArgs = { "Notch", "12.5", "3", "thanks" };
+    private final String[] balanceArgs = { "balance" };
+    private final String[] balanceAliasArgs = { "BAL" };
+    private final String[] giveArgs = { "give", "jeb_", "100" };
+    private final String[] adminResetArgs = { "Admin", "RESET", "Grumm" };
+
+    @Setup
+    public void setup() {
+        BenchServer server = BenchServer.install();
+        manager = server.newManager();
+        manager.addClass(new BenchCommands.Single());
+        manager.addClass(new BenchCommands.Eco());
+        sender = new BenchSender("Bench", "bench.eco", "bench.eco.give");
+        ping = server.getCommand("ping");
+        asyncPing = server.getCommand("asyncping");
+        pay = server.getCommand("pay");
+        eco = server.getCommand("eco");
+    }
+
+    @Benchmark
+    public Object singleNoArgs() {
+        manager.onCommand(sender, ping, "ping", noArgs);
+        return BenchCommands.sink;
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    /**
+     * Only measures handing the command off to the async executor
+     */
+    @Benchmark
+    public boolean asyncHandoff() {
+        return manager.onCommand(sender, asyncPing, "asyncping", noArgs);
+    }
+
+    @Benchmark
+    public Object singleWithArgs() {
+        manager.onCommand(sender, pay, "pay", payArgs);
+        return BenchCommands.sink;
+    }
+
+    @Benchmark
+    public Object subCommand() {
+        manager.onCommand(sender, eco, "eco", balanceArgs);
+        return BenchCommands.sink;
+    }
+
+    @Benchmark
+    public Object subCommandAlias() {
+        manager.onCommand(sender, eco, "economy", balanceAliasArgs);
+        return BenchCommands.sink;
+    }
+
+    @Benchmark
+    public Object subCommandWithArgs() {
+        manager.onCommand(sender, eco, "eco", giveArgs);
+        return BenchCommands.sink;
+    }
+
+    @Benchmark
+    public Object nestedSubCommand() {
+        manager.onCommand(sender, eco, "eco", adminResetArgs);
+        return BenchCommands.sink;
+    }
+
+    /**
+     * Help of the super command, its pages are cached for the permissions of the sender after the first time
+     */
+    @Benchmark
+    public Object superHelp() {
+        manager.onCommand(sender, eco, "eco", noArgs);
+        return sender.lastMessage;
+    }
+}
@@ -0,0 +1,68 @@
+package me.machinemaker.commandmanager.benchmark;
+
+import me.machinemaker.commandmanager.CommandManager;
+import org.bukkit.command.Command;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatch of a single argument command for some of the built-in {@link CommandManager.ArgumentParser}s, with valid and invalid input
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParsedArgumentBenchmark {
+    @Param({ "material", "uuid", "duration", "location" })
+    public String type;
+
+    private CommandManager manager;
+    private BenchSender sender;
+    private Command command;
+    private String label;
+    private String[] valid;
+    private String[] invalid;
+
+    @Setup
+    public void setup() {
+        BenchServer server = BenchServer.install();
+        manager = server.newManager();
+        manager.addClass(new BenchCommands.ParsedArguments());
+        sender = new BenchSender("Bench");
+        label = "arg" + type;
+        command = server.getCommand(label);
+        switch (type) {
+            case "material":
+                valid = new String[] { "minecraft:diamond_sword" };
+                invalid = new String[] { "diamond_shovel" };
+                break;
+            case "uuid":
+                valid = new String[] { "123e4567-e89b-12d3-a456-426614174000" };
+                invalid = new String[] { "123e4567-e89b-12d3-a456-42661417400z" };
+                break;
+            case "duration":
+                valid = new String[] { "1h30m" };
+                invalid = new String[] { "1h30y" };
+                break;
+            case "location":
+                valid = new String[] { "~10", "64", "-20.5" };
+                invalid = new String[] { "~10", "64", "south" };
+                break;
+        }
+    }
+
+    @Benchmark
+    public Object valid() {
+        manager.onCommand(sender, command, label, valid);
+        return BenchCommands.sink;
+    }
+
+    @Benchmark
+    public Object invalid() {
+        manager.onCommand(sender, command, label, invalid);
+        return sender.lastMessage;
+    }
+}
@@ -0,0 +1,65 @@
+package me.machinemaker.commandmanager.benchmark;
+
+import me.machinemaker.commandmanager.CommandManager;
+import org.bukkit.command.Command;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The same lines dispatched with each {@link CommandManager.ParserBackend}: pay has four arguments of every kind, argduration a
+ * registered parser, and quoted falls back to the interpreted loop because of its quotes
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParserBackendBenchmark {
+    private CommandManager manager;
+    private BenchSender sender;
+    private Command pay;
+    private Command duration;
+    private final String[] payArgs = { "Notch", "12.5", "3", "thanks" };
+    private final String[] quotedArgs = { "Notch", "12.5", "3", "\"thanks", "a", "lot\"" };
+    private final String[] durationArgs = { "1h30m" };
+
+    @Param({ "INTERPRETED", "COMPILED" })
+    public CommandManager.ParserBackend backend;
+
+    @Setup
+    public void setup() {
+        BenchServer server = BenchServer.install();
+        manager = server.newManager();
+        manager.addClass(new BenchCommands.Single());
+        manager.addClass(new BenchCommands.ParsedArguments());
+        manager.setParserBackend(backend);
+        sender = new BenchSender("Bench");
+        pay = server.getCommand("pay");
+        duration = server.getCommand("argduration");
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Benchmark
+    public Object pay() {
+        manager.onCommand(sender, pay, "pay", payArgs);
+        return BenchCommands.sink;
+    }
+
+    @Benchmark
+    public Object parsed() {
+        manager.onCommand(sender, duration, "argduration", durationArgs);
+        return BenchCommands.sink;
+    }
+
+    @Benchmark
+    public Object quoted() {
+        manager.onCommand(sender, pay, "pay", quotedArgs);
+        return BenchCommands.sink;
+    }
+}
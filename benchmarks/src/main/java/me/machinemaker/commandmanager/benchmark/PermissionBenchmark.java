@@ -0,0 +1,58 @@
+package me.machinemaker.commandmanager.benchmark;
+
+import me.machinemaker.commandmanager.CommandManager;
+import org.bukkit.command.Command;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Permission checks ({@code canExecute}) of commands with OR and AND permission sets, for senders that pass or fail them,
+ * with and without the per-player decision cache
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PermissionBenchmark {
+    @Param({ "OR", "AND" })
+    public CommandManager.PermType permType;
+
+    @Param({ "true", "false" })
+    public boolean cached;
+
+    private CommandManager manager;
+    private BenchSender allowed;
+    private BenchSender denied;
+    private Command command;
+    private String label;
+    private final String[] noArgs = new String[0];
+
+    @Setup
+    public void setup() {
+        BenchServer server = BenchServer.install();
+        allowed = new BenchSender("Allowed", "bench.a", "bench.b", "bench.c");
+        denied = new BenchSender("Denied", "bench.b");
+        server.addPlayer(allowed); // Decisions are only cached for online players
+        server.addPlayer(denied);
+        manager = server.newManager();
+        manager.addClass(new BenchCommands.Perms());
+        if (cached) manager.setPermissionCacheTtl(5, TimeUnit.SECONDS);
+        label = "perm" + permType.name().toLowerCase();
+        command = server.getCommand(label);
+    }
+
+    @Benchmark
+    public Object allowed() {
+        manager.onCommand(allowed, command, label, noArgs);
+        return BenchCommands.sink;
+    }
+
+    @Benchmark
+    public Object denied() {
+        manager.onCommand(denied, command, label, noArgs);
+        return denied.lastMessage;
+    }
+}
@@ -0,0 +1,64 @@
+package me.machinemaker.commandmanager.benchmark;
+
+import me.machinemaker.commandmanager.CommandManager;
+import org.bukkit.command.Command;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The same line run over and over like a command block does, parsed every time and with {@link CommandManager#enablePlanCache(int)}.
+ * miss runs a line with a PLAYER argument, which is never cached, to show that such lines don't pay for a lookup
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PlanCacheBenchmark {
+    private CommandManager manager;
+    private BenchSender sender;
+    private Command command;
+    private String[] args;
+    private Command pay;
+    private final String[] payArgs = { "Notch", "12.5", "3", "thanks" };
+
+    @Param({ "argdouble 12.5", "argduration 1h30m", "argmaterial minecraft:diamond_sword" })
+    public String line;
+
+    @Param({ "false", "true" })
+    public boolean cached;
+
+    @Setup
+    public void setup() {
+        BenchServer server = BenchServer.install();
+        manager = server.newManager();
+        manager.addClass(new BenchCommands.Single());
+        manager.addClass(new BenchCommands.Arguments());
+        manager.addClass(new BenchCommands.ParsedArguments());
+        sender = new BenchSender("Bench");
+        String[] words = line.split(" ");
+        command = server.getCommand(words[0]);
+        args = new String[] { words[1] };
+        pay = server.getCommand("pay");
+        if (cached) manager.enablePlanCache(1024);
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Benchmark
+    public Object repeated() {
+        manager.onCommand(sender, command, command.getName(), args);
+        return BenchCommands.sink;
+    }
+
+    @Benchmark
+    public Object miss() {
+        manager.onCommand(sender, pay, "pay", payArgs);
+        return BenchCommands.sink;
+    }
+}
@@ -0,0 +1,85 @@
+package me.machinemaker.commandmanager.benchmark;
+
+import me.machinemaker.commandmanager.CommandManager;
+import org.bukkit.command.Command;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the token buckets on a command that is let through, and of turning away a player who is over their limit
+ * (rejected ignores the param)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RateLimitBenchmark {
+    private CommandManager manager;
+    private BenchSender sender;
+    private Command pay;
+    private final String[] payArgs = { "Notch", "12.5", "3", "thanks" };
+
+    @Param({ "false", "true" })
+    public boolean limited;
+
+    @Setup
+    public void setup() {
+        BenchServer server = BenchServer.install();
+        manager = server.newManager();
+        manager.addClass(new BenchCommands.Single());
+        sender = new BenchSender("Bench");
+        pay = server.getCommand("pay");
+        if (limited) { // High enough that the benchmark sender never hits them
+            manager.setGlobalRateLimit(1e9, 1000);
+            manager.setSenderRateLimit(1e9, 1000);
+            manager.setCommandRateLimit(1e9, 1000);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Benchmark
+    public Object allowed() {
+        manager.onCommand(sender, pay, "pay", payArgs);
+        return BenchCommands.sink;
+    }
+
+    /**
+     * Player who used the one command they get every 30 years
+     */
+    @State(Scope.Benchmark)
+    public static class Spam {
+        CommandManager manager;
+        BenchSender spammer = new BenchSender("Spammer");
+        Command pay;
+
+        @Setup
+        public void setup() {
+            BenchServer server = BenchServer.install();
+            manager = server.newManager();
+            manager.addClass(new BenchCommands.Single());
+            manager.setSenderRateLimit(1e-9, 1);
+            pay = server.getCommand("pay");
+            manager.onCommand(spammer, pay, "pay", new String[] { "Notch", "12.5", "3", "thanks" });
+        }
+
+        @TearDown
+        public void tearDown() {
+            manager.shutdown();
+        }
+    }
+
+    /**
+     * Only the limit check and the message run
+     */
+    @Benchmark
+    public boolean rejected(Spam spam) {
+        return spam.manager.onCommand(spam.spammer, spam.pay, "pay", payArgs);
+    }
+}
@@ -0,0 +1,90 @@
+package me.machinemaker.commandmanager.benchmark;
+
+import me.machinemaker.commandmanager.CommandManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CommandManager#addClass} cost for a class with a generated registry and for one that is read reflectively.
+ * Each invocation registers into a new manager, {@link #newManager()} is the baseline to subtract.
+ * {@link #bulk()} adds the same classes as {@link #oneByOne()} with {@link CommandManager#addClasses}, and {@link #lazy()}
+ * with {@link CommandManager#addLazyClass}, which only reads their names until they are used.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RegistrationBenchmark {
+    private BenchServer server;
+
+    @Setup
+    public void setup() {
+        server = BenchServer.install();
+    }
+
+    @Benchmark
+    public Object newManager() {
+        return server.newManager();
+    }
+
+    @Benchmark
+    public Object generatedRegistry() {
+        CommandManager manager = server.newManager();
+        manager.addClass(new BenchCommands.Eco());
+        return manager;
+    }
+
+    @Benchmark
+    public Object reflection() {
+        CommandManager manager = server.newManager();
+        manager.addClass(BenchCommands.reflectedEco());
+        return manager;
+    }
+
+    @Benchmark
+    public Object singleCommands() {
+        CommandManager manager = server.newManager();
+        manager.addClass(new BenchCommands.Single());
+        manager.addClass(new BenchCommands.Arguments());
+        manager.addClass(new BenchCommands.Perms());
+        return manager;
+    }
+
+    @Benchmark
+    public Object oneByOne() {
+        CommandManager manager = server.newManager();
+        manager.addClass(new BenchCommands.Single());
+        manager.addClass(new BenchCommands.Arguments());
+        manager.addClass(new BenchCommands.ParsedArguments());
+        manager.addClass(new BenchCommands.Cooldowns());
+        manager.addClass(new BenchCommands.Perms());
+        manager.addClass(new BenchCommands.Eco());
+        manager.addClass(BenchCommands.reflectedEco());
+        return manager;
+    }
+
+    @Benchmark
+    public Object bulk() {
+        CommandManager manager = server.newManager();
+        manager.addClasses(Arrays.asList(new BenchCommands.Single(), new BenchCommands.Arguments(), new BenchCommands.ParsedArguments(),
+                new BenchCommands.Cooldowns(), new BenchCommands.Perms(), new BenchCommands.Eco(), BenchCommands.reflectedEco()));
+        return manager;
+    }
+
+    @Benchmark
+    public Object lazy() {
+        CommandManager manager = server.newManager();
+        manager.addLazyClass(BenchCommands.Single.class, BenchCommands.Single::new);
+        manager.addLazyClass(BenchCommands.Arguments.class, BenchCommands.Arguments::new);
+        manager.addLazyClass(BenchCommands.ParsedArguments.class, BenchCommands.ParsedArguments::new);
+        manager.addLazyClass(BenchCommands.Cooldowns.class, BenchCommands.Cooldowns::new);
+        manager.addLazyClass(BenchCommands.Perms.class, BenchCommands.Perms::new);
+        manager.addLazyClass(BenchCommands.Eco.class, BenchCommands.Eco::new);
+        BenchCommands.addLazyReflectedEco(manager);
+        return manager;
+    }
+}
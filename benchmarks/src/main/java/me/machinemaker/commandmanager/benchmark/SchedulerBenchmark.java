@@ -0,0 +1,72 @@
+package me.machinemaker.commandmanager.benchmark;
+
+import me.machinemaker.commandmanager.CommandManager;
+import org.bukkit.command.Command;
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link CommandManager#enableScheduling} on the dispatch path while the tick has budget left, and a burst of
+ * {@link #BURST} commands from {@link #SENDERS} players queued and drained over ticks
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SchedulerBenchmark {
+    public static final int BURST = 1000;
+    public static final int SENDERS = 10;
+
+    private BenchServer server;
+    private CommandManager manager;
+    private Command pay;
+    private final Player[] senders = new Player[SENDERS];
+    private final String[] payArgs = { "Notch", "12.5", "3", "thanks" };
+
+    @Param({ "false", "true" })
+    public boolean scheduling;
+
+    @Setup
+    public void setup() {
+        server = BenchServer.install();
+        manager = server.newManager();
+        manager.addClass(new BenchCommands.Single());
+        pay = server.getCommand("pay");
+        for (int i = 0; i < SENDERS; i++)
+            senders[i] = server.getPlayer("Player" + i);
+        if (scheduling) manager.enableScheduling(100, TimeUnit.MICROSECONDS, BURST, BURST);
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Benchmark
+    public Object single() {
+        server.getScheduler().tick(); // New budget, so the command runs right away
+        manager.onCommand(senders[0], pay, "pay", payArgs);
+        return BenchCommands.sink;
+    }
+
+    /**
+     * @return ticks it took to run the burst
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int burst() {
+        server.getScheduler().tick();
+        for (int i = 0; i < BURST; i++)
+            manager.onCommand(senders[i % SENDERS], pay, "pay", payArgs);
+        int ticks = 0;
+        while (manager.getQueueStats() != null && manager.getQueueStats().getQueued() > 0) {
+            server.getScheduler().tick();
+            ticks++;
+        }
+        return ticks;
+    }
+}
@@ -0,0 +1,65 @@
+package me.machinemaker.commandmanager.benchmark;
+
+import me.machinemaker.commandmanager.CommandManager;
+import org.bukkit.Bukkit;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A script of {@link #LINES} eco give lines run with {@link CommandManager#runScript}, and the same file read and passed to
+ * {@link Bukkit#dispatchCommand} line by line
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScriptBenchmark {
+    public static final int LINES = 1000;
+
+    private CommandManager manager;
+    private BenchSender sender;
+    private Path script;
+
+    @Setup
+    public void setup() throws IOException {
+        BenchServer server = BenchServer.install();
+        manager = server.newManager();
+        manager.addClass(new BenchCommands.Eco());
+        sender = new BenchSender("Bench", "bench.eco", "bench.eco.give");
+        StringBuilder sb = new StringBuilder("# Bench script\n");
+        for (int i = 0; i < LINES; i++)
+            sb.append("eco give ").append(BenchServer.PLAYER_NAMES[i % BenchServer.PLAYER_NAMES.length]).append(' ').append(i).append('\n');
+        script = Files.createTempFile("bench", ".script");
+        Files.write(script, sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        manager.shutdown();
+        Files.delete(script);
+    }
+
+    @Benchmark
+    public CommandManager.ScriptReport runScript() throws IOException {
+        return manager.runScript(sender, script, null);
+    }
+
+    @Benchmark
+    public int dispatchEachLine() throws IOException {
+        int ran = 0;
+        try (BufferedReader reader = Files.newBufferedReader(script, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null)
+                if (!line.startsWith("#") && Bukkit.dispatchCommand(sender, line)) ran++;
+        }
+        return ran;
+    }
+}
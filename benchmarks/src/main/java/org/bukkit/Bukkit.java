@@ -0,0 +1,54 @@
+package org.bukkit;
+
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.scheduler.BukkitScheduler;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Stand-in for the Bukkit API so the benchmarks run without a server
+ */
+public final class Bukkit {
+    private static Server server;
+
+    private Bukkit() { }
+
+    public static Server getServer() {
+        return server;
+    }
+
+    public static void setServer(Server server) {
+        Bukkit.server = server;
+    }
+
+    public static PluginManager getPluginManager() {
+        return server.getPluginManager();
+    }
+
+    public static Player getPlayer(String name) {
+        return server.getPlayer(name);
+    }
+
+    public static Collection<? extends Player> getOnlinePlayers() {
+        return server.getOnlinePlayers();
+    }
+
+    public static List<World> getWorlds() {
+        return server.getWorlds();
+    }
+
+    public static BukkitScheduler getScheduler() {
+        return server.getScheduler();
+    }
+
+    public static boolean isPrimaryThread() {
+        return server.isPrimaryThread();
+    }
+
+    public static boolean dispatchCommand(CommandSender sender, String commandLine) {
+        return server.dispatchCommand(sender, commandLine);
+    }
+}
@@ -0,0 +1,39 @@
+package org.bukkit;
+
+/**
+ * Stand-in for the Bukkit API so the benchmarks run without a server
+ */
+public enum ChatColor {
+    GREEN('a'),
+    AQUA('b'),
+    RED('c'),
+    YELLOW('e'),
+    GOLD('6'),
+    GRAY('7'),
+    UNDERLINE('n'),
+    RESET('r');
+
+    public static final char COLOR_CHAR = '\u00a7';
+
+    private final String toString;
+
+    ChatColor(char code) {
+        this.toString = new String(new char[] { '§', code });
+    }
+
+    public static String translateAlternateColorCodes(char altColorChar, String textToTranslate) {
+        char[] b = textToTranslate.toCharArray();
+        for (int i = 0; i < b.length - 1; i++) {
+            if (b[i] == altColorChar && "0123456789AaBbCcDdEeFfKkLlMmNnOoRrXx".indexOf(b[i + 1]) > -1) {
+                b[i] = COLOR_CHAR;
+                b[i + 1] = Character.toLowerCase(b[i + 1]);
+            }
+        }
+        return new String(b);
+    }
+
+    @Override
+    public String toString() {
+        return toString;
+    }
+}
@@ -0,0 +1,21 @@
+package org.bukkit;
+
+/**
+ * Stand-in for the Bukkit API so the benchmarks run without a server
+ */
+public enum Material {
+    AIR,
+    STONE,
+    GRASS_BLOCK,
+    DIRT,
+    COBBLESTONE,
+    OAK_LOG,
+    OAK_PLANKS,
+    DIAMOND,
+    DIAMOND_PICKAXE,
+    DIAMOND_SWORD,
+    IRON_INGOT,
+    GOLD_INGOT,
+    @Deprecated
+    LEGACY_STONE
+}
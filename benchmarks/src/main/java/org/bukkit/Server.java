@@ -0,0 +1,28 @@
+package org.bukkit;
+
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.scheduler.BukkitScheduler;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Stand-in for the Bukkit API so the benchmarks run without a server
+ */
+public interface Server {
+    PluginManager getPluginManager();
+
+    Player getPlayer(String name);
+
+    Collection<? extends Player> getOnlinePlayers();
+
+    List<World> getWorlds();
+
+    BukkitScheduler getScheduler();
+
+    boolean isPrimaryThread();
+
+    boolean dispatchCommand(CommandSender sender, String commandLine);
+}
@@ -0,0 +1,8 @@
+package org.bukkit;
+
+/**
+ * Stand-in for the Bukkit API so the benchmarks run without a server
+ */
+public interface World {
+    String getName();
+}
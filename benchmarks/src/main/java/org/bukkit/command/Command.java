@@ -0,0 +1,45 @@
+package org.bukkit.command;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stand-in for the Bukkit API so the benchmarks run without a server
+ */
+public abstract class Command {
+    private final String name;
+    private String description = "";
+    private List<String> aliases = new ArrayList<>();
+
+    protected Command(String name) {
+        this.name = name;
+    }
+
+    public abstract boolean execute(CommandSender sender, String commandLabel, String[] args);
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public Command setDescription(String description) {
+        this.description = description;
+        return this;
+    }
+
+    public List<String> getAliases() {
+        return aliases;
+    }
+
+    public Command setAliases(List<String> aliases) {
+        this.aliases = aliases;
+        return this;
+    }
+
+    public boolean unregister(CommandMap commandMap) {
+        return true;
+    }
+}
@@ -0,0 +1,8 @@
+package org.bukkit.command;
+
+/**
+ * Stand-in for the Bukkit API so the benchmarks run without a server
+ */
+public interface CommandExecutor {
+    boolean onCommand(CommandSender sender, Command command, String label, String[] args);
+}
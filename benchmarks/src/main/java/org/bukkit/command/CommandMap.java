@@ -0,0 +1,14 @@
+package org.bukkit.command;
+
+import java.util.List;
+
+/**
+ * Stand-in for the Bukkit API so the benchmarks run without a server
+ */
+public interface CommandMap {
+    boolean register(String fallbackPrefix, Command command);
+
+    void registerAll(String fallbackPrefix, List<Command> commands);
+
+    Command getCommand(String name);
+}
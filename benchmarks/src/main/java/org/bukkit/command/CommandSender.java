@@ -0,0 +1,14 @@
+package org.bukkit.command;
+
+/**
+ * Stand-in for the Bukkit API so the benchmarks run without a server
+ */
+public interface CommandSender {
+    void sendMessage(String message);
+
+    String getName();
+
+    boolean hasPermission(String name);
+
+    boolean isOp();
+}
@@ -0,0 +1,6 @@
+package org.bukkit.command;
+
+/**
+ * Stand-in for the Bukkit API so the benchmarks run without a server
+ */
+public interface ConsoleCommandSender extends CommandSender { }
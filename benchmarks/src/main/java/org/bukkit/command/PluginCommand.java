@@ -0,0 +1,42 @@
+package org.bukkit.command;
+
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Stand-in for the Bukkit API so the benchmarks run without a server
+ */
+public final class PluginCommand extends Command {
+    private final Plugin owningPlugin;
+    private CommandExecutor executor;
+    private TabCompleter completer;
+
+    protected PluginCommand(String name, Plugin owner) {
+        super(name);
+        this.owningPlugin = owner;
+    }
+
+    @Override
+    public boolean execute(CommandSender sender, String commandLabel, String[] args) {
+        return executor.onCommand(sender, this, commandLabel, args);
+    }
+
+    public void setExecutor(CommandExecutor executor) {
+        this.executor = executor;
+    }
+
+    public CommandExecutor getExecutor() {
+        return executor;
+    }
+
+    public void setTabCompleter(TabCompleter completer) {
+        this.completer = completer;
+    }
+
+    public TabCompleter getTabCompleter() {
+        return completer;
+    }
+
+    public Plugin getPlugin() {
+        return owningPlugin;
+    }
+}
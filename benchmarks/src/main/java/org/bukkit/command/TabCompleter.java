@@ -0,0 +1,10 @@
+package org.bukkit.command;
+
+import java.util.List;
+
+/**
+ * Stand-in for the Bukkit API so the benchmarks run without a server
+ */
+public interface TabCompleter {
+    List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args);
+}
@@ -0,0 +1,8 @@
+package org.bukkit.configuration;
+
+/**
+ * Stand-in for the Bukkit API so the benchmarks run without a server
+ */
+public interface ConfigurationSection {
+    String getString(String path, String def);
+}
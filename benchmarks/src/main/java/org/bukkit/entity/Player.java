@@ -0,0 +1,17 @@
+package org.bukkit.entity;
+
+import org.bukkit.Location;
+import org.bukkit.command.CommandSender;
+
+import java.util.UUID;
+
+/**
+ * Stand-in for the Bukkit API so the benchmarks run without a server
+ */
+public interface Player extends CommandSender {
+    UUID getUniqueId();
+
+    boolean canSee(Player player);
+
+    Location getLocation();
+}
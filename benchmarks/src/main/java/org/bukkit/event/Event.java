@@ -0,0 +1,10 @@
+package org.bukkit.event;
+
+/**
+ * Stand-in for the Bukkit API so the benchmarks run without a server
+ */
+public abstract class Event {
+    public String getEventName() {
+        return getClass().getSimpleName();
+    }
+}
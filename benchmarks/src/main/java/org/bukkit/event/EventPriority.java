@@ -0,0 +1,13 @@
+package org.bukkit.event;
+
+/**
+ * Stand-in for the Bukkit API so the benchmarks run without a server
+ */
+public enum EventPriority {
+    LOWEST,
+    LOW,
+    NORMAL,
+    HIGH,
+    HIGHEST,
+    MONITOR
+}
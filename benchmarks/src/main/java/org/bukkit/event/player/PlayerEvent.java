@@ -0,0 +1,19 @@
+package org.bukkit.event.player;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+
+/**
+ * Stand-in for the Bukkit API so the benchmarks run without a server
+ */
+public abstract class PlayerEvent extends Event {
+    protected Player player;
+
+    public PlayerEvent(Player who) {
+        this.player = who;
+    }
+
+    public final Player getPlayer() {
+        return player;
+    }
+}
@@ -0,0 +1,12 @@
+package org.bukkit.event.player;
+
+import org.bukkit.entity.Player;
+
+/**
+ * Stand-in for the Bukkit API so the benchmarks run without a server
+ */
+public class PlayerJoinEvent extends PlayerEvent {
+    public PlayerJoinEvent(Player playerJoined) {
+        super(playerJoined);
+    }
+}
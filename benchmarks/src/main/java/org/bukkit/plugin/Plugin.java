@@ -0,0 +1,15 @@
+package org.bukkit.plugin;
+
+import java.io.File;
+import java.util.logging.Logger;
+
+/**
+ * Stand-in for the Bukkit API so the benchmarks run without a server
+ */
+public interface Plugin {
+    String getName();
+
+    File getDataFolder();
+
+    Logger getLogger();
+}
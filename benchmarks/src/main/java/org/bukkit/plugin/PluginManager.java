@@ -0,0 +1,10 @@
+package org.bukkit.plugin;
+
+import org.bukkit.event.Listener;
+
+/**
+ * Stand-in for the Bukkit API so the benchmarks run without a server
+ */
+public interface PluginManager {
+    void registerEvents(Listener listener, Plugin plugin);
+}
@@ -0,0 +1,28 @@
+package org.bukkit.plugin;
+
+import org.bukkit.command.CommandMap;
+import org.bukkit.event.Listener;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stand-in for the Bukkit API so the benchmarks run without a server
+ */
+public class SimplePluginManager implements PluginManager {
+    private final CommandMap commandMap; // Read reflectively by CommandManager, just like on a real server
+    private final List<Listener> listeners = new ArrayList<>();
+
+    public SimplePluginManager(CommandMap commandMap) {
+        this.commandMap = commandMap;
+    }
+
+    @Override
+    public void registerEvents(Listener listener, Plugin plugin) {
+        listeners.add(listener);
+    }
+
+    public List<Listener> getListeners() {
+        return listeners;
+    }
+}
@@ -0,0 +1,28 @@
+package org.bukkit.plugin.java;
+
+import org.bukkit.plugin.Plugin;
+
+import java.io.File;
+import java.util.logging.Logger;
+
+/**
+ * Stand-in for the Bukkit API so the benchmarks run without a server
+ */
+public abstract class JavaPlugin implements Plugin {
+    private final Logger logger = Logger.getLogger(getClass().getSimpleName());
+
+    @Override
+    public String getName() {
+        return getClass().getSimpleName();
+    }
+
+    @Override
+    public File getDataFolder() {
+        return new File("plugins", getName());
+    }
+
+    @Override
+    public Logger getLogger() {
+        return logger;
+    }
+}
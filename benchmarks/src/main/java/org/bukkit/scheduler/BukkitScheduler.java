@@ -0,0 +1,14 @@
+package org.bukkit.scheduler;
+
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Stand-in for the Bukkit API so the benchmarks run without a server
+ */
+public interface BukkitScheduler {
+    BukkitTask runTask(Plugin plugin, Runnable task);
+
+    BukkitTask runTaskTimer(Plugin plugin, Runnable task, long delay, long period);
+
+    void cancelTask(int taskId);
+}
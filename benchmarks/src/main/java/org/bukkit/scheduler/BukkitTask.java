@@ -0,0 +1,16 @@
+package org.bukkit.scheduler;
+
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Stand-in for the Bukkit API so the benchmarks run without a server
+ */
+public interface BukkitTask {
+    int getTaskId();
+
+    Plugin getOwner();
+
+    boolean isCancelled();
+
+    void cancel();
+}
@@ -0,0 +1,213 @@
+package me.machinemaker.commandmanager;
+
+import me.machinemaker.commandmanager.CommandManager.*;
+import me.machinemaker.commandmanager.benchmark.BenchSender;
+import me.machinemaker.commandmanager.benchmark.BenchServer;
+import org.bukkit.Location;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Lines dispatched through {@link CommandManager#onCommand} against the stand-in server, checking what the handler got
+ * or which message the sender got instead. Every test runs with both parser backends
+ */
+@RunWith(Parameterized.class)
+public class ArgumentParsingTest {
+    private static ArgsContainer last;
+
+    @Parameterized.Parameter
+    public ParserBackend backend;
+
+    private BenchServer server;
+    private CommandManager manager;
+    private BenchSender sender;
+
+    public static class Commands extends BaseCommandClass {
+        @CommandSetup(name = "give")
+        @Argument(name = "player", type = ArgType.PLAYER)
+        @Argument(name = "amount", type = ArgType.INTEGER, minInt = 1, maxInt = 64, optional = true, def = "1")
+        @Argument(name = "note", maxStrLen = 8, optional = true)
+        public void give(CommandSender cs, ArgsContainer args) {
+            last = args;
+        }
+
+        @CommandSetup(name = "pair")
+        @Argument(name = "first")
+        @Argument(name = "second", minStrLen = 2)
+        public void pair(CommandSender cs, ArgsContainer args) {
+            last = args;
+        }
+
+        @CommandSetup(name = "price")
+        @Argument(name = "value", type = ArgType.DOUBLE, minDouble = 0, maxDouble = 100)
+        @Argument(name = "wait", valueType = Duration.class, optional = true, def = "5m")
+        public void price(CommandSender cs, ArgsContainer args) {
+            last = args;
+        }
+
+        @CommandSetup(name = "spot")
+        @Argument(name = "where", valueType = Location.class)
+        public void spot(CommandSender cs, ArgsContainer args) {
+            last = args;
+        }
+
+        @CommandSetup(name = "shout")
+        @Argument(name = "message", greedy = true)
+        public void shout(CommandSender cs, ArgsContainer args) {
+            last = args;
+        }
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static ParserBackend[] backends() {
+        return ParserBackend.values();
+    }
+
+    @Before
+    public void setup() {
+        server = BenchServer.install();
+        manager = server.newManager();
+        manager.setParserBackend(backend);
+        manager.addClass(new Commands());
+        sender = new BenchSender("Tester");
+        last = null;
+    }
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    private ArgsContainer run(String line) {
+        String[] words = line.split(" ", -1);
+        last = null;
+        sender.lastMessage = null;
+        manager.onCommand(sender, server.getCommand(words[0]), words[0], Arrays.copyOfRange(words, 1, words.length));
+        return last;
+    }
+
+    private String error(String line) {
+        assertNull(line + " should not run", run(line));
+        assertNotNull(line + " should send a message", sender.lastMessage);
+        return sender.lastMessage;
+    }
+
+    @Test
+    public void optionalArgumentsUseTheirDefaults() {
+        ArgsContainer args = run("give Notch");
+        assertEquals("Notch", args.get("player", Player.class).getName());
+        assertEquals(1, args.getInt("amount"));
+        assertFalse(args.has("amount"));
+        assertFalse(args.has("note"));
+        assertNull(args.get("note", String.class));
+
+        args = run("give notch 5 gift");
+        assertEquals(5, args.getInt("amount"));
+        assertTrue(args.has("amount"));
+        assertEquals("gift", args.get("note", String.class));
+
+        args = run("price 2.5");
+        assertEquals(2.5, args.getDouble("value"), 0);
+        assertEquals(Duration.ofMinutes(5), args.get("wait", Duration.class));
+        assertEquals(Duration.ofMinutes(90), run("price 2.5 1h30m").get("wait", Duration.class));
+    }
+
+    @Test
+    public void quotesJoinWords() {
+        ArgsContainer args = run("pair \"a b\" \"c  d\"");
+        assertEquals("a b", args.get("first", String.class));
+        assertEquals("c  d", args.get("second", String.class)); // Spaces inside quotes are kept as typed
+        args = run("pair \"\" yy");
+        assertEquals("", args.get("first", String.class));
+        assertEquals("gift box", run("give Notch 2 \"gift box\"").get("note", String.class));
+    }
+
+    @Test
+    public void greedyArgumentsTakeTheRestOfTheLine() {
+        assertEquals("hello  there you", run("shout hello  there you").get("message", String.class));
+    }
+
+    @Test
+    public void wrongWordCountsAreUsageErrors() {
+        assertTrue(error("pair a").startsWith("Use format: "));
+        assertTrue(error("give Notch 5 gift extra").startsWith("Use format: "));
+        assertTrue(error("pair \"a b").startsWith("Use format: ")); // Unclosed quote
+        assertTrue(error("give").startsWith("Use format: "));
+    }
+
+    @Test
+    public void boundsAreChecked() {
+        assertNotNull(run("give Notch 64"));
+        assertEquals("The 2nd (amount) argument requires a whole number between 1 and 64.", error("give Notch 65"));
+        assertEquals("The 2nd (amount) argument requires a whole number between 1 and 64.", error("give Notch 0"));
+        assertNotNull(run("price 100"));
+        assertTrue(error("price 100.5").startsWith("The 1st (value) argument requires a "));
+        assertTrue(error("price -1").startsWith("The 1st (value) argument requires a "));
+        assertTrue(error("give Notch 1 ninechars").startsWith("The 3rd (note) argument requires a "));
+        assertTrue(error("pair a b").startsWith("The 2nd (second) argument requires a "));
+    }
+
+    @Test
+    public void invalidValuesAreRejected() {
+        assertEquals("The 2nd (amount) argument requires a whole number.", error("give Notch x"));
+        assertEquals("The 2nd (amount) argument requires a whole number.", error("give Notch 99999999999999999999"));
+        assertEquals("The 2nd (amount) argument requires a whole number.", error("give Notch 1.5"));
+        assertTrue(error("price abc").startsWith("The 1st (value) argument requires a "));
+        assertTrue(error("price NaN").startsWith("The 1st (value) argument requires a "));
+        assertTrue(error("give Nobody").startsWith("The 1st (player) argument requires a "));
+    }
+
+    @Test
+    public void parserFailuresAreReported() {
+        assertEquals("The 2nd (wait) argument requires a duration (e.g. 1h30m).", error("price 1 soon"));
+        assertEquals("The 2nd (wait) argument requires a duration (e.g. 1h30m).", error("price 1 5parsecs"));
+    }
+
+    @Test
+    public void locationsParseLikeDoubleParseDouble() {
+        String[] coordinates = { "0.3", "-0.1", "+0.7", "1.", ".5", "-0", "12345.678901234", "0.1234567890123456789",
+                "9007199254740993", "123456789012345678901234567890", "0.00000000000000000000000123", "30000000.000000001" };
+        for (String x : coordinates) {
+            Location where = run("spot " + x + " 64 " + x).get("where", Location.class);
+            assertEquals(x, Double.doubleToLongBits(Double.parseDouble(x)), Double.doubleToLongBits(where.getX()));
+            assertEquals(x, Double.doubleToLongBits(Double.parseDouble(x)), Double.doubleToLongBits(where.getZ()));
+        }
+        assertEquals(64.3, run("spot 0 ~0.3 0").get("where", Location.class).getY(), 0); // Relative to the player at y 64
+        assertTrue(error("spot 1 2").startsWith("Use format: "));
+        assertTrue(error("spot 1 2 3e5").startsWith("The 1st (where) argument requires a "));
+        assertTrue(error("spot 1 . 3").startsWith("The 1st (where) argument requires a "));
+    }
+
+    @Test
+    public void cachedLinesGiveTheParsedArguments() {
+        manager.enablePlanCache(16);
+        ArgsContainer parsed = run("price 2.5 1h30m");
+        ArgsContainer cached = run("price 2.5 1h30m");
+        assertEquals(1, manager.getPlanCacheStats().getHits());
+        assertEquals(parsed.getDouble("value"), cached.getDouble("value"), 0);
+        assertEquals(parsed.get("wait", Duration.class), cached.get("wait", Duration.class));
+        assertEquals("The 1st (value) argument requires a decimal between 0.0 and 100.0.", error("price 101 1h30m"));
+        assertNotNull(run("give Notch 3")); // PLAYER arguments skip the cache
+        assertNotNull(run("give Notch 3"));
+        assertEquals(1, manager.getPlanCacheStats().getHits());
+        assertEquals(2, manager.getPlanCacheStats().getMisses());
+    }
+
+    @Test
+    public void parsedArgumentsAreKeptPerRun() {
+        ArgsContainer first = run("pair a bb");
+        ArgsContainer second = run("pair c dd");
+        assertEquals("a", first.get("first", String.class));
+        assertEquals("c", second.get("first", String.class));
+    }
+}
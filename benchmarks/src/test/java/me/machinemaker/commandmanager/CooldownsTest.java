@@ -0,0 +1,200 @@
+package me.machinemaker.commandmanager;
+
+import me.machinemaker.commandmanager.CommandManager.CooldownWheel;
+import me.machinemaker.commandmanager.CommandManager.Cooldowns;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class CooldownsTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long START = 1_000 * SECOND; // Away from 0 so slots before the start exist
+
+    /**
+     * UUIDs with the same msb ^ lsb hash to the same home slot, so they share a probe chain
+     */
+    private static UUID colliding(int i) {
+        return new UUID(0x1234_5678L ^ i, 0x9abc_def0L ^ i);
+    }
+
+    @Test
+    public void remainingCountsDownFromTheDuration() {
+        Cooldowns cooldowns = new Cooldowns(new CooldownWheel(START), 5 * SECOND, null);
+        UUID player = UUID.randomUUID();
+        assertEquals(0, cooldowns.remaining(player, START));
+        cooldowns.tryStart(player, START);
+        assertEquals(5 * SECOND, cooldowns.remaining(player, START));
+        assertEquals(2 * SECOND, cooldowns.remaining(player, START + 3 * SECOND));
+        assertTrue(cooldowns.remaining(player, START + 5 * SECOND) <= 0);
+    }
+
+    @Test
+    public void runningCooldownIsNotRestarted() {
+        Cooldowns cooldowns = new Cooldowns(new CooldownWheel(START), 5 * SECOND, null);
+        UUID player = UUID.randomUUID();
+        assertEquals(0, cooldowns.tryStart(player, START));
+        assertEquals(3 * SECOND, cooldowns.tryStart(player, START + 2 * SECOND));
+        assertEquals(3 * SECOND, cooldowns.remaining(player, START + 2 * SECOND)); // Still the first expiry
+        assertEquals(0, cooldowns.tryStart(player, START + 5 * SECOND));
+    }
+
+    @Test
+    public void growingKeepsEveryEntry() {
+        Cooldowns cooldowns = new Cooldowns(new CooldownWheel(START), 5 * SECOND, null);
+        List<UUID> players = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            UUID player = UUID.randomUUID();
+            players.add(player);
+            cooldowns.tryStart(player, START + i);
+        }
+        assertEquals(1000, cooldowns.size());
+        for (int i = 0; i < players.size(); i++)
+            assertEquals(5 * SECOND - i, cooldowns.remaining(players.get(i), START + 2 * i));
+    }
+
+    @Test
+    public void removingFromTheMiddleOfAProbeChainKeepsTheRestReachable() {
+        Cooldowns cooldowns = new Cooldowns(new CooldownWheel(START), 5 * SECOND, null);
+        for (int i = 0; i < 6; i++) // Even ones expire a second earlier than the odd ones
+            cooldowns.tryStart(colliding(i), i % 2 == 0 ? START : START + SECOND);
+        long now = START + 5 * SECOND;
+        for (int i = 0; i < 6; i += 2)
+            assertEquals(Long.MIN_VALUE, cooldowns.evict(colliding(i).getMostSignificantBits(), colliding(i).getLeastSignificantBits(), now));
+        assertEquals(3, cooldowns.size());
+        for (int i = 0; i < 6; i++)
+            assertEquals(i % 2 == 0 ? 0 : SECOND, cooldowns.remaining(colliding(i), now));
+        cooldowns.tryStart(colliding(0), now); // Lands in one of the freed slots without duplicating the others
+        assertEquals(4, cooldowns.size());
+        assertEquals(5 * SECOND, cooldowns.remaining(colliding(0), now));
+    }
+
+    @Test
+    public void evictKeepsActiveEntries() {
+        Cooldowns cooldowns = new Cooldowns(new CooldownWheel(START), 5 * SECOND, null);
+        UUID player = UUID.randomUUID();
+        cooldowns.tryStart(player, START);
+        assertEquals(START + 5 * SECOND, cooldowns.evict(player.getMostSignificantBits(), player.getLeastSignificantBits(), START + SECOND));
+        assertEquals(1, cooldowns.size());
+        assertEquals(Long.MIN_VALUE, cooldowns.evict(1, 2, START)); // Never started
+    }
+
+    @Test
+    public void wheelEvictsOnlyWhatExpired() {
+        CooldownWheel wheel = new CooldownWheel(START);
+        Cooldowns shorter = new Cooldowns(wheel, 2 * SECOND, null);
+        Cooldowns longer = new Cooldowns(wheel, 10 * SECOND, null);
+        UUID player = UUID.randomUUID();
+        shorter.tryStart(player, START);
+        longer.tryStart(player, START);
+        wheel.advance(START + SECOND);
+        assertEquals(1, shorter.size());
+        wheel.advance(START + 3 * SECOND);
+        assertEquals(0, shorter.size());
+        assertEquals(1, longer.size());
+        wheel.advance(START + 11 * SECOND);
+        assertEquals(0, longer.size());
+    }
+
+    @Test
+    public void restartedCooldownSurvivesItsOldExpiry() {
+        CooldownWheel wheel = new CooldownWheel(START);
+        Cooldowns cooldowns = new Cooldowns(wheel, 2 * SECOND, null);
+        UUID player = UUID.randomUUID();
+        cooldowns.tryStart(player, START);
+        assertEquals(0, cooldowns.tryStart(player, START + 2 * SECOND)); // Expired, not evicted yet
+        wheel.advance(START + 3 * SECOND);
+        assertEquals(1, cooldowns.size());
+        assertEquals(SECOND, cooldowns.remaining(player, START + 3 * SECOND));
+        wheel.advance(START + 5 * SECOND);
+        assertEquals(0, cooldowns.size());
+    }
+
+    @Test
+    public void entriesLongerThanARotationWaitForTheirRound() {
+        long rotation = CooldownWheel.SLOTS * CooldownWheel.SLOT_NANOS;
+        CooldownWheel wheel = new CooldownWheel(START);
+        Cooldowns cooldowns = new Cooldowns(wheel, 3 * rotation + SECOND, null);
+        UUID player = UUID.randomUUID();
+        cooldowns.tryStart(player, START);
+        for (long now = START; now < START + 3 * rotation; now += 10 * SECOND) {
+            wheel.advance(now);
+            assertEquals(1, cooldowns.size());
+        }
+        wheel.advance(START + 3 * rotation + 2 * SECOND);
+        assertEquals(0, cooldowns.size());
+    }
+
+    @Test
+    public void wheelCatchesUpAfterALongPause() {
+        CooldownWheel wheel = new CooldownWheel(START);
+        Cooldowns cooldowns = new Cooldowns(wheel, SECOND, null);
+        for (int i = 0; i < 100; i++)
+            cooldowns.tryStart(UUID.randomUUID(), START + i * SECOND);
+        wheel.advance(START + 1000 * CooldownWheel.SLOTS * CooldownWheel.SLOT_NANOS); // Several rotations skipped at once
+        assertEquals(0, cooldowns.size());
+    }
+
+    @Test
+    public void startingFromSeveralThreadsWhileTheWheelAdvances() throws InterruptedException {
+        CooldownWheel wheel = new CooldownWheel(START);
+        Cooldowns cooldowns = new Cooldowns(wheel, SECOND, null);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 20_000; i++) {
+                        UUID player = UUID.randomUUID();
+                        long now = START + ThreadLocalRandom.current().nextLong(SECOND);
+                        cooldowns.tryStart(player, now);
+                        assertTrue(cooldowns.remaining(player, now) > 0);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            threads[t].start();
+        }
+        for (long now = START; threads[0].isAlive() || threads[threads.length - 1].isAlive(); now += CooldownWheel.SLOT_NANOS / 4)
+            wheel.advance(Math.min(now, START + SECOND / 2)); // Nothing expires before everything was started
+        for (Thread thread : threads) thread.join();
+        assertNull(failure.get());
+        assertEquals(4 * 20_000, cooldowns.size());
+        wheel.advance(START + 3 * SECOND);
+        assertEquals(0, cooldowns.size());
+    }
+
+    @Test
+    public void onlyOneOfSeveralThreadsStartsTheSameCooldown() throws InterruptedException {
+        Cooldowns cooldowns = new Cooldowns(new CooldownWheel(START), 5 * SECOND, null);
+        for (int round = 0; round < 200; round++) {
+            UUID player = UUID.randomUUID();
+            AtomicInteger started = new AtomicInteger();
+            CountDownLatch go = new CountDownLatch(1);
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                threads[t] = new Thread(() -> {
+                    try {
+                        go.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (cooldowns.tryStart(player, START) == 0) started.incrementAndGet();
+                });
+                threads[t].start();
+            }
+            go.countDown();
+            for (Thread thread : threads) thread.join();
+            assertEquals(1, started.get());
+        }
+    }
+}
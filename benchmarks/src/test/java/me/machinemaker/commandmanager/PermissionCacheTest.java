@@ -0,0 +1,80 @@
+package me.machinemaker.commandmanager;
+
+import me.machinemaker.commandmanager.benchmark.BenchCommands;
+import me.machinemaker.commandmanager.benchmark.BenchSender;
+import me.machinemaker.commandmanager.benchmark.BenchServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PermissionCacheTest {
+    private BenchServer server;
+    private CommandManager manager;
+    private Revocable online;
+
+    /**
+     * Sender whose permissions can be taken away, like removing a permission attachment
+     */
+    private static class Revocable extends BenchSender {
+        boolean revoked;
+
+        Revocable(String name) {
+            super(name, "bench.a");
+        }
+
+        @Override
+        public boolean hasPermission(String name) {
+            return !revoked && super.hasPermission(name);
+        }
+    }
+
+    @Before
+    public void setup() {
+        server = BenchServer.install();
+        online = new Revocable("Joined");
+        server.addPlayer(online);
+        manager = server.newManager();
+        manager.addClass(new BenchCommands.Perms());
+    }
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    private boolean runs(BenchSender sender) {
+        BenchCommands.sink = null;
+        manager.onCommand(sender, server.getCommand("permor"), "permor", new String[0]);
+        return BenchCommands.sink == sender;
+    }
+
+    @Test
+    public void changesShowUpRightAwayWithoutTheCache() {
+        assertTrue(runs(online));
+        online.revoked = true;
+        assertFalse(runs(online));
+    }
+
+    @Test
+    public void cachedDecisionsLastUntilInvalidated() {
+        manager.setPermissionCacheTtl(1, TimeUnit.HOURS);
+        assertTrue(runs(online));
+        online.revoked = true;
+        assertTrue(runs(online));
+        manager.invalidatePermissions(online);
+        assertFalse(runs(online));
+    }
+
+    @Test
+    public void playersThatArentOnlineAreNotCached() {
+        manager.setPermissionCacheTtl(1, TimeUnit.HOURS);
+        Revocable gone = new Revocable("Gone"); // E.g. an async dispatch that ran after the player quit
+        assertTrue(runs(gone));
+        gone.revoked = true;
+        assertFalse(runs(gone));
+    }
+}
@@ -0,0 +1,121 @@
+package me.machinemaker.commandmanager;
+
+import me.machinemaker.commandmanager.CommandManager.PlanCache;
+import org.junit.Test;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class PlanCacheTest {
+    private static PlanCache.Key key(String line) {
+        return new PlanCache.Key(null, line.split(" "));
+    }
+
+    private static void put(PlanCache cache, String... lines) {
+        for (String line : lines) cache.put(key(line), null);
+    }
+
+    private static boolean cached(PlanCache cache, String line) {
+        return cache.get(key(line)) != null;
+    }
+
+    @Test
+    public void linesAreFoundByTheirWords() {
+        PlanCache cache = new PlanCache(4);
+        put(cache, "pay Notch 5");
+        assertTrue(cached(cache, "pay Notch 5"));
+        assertFalse(cached(cache, "pay Notch 6"));
+        assertFalse(cached(cache, "pay notch 5")); // Arguments can be case-sensitive
+        assertEquals(1, cache.hits.sum());
+        assertEquals(2, cache.misses.sum());
+    }
+
+    @Test
+    public void fillsUpToMaxLines() {
+        PlanCache cache = new PlanCache(100);
+        for (int i = 0; i < 100; i++) put(cache, "line " + i);
+        assertEquals(100, cache.size());
+        for (int i = 0; i < 100; i++) assertTrue(cached(cache, "line " + i));
+        put(cache, "line 100");
+        assertEquals(100, cache.size());
+    }
+
+    @Test
+    public void evictsLinesThatWerentRunSinceTheHandPassed() {
+        PlanCache cache = new PlanCache(4);
+        put(cache, "a", "b", "c", "d");
+        assertTrue(cached(cache, "a"));
+        assertTrue(cached(cache, "b"));
+        put(cache, "e"); // The hand clears a and b, then takes the place of c
+        assertFalse(cached(cache, "c"));
+        assertTrue(cached(cache, "d"));
+        put(cache, "f"); // d was just run, so the hand clears it and takes the place of a
+        assertFalse(cached(cache, "a"));
+        assertTrue(cached(cache, "e"));
+        put(cache, "g"); // b wasn't run since its flag was cleared
+        assertFalse(cached(cache, "b"));
+        assertTrue(cached(cache, "d"));
+        assertTrue(cached(cache, "e"));
+        assertTrue(cached(cache, "f"));
+        assertTrue(cached(cache, "g"));
+        assertEquals(4, cache.size());
+    }
+
+    @Test
+    public void aLineRunOverAndOverIsNeverEvicted() {
+        PlanCache cache = new PlanCache(8);
+        put(cache, "hot");
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(cached(cache, "hot"));
+            put(cache, "cold " + i);
+        }
+        assertEquals(8, cache.size());
+    }
+
+    @Test
+    public void puttingALineTwiceKeepsOne() {
+        PlanCache cache = new PlanCache(2);
+        put(cache, "a", "a", "b");
+        assertEquals(2, cache.size());
+        assertTrue(cached(cache, "a"));
+        assertTrue(cached(cache, "b"));
+    }
+
+    @Test
+    public void clearDropsEverything() {
+        PlanCache cache = new PlanCache(3);
+        put(cache, "a", "b", "c", "d");
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertFalse(cached(cache, "b"));
+        put(cache, "a", "b", "c");
+        assertEquals(3, cache.size());
+        assertTrue(cached(cache, "a"));
+    }
+
+    @Test
+    public void sizeStaysBoundedUnderConcurrentUse() throws InterruptedException {
+        PlanCache cache = new PlanCache(64);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 20_000; i++) {
+                        PlanCache.Key key = key("line " + ThreadLocalRandom.current().nextInt(256));
+                        if (cache.get(key) == null) cache.put(key, null);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+        assertNull(failure.get());
+        assertEquals(64, cache.size());
+        assertEquals(4 * 20_000, cache.hits.sum() + cache.misses.sum());
+    }
+}
@@ -0,0 +1,149 @@
+package me.machinemaker.commandmanager;
+
+import me.machinemaker.commandmanager.CommandManager.PlayerMatching;
+import me.machinemaker.commandmanager.CommandManager.PlayerNames;
+import me.machinemaker.commandmanager.benchmark.BenchSender;
+import org.bukkit.entity.Player;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PlayerNamesTest {
+    private PlayerNames names;
+    private BenchSender notch, notchy, notchTheSecond, jeb, dinnerbone;
+
+    @Before
+    public void setup() {
+        names = new PlayerNames();
+        notch = join("Notch");
+        notchy = join("notchy");
+        notchTheSecond = join("Notch_The_2nd");
+        jeb = join("jeb_");
+        dinnerbone = join("Dinnerbone");
+    }
+
+    private BenchSender join(String name) {
+        BenchSender p = new BenchSender(name);
+        names.add(p);
+        return p;
+    }
+
+    private Player resolve(String input, PlayerMatching matching) {
+        return names.resolve(input, 0, input.length(), matching);
+    }
+
+    @Test
+    public void exactNamesIgnoreCase() {
+        for (PlayerMatching matching : PlayerMatching.values()) {
+            assertSame(notch, resolve("notch", matching));
+            assertSame(notchy, resolve("NOTCHY", matching));
+            assertSame(jeb, resolve("Jeb_", matching));
+        }
+        assertNull(resolve("notc", PlayerMatching.EXACT));
+        assertNull(resolve("Notch2", PlayerMatching.CLOSEST));
+    }
+
+    @Test
+    public void exactNameInsideALongerLine() {
+        String line = "tp jeb_ Dinnerbone";
+        assertSame(jeb, names.resolve(line, 3, 7, PlayerMatching.EXACT));
+        assertSame(dinnerbone, names.resolve(line, 8, line.length(), PlayerMatching.EXACT));
+        assertNull(names.resolve(line, 0, 2, PlayerMatching.EXACT));
+    }
+
+    @Test
+    public void closestPicksTheShortestNameWithThePrefix() {
+        assertSame(notch, resolve("no", PlayerMatching.CLOSEST));
+        assertSame(notchy, resolve("NotchY", PlayerMatching.CLOSEST));
+        assertSame(notchTheSecond, resolve("notch_", PlayerMatching.CLOSEST));
+        assertSame(dinnerbone, resolve("d", PlayerMatching.CLOSEST));
+        assertNull(resolve("x", PlayerMatching.CLOSEST));
+        assertNull(resolve("", PlayerMatching.CLOSEST));
+    }
+
+    @Test
+    public void uniqueRejectsAmbiguousPrefixes() {
+        assertNull(resolve("no", PlayerMatching.UNIQUE));
+        assertSame(notch, resolve("notch", PlayerMatching.UNIQUE)); // Exact names win over longer ones
+        assertSame(notchTheSecond, resolve("notch_t", PlayerMatching.UNIQUE));
+        assertSame(jeb, resolve("j", PlayerMatching.UNIQUE));
+    }
+
+    @Test
+    public void uuidsFindThePlayer() {
+        String uuid = jeb.getUniqueId().toString();
+        assertSame(jeb, resolve(uuid, PlayerMatching.EXACT));
+        assertSame(jeb, resolve(uuid.replace("-", ""), PlayerMatching.EXACT));
+        names.remove(jeb);
+        assertNull(resolve(uuid, PlayerMatching.EXACT));
+    }
+
+    @Test
+    public void matchesAreAlphabeticalAndLimited() {
+        assertEquals(Arrays.asList("Notch", "Notch_The_2nd", "notchy"), names.matches("NOT", 10));
+        assertEquals(Arrays.asList("Notch", "Notch_The_2nd"), names.matches("not", 2));
+        assertEquals(Arrays.asList("Dinnerbone", "jeb_", "Notch", "Notch_The_2nd", "notchy"), names.matches("", 10));
+        assertEquals(Collections.emptyList(), names.matches("notchz", 10));
+    }
+
+    @Test
+    public void quittingUpdatesTheIndex() {
+        assertTrue(names.isOnline(notch));
+        names.remove(notch);
+        assertFalse(names.isOnline(notch));
+        assertSame(notchy, resolve("notch", PlayerMatching.CLOSEST));
+        assertEquals(Arrays.asList("Notch_The_2nd", "notchy"), names.matches("notch", 10));
+        BenchSender rejoined = join("Notch"); // Same UUID, new player object
+        assertFalse(names.isOnline(notch));
+        assertTrue(names.isOnline(rejoined));
+        assertSame(rejoined, resolve("notch", PlayerMatching.EXACT));
+    }
+
+    @Test
+    public void removingAStalePlayerKeepsTheNewOne() {
+        BenchSender rejoined = new BenchSender("Notch");
+        names.add(rejoined); // Joined again before the quit of the old one was handled
+        names.remove(notch);
+        assertTrue(names.isOnline(rejoined));
+        assertSame(rejoined, resolve("Notch", PlayerMatching.EXACT));
+    }
+
+    @Test
+    public void completionsOnlyShowVisiblePlayers() {
+        BenchSender viewer = new BenchSender("Viewer") {
+            @Override
+            public boolean canSee(Player player) {
+                return player != notchy;
+            }
+        };
+        List<String> completions = new ArrayList<>();
+        names.complete(viewer, "no", completions);
+        assertEquals(Arrays.asList("Notch", "Notch_The_2nd"), completions);
+        completions.clear();
+        names.complete(new BenchSender.Console(), "no", completions);
+        assertEquals(Arrays.asList("Notch", "Notch_The_2nd", "notchy"), completions);
+    }
+
+    @Test
+    public void manyPlayersWithSharedPrefixes() {
+        PlayerNames many = new PlayerNames();
+        List<BenchSender> players = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            BenchSender p = new BenchSender("Player" + i);
+            players.add(p);
+            many.add(p);
+        }
+        for (BenchSender p : players) assertSame(p, many.resolve(p.getName().toUpperCase(), 0, p.getName().length(), PlayerMatching.EXACT));
+        assertEquals(111, many.matches("player4", 1000).size()); // Player4, Player40-49 and Player400-499
+        assertEquals(Arrays.asList("Player49", "Player490", "Player491"), many.matches("player49", 3));
+        assertSame(players.get(0), many.resolve("player", 0, 6, PlayerMatching.CLOSEST)); // First of the shortest names
+        assertNull(many.resolve("player", 0, 6, PlayerMatching.UNIQUE));
+        assertSame(players.get(499), many.resolve("player499", 0, 9, PlayerMatching.UNIQUE));
+    }
+}
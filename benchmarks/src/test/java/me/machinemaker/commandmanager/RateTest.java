@@ -0,0 +1,114 @@
+package me.machinemaker.commandmanager;
+
+import me.machinemaker.commandmanager.CommandManager.Rate;
+import org.junit.Test;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class RateTest {
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static int drain(Rate rate, AtomicLong bucket, long now) {
+        int taken = 0;
+        while (taken < 1000 && rate.tryAcquire(bucket, now)) taken++;
+        return taken;
+    }
+
+    @Test
+    public void intervalAndToleranceFollowTheRate() {
+        Rate rate = Rate.of(4, 3);
+        assertEquals(250 * MILLI, rate.interval);
+        assertEquals(500 * MILLI, rate.tolerance);
+        assertNull(Rate.of(0, 3));
+        assertSame(Rate.UNLIMITED, Rate.override(0, 3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void burstMustBePositive() {
+        Rate.of(1, 0);
+    }
+
+    @Test
+    public void fullBucketAllowsTheBurst() {
+        Rate rate = Rate.of(2, 3);
+        AtomicLong bucket = Rate.newBucket();
+        assertEquals(3, drain(rate, bucket, 0));
+        assertFalse(rate.tryAcquire(bucket, 0));
+    }
+
+    @Test
+    public void tokensComeBackOneIntervalAtATime() {
+        Rate rate = Rate.of(2, 3); // A token every 500ms
+        AtomicLong bucket = Rate.newBucket();
+        long now = 10_000 * MILLI;
+        assertEquals(3, drain(rate, bucket, now));
+        assertFalse(rate.tryAcquire(bucket, now + 499 * MILLI));
+        assertTrue(rate.tryAcquire(bucket, now + 500 * MILLI));
+        assertFalse(rate.tryAcquire(bucket, now + 500 * MILLI));
+        assertEquals(2, drain(rate, bucket, now + 1500 * MILLI)); // Two more intervals passed
+        assertEquals(3, drain(rate, bucket, now + 60_000 * MILLI)); // Refills up to the burst, not beyond
+    }
+
+    @Test
+    public void steadyRateIsNeverRejected() {
+        Rate rate = Rate.of(20, 1);
+        AtomicLong bucket = Rate.newBucket();
+        for (long now = 0; now < 10_000 * MILLI; now += 50 * MILLI) {
+            assertTrue(rate.tryAcquire(bucket, now));
+            assertFalse(rate.tryAcquire(bucket, now + 49 * MILLI));
+        }
+    }
+
+    @Test
+    public void nanoTimeOverflowIsHandled() {
+        Rate rate = Rate.of(1, 2);
+        AtomicLong bucket = Rate.newBucket();
+        long now = Long.MAX_VALUE - 500 * MILLI;
+        assertEquals(2, drain(rate, bucket, now));
+        assertFalse(rate.tryAcquire(bucket, now + 999 * MILLI)); // Wrapped around to negative
+        assertTrue(rate.tryAcquire(bucket, now + 1000 * MILLI));
+    }
+
+    @Test
+    public void unlimitedAlwaysAllows() {
+        AtomicLong bucket = Rate.newBucket();
+        assertEquals(1000, drain(Rate.UNLIMITED, bucket, 0));
+        assertEquals(Long.MIN_VALUE, bucket.get());
+    }
+
+    @Test
+    public void sweepOnlyDropsFullBuckets() {
+        Rate rate = Rate.of(1, 1);
+        ConcurrentHashMap<Object, AtomicLong> buckets = new ConcurrentHashMap<>();
+        long now = 1000 * MILLI;
+        assertTrue(rate.tryAcquire(buckets, "early", now));
+        assertTrue(rate.tryAcquire(buckets, "late", now + 800 * MILLI));
+        assertFalse(rate.tryAcquire(buckets, "early", now + 800 * MILLI));
+        Rate.sweep(buckets, now + 1000 * MILLI);
+        assertFalse(buckets.containsKey("early"));
+        assertTrue(buckets.containsKey("late"));
+        assertFalse(rate.tryAcquire(buckets, "late", now + 1000 * MILLI));
+        assertTrue(rate.tryAcquire(buckets, "early", now + 1000 * MILLI));
+    }
+
+    @Test
+    public void concurrentTakersGetExactlyTheBurst() throws InterruptedException {
+        Rate rate = Rate.of(1, 1000);
+        AtomicLong bucket = Rate.newBucket();
+        AtomicLong taken = new AtomicLong();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 1000; i++)
+                    if (rate.tryAcquire(bucket, 0)) taken.incrementAndGet();
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+        assertEquals(1000, taken.get());
+    }
+}
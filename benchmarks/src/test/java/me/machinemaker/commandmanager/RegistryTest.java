@@ -0,0 +1,208 @@
+package me.machinemaker.commandmanager;
+
+import me.machinemaker.commandmanager.CommandManager.*;
+import me.machinemaker.commandmanager.benchmark.BenchSender;
+import me.machinemaker.commandmanager.benchmark.BenchServer;
+import org.apache.commons.lang.IllegalClassException;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Adding, removing and reloading classes while checking which handler a line reaches
+ */
+public class RegistryTest {
+    private static volatile String ran;
+    private static final AtomicInteger greeted = new AtomicInteger();
+
+    private BenchServer server;
+    private CommandManager manager;
+    private BenchSender sender;
+
+    public static class Greeting extends BaseCommandClass {
+        @CommandSetup(name = "greet")
+        @Aliases("hi")
+        public void greet(CommandSender cs, ArgsContainer args) {
+            ran = "greet";
+            greeted.incrementAndGet();
+        }
+    }
+
+    public static class NewGreeting extends BaseCommandClass {
+        @CommandSetup(name = "greet")
+        @Aliases("hey")
+        public void greet(CommandSender cs, ArgsContainer args) {
+            ran = "new greet";
+            greeted.incrementAndGet();
+        }
+    }
+
+    public static class Farewell extends BaseCommandClass {
+        @CommandSetup(name = "bye")
+        public void bye(CommandSender cs, ArgsContainer args) {
+            ran = "bye";
+        }
+    }
+
+    public static class TakesBye extends BaseCommandClass {
+        @CommandSetup(name = "greet")
+        @Aliases("bye")
+        public void greet(CommandSender cs, ArgsContainer args) {
+            ran = "takes bye";
+        }
+    }
+
+    public static class NoCommands extends BaseCommandClass {
+        public void greet(CommandSender cs, ArgsContainer args) {
+            ran = "no commands";
+        }
+    }
+
+    @Before
+    public void setup() {
+        server = BenchServer.install();
+        manager = server.newManager();
+        sender = new BenchSender("Tester");
+    }
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    /**
+     * @return what the line ran, null if it reached no handler
+     */
+    private String run(String label) {
+        ran = null;
+        manager.onCommand(sender, server.getCommand(label), label, new String[0]);
+        return ran;
+    }
+
+    @Test
+    public void removedClassesCanBeAddedAgain() {
+        Greeting greeting = new Greeting();
+        manager.addClass(greeting);
+        assertEquals("greet", run("hi"));
+        manager.removeClass(greeting);
+        assertNull(server.getCommand("greet"));
+        assertNull(server.getCommand("hi"));
+        manager.addClass(greeting);
+        assertEquals("greet", run("greet"));
+        assertEquals("greet", run("hi"));
+        manager.removeClass(greeting);
+        manager.addClass(new NewGreeting()); // Another class can take the freed names
+        assertEquals("new greet", run("greet"));
+        assertNull(server.getCommand("hi"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void removingTwiceFails() {
+        Greeting greeting = new Greeting();
+        manager.addClass(greeting);
+        manager.removeClass(greeting);
+        manager.removeClass(greeting);
+    }
+
+    @Test
+    public void reloadSwapsNamesAndAliases() {
+        Greeting greeting = new Greeting();
+        manager.addClass(greeting);
+        manager.reloadClass(greeting, new NewGreeting());
+        assertEquals("new greet", run("greet"));
+        assertEquals("new greet", run("hey"));
+        assertNull(server.getCommand("hi"));
+    }
+
+    @Test
+    public void failedReloadsKeepTheOldCommands() {
+        Greeting greeting = new Greeting();
+        manager.addClass(greeting);
+        manager.addClass(new Farewell());
+        try {
+            manager.reloadClass(greeting, new TakesBye());
+            fail("bye is taken by another class");
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            manager.reloadClass(greeting, new NoCommands());
+            fail("The replacement has no commands");
+        } catch (IllegalClassException expected) {
+        }
+        assertEquals("greet", run("greet"));
+        assertEquals("greet", run("hi"));
+        assertEquals("bye", run("bye"));
+        manager.reloadClass(greeting, new NewGreeting()); // The old one is still registered, so it can be reloaded
+        assertEquals("new greet", run("greet"));
+    }
+
+    @Test
+    public void dispatchesDuringReloadsAlwaysFindACommand() throws InterruptedException {
+        BaseCommandClass current = new Greeting();
+        manager.addClass(current);
+        Command command = server.getCommand("greet");
+        greeted.set(0);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        int dispatches = 20_000;
+        Thread reader = new Thread(() -> {
+            try {
+                for (int i = 0; i < dispatches; i++)
+                    manager.onCommand(new BenchSender("Reader"), command, "greet", new String[0]);
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        });
+        reader.start();
+        for (int i = 0; reader.isAlive(); i++) { // Swaps the snapshot while the other thread reads it
+            BaseCommandClass replacement = i % 2 == 0 ? new NewGreeting() : new Greeting();
+            manager.reloadClass(current, replacement);
+            current = replacement;
+        }
+        reader.join();
+        assertNull(failure.get());
+        assertEquals(dispatches, greeted.get());
+    }
+
+    @Test
+    public void lazyClassesCanBeRemovedBeforeAndAfterTheyAreCreated() {
+        AtomicInteger created = new AtomicInteger();
+        manager.addLazyClass(Greeting.class, () -> {
+            created.incrementAndGet();
+            return new Greeting();
+        });
+        manager.removeClass(Greeting.class);
+        assertNull(server.getCommand("greet"));
+        assertEquals(0, created.get());
+
+        manager.addLazyClass(Greeting.class, Greeting::new);
+        assertEquals("greet", run("hi"));
+        manager.removeClass(Greeting.class);
+        assertNull(server.getCommand("greet"));
+        assertNull(server.getCommand("hi"));
+        manager.addClass(new Greeting()); // Its names were freed
+        assertEquals("greet", run("greet"));
+    }
+
+    @Test
+    public void lazyClassesCanBeReloaded() {
+        manager.addLazyClass(Greeting.class, Greeting::new);
+        manager.reloadClass(Greeting.class, new NewGreeting()); // Before it was created
+        assertEquals("new greet", run("hey"));
+        assertNull(server.getCommand("hi"));
+        manager.reloadClass(NewGreeting.class, new Greeting());
+        assertEquals("greet", run("hi"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void removingAClassThatWasntAddedFails() {
+        manager.addClass(new Greeting());
+        manager.removeClass(Farewell.class);
+    }
+}
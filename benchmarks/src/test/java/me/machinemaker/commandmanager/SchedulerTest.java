@@ -0,0 +1,95 @@
+package me.machinemaker.commandmanager;
+
+import me.machinemaker.commandmanager.CommandManager.*;
+import me.machinemaker.commandmanager.benchmark.BenchSender;
+import me.machinemaker.commandmanager.benchmark.BenchServer;
+import org.bukkit.command.CommandSender;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Lines queued by {@link CommandManager#enableScheduling}, with the ticks driven by the test. The budget is a nanosecond,
+ * so a tick runs one line and every line after the first one of a tick is queued
+ */
+public class SchedulerTest {
+    private static final List<String> ran = new ArrayList<>();
+
+    private BenchServer server;
+    private CommandManager manager;
+    private BenchSender notch;
+
+    public static class Work extends BaseCommandClass {
+        @CommandSetup(name = "work")
+        public void work(CommandSender cs, ArgsContainer args) {
+            ran.add("work");
+        }
+    }
+
+    public static class Other extends BaseCommandClass {
+        @CommandSetup(name = "other")
+        public void other(CommandSender cs, ArgsContainer args) {
+            ran.add("other");
+        }
+    }
+
+    public static class NewWork extends BaseCommandClass {
+        @CommandSetup(name = "work")
+        public void work(CommandSender cs, ArgsContainer args) {
+            ran.add("new work");
+        }
+    }
+
+    @Before
+    public void setup() {
+        server = BenchServer.install();
+        manager = server.newManager();
+        manager.enableScheduling(1, TimeUnit.NANOSECONDS, 10, 10);
+        notch = (BenchSender) server.getPlayer("Notch"); // Lines of players that went offline are dropped
+        ran.clear();
+    }
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    private void run(String label) {
+        manager.onCommand(notch, server.getCommand(label), label, new String[0]);
+    }
+
+    @Test
+    public void linesOfARemovedCommandAreDropped() {
+        Work work = new Work();
+        manager.addClass(work);
+        manager.addClass(new Other());
+        run("work");
+        run("work");
+        run("other");
+        assertEquals(Arrays.asList("work"), ran);
+        assertEquals(2, manager.getQueueStats().getQueued());
+        manager.removeClass(work);
+        server.getScheduler().tick();
+        server.getScheduler().tick();
+        assertEquals(Arrays.asList("work", "other"), ran);
+        assertEquals(0, manager.getQueueStats().getQueued());
+    }
+
+    @Test
+    public void linesOfAReloadedCommandRunTheNewHandler() {
+        Work work = new Work();
+        manager.addClass(work);
+        run("work");
+        run("work");
+        manager.reloadClass(work, new NewWork());
+        server.getScheduler().tick();
+        assertEquals(Arrays.asList("work", "new work"), ran);
+    }
+}